@@ -0,0 +1,153 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The pending result of a command message that was submitted, which becomes available when the other side has run the command.<br/>
+ * The result is generally set from a thread that is not the UI thread, which is also the thread that notifies the listeners: a listener that accesses the user interface has to switch to the UI thread.
+ * @author Christopher Deckers
+ */
+public class CommandFuture implements Future<Object> {
+
+  private boolean isDone;
+  private boolean isCancelled;
+  private Object result;
+  private Throwable exception;
+  private List<CommandFutureListener> listenerList = new ArrayList<CommandFutureListener>();
+
+  CommandFuture() {
+  }
+
+  void complete(Object result, Throwable exception) {
+    List<CommandFutureListener> listenerList;
+    synchronized(this) {
+      if(isDone) {
+        return;
+      }
+      this.result = result;
+      this.exception = exception;
+      isDone = true;
+      notifyAll();
+      listenerList = this.listenerList;
+      this.listenerList = null;
+    }
+    fireCommandCompleted(listenerList);
+  }
+
+  private void fireCommandCompleted(List<CommandFutureListener> listenerList) {
+    for(CommandFutureListener listener: listenerList) {
+      try {
+        listener.commandCompleted(this);
+      } catch(Throwable t) {
+        t.printStackTrace();
+      }
+    }
+  }
+
+  /**
+   * Cancel the wait for the result. The command may still run on the other side, but its result is ignored.
+   * @param mayInterruptIfRunning ignored, as the command runs on the other side.
+   * @return true if the result was not already available.
+   */
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    List<CommandFutureListener> listenerList;
+    synchronized(this) {
+      if(isDone) {
+        return false;
+      }
+      isCancelled = true;
+      isDone = true;
+      notifyAll();
+      listenerList = this.listenerList;
+      this.listenerList = null;
+    }
+    fireCommandCompleted(listenerList);
+    return true;
+  }
+
+  public synchronized boolean isCancelled() {
+    return isCancelled;
+  }
+
+  public synchronized boolean isDone() {
+    return isDone;
+  }
+
+  /**
+   * Wait for the result of the command. This must not be called from the UI thread, which may be needed to receive the result.
+   * @return the result of the command, which is null if the native interface died.
+   * @throws ExecutionException if the command threw an exception.
+   */
+  public synchronized Object get() throws InterruptedException, ExecutionException {
+    while(!isDone) {
+      wait();
+    }
+    return getResult();
+  }
+
+  /**
+   * Wait for the result of the command, for the given amount of time at most. This must not be called from the UI thread, which may be needed to receive the result.
+   * @return the result of the command, which is null if the native interface died.
+   * @throws ExecutionException if the command threw an exception.
+   * @throws TimeoutException if the result is not available in time.
+   */
+  public synchronized Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while(!isDone) {
+      long remainingTime = deadline - System.nanoTime();
+      if(remainingTime <= 0) {
+        throw new TimeoutException();
+      }
+      TimeUnit.NANOSECONDS.timedWait(this, remainingTime);
+    }
+    return getResult();
+  }
+
+  private Object getResult() throws ExecutionException {
+    if(isCancelled) {
+      throw new CancellationException();
+    }
+    if(exception != null) {
+      throw new ExecutionException(exception);
+    }
+    return result;
+  }
+
+  /**
+   * Add a listener that is notified when the result is available or the wait is cancelled. If that is already the case, the listener is notified immediately in the current thread.
+   * @param listener the listener to add.
+   */
+  public void addCommandFutureListener(CommandFutureListener listener) {
+    synchronized(this) {
+      if(!isDone) {
+        listenerList.add(listener);
+        return;
+      }
+    }
+    listener.commandCompleted(this);
+  }
+
+  /**
+   * Remove a listener.
+   * @param listener the listener to remove.
+   */
+  public synchronized void removeCommandFutureListener(CommandFutureListener listener) {
+    if(listenerList != null) {
+      listenerList.remove(listener);
+    }
+  }
+
+}
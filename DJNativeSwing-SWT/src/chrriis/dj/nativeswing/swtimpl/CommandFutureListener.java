@@ -0,0 +1,24 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl;
+
+import java.util.EventListener;
+
+/**
+ * A listener to notify when the result of a submitted command message is available.
+ * @author Christopher Deckers
+ */
+public interface CommandFutureListener extends EventListener {
+
+  /**
+   * Invoked when the result of the command is available, or when the wait for it is cancelled. This event is not necessarily received in the UI thread.
+   * @param commandFuture the future of the command, whose result can be obtained without waiting.
+   */
+  public void commandCompleted(CommandFuture commandFuture);
+
+}
@@ -34,6 +34,10 @@ public abstract class CommandMessage extends Message {
     this.args = args;
   }
 
+  Object[] getArgs() {
+    return args;
+  }
+
   /**
    * Execute that message asynchronously with the given arguments.
    * @param isTargetNativeSide true if the target is the native side, false otherwise.
@@ -55,6 +59,19 @@ public abstract class CommandMessage extends Message {
     return syncSend(isTargetNativeSide);
   }
 
+  /**
+   * Execute that message asynchronously with the given arguments, and get its result when it is available without blocking the current thread.
+   * @param isTargetNativeSide true if the target is the native side, false otherwise.
+   * @param args the arguments, which must be serializable.
+   * @return the future result of the execution.
+   */
+  public CommandFuture submit(boolean isTargetNativeSide, Object... args) {
+    setArgs(args);
+    CommandFuture commandFuture = new CommandFuture();
+    NativeInterface.submit(isTargetNativeSide, this, commandFuture);
+    return commandFuture;
+  }
+
   private static final Object[] EMPTY_ARGS = new Object[0];
 
   protected Object runCommand() throws Exception {
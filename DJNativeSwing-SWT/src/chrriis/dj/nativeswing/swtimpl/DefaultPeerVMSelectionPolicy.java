@@ -0,0 +1,59 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl;
+
+import java.awt.Window;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * The peer VM selection policies that are provided by the library.
+ * @author Christopher Deckers
+ */
+public enum DefaultPeerVMSelectionPolicy implements PeerVMSelectionPolicy {
+
+  /**
+   * Each native component uses the next peer VM.
+   */
+  ROUND_ROBIN {
+    public int getPeerVMIndex(NativeComponent nativeComponent, int peerVMCount) {
+      return getNextPeerVMIndex(peerVMCount);
+    }
+  },
+
+  /**
+   * The native components of a window use the same peer VM, and each window uses the next peer VM.
+   */
+  PER_WINDOW {
+    private final Map<Window, Integer> windowToPeerVMIndexMap = new WeakHashMap<Window, Integer>();
+    public int getPeerVMIndex(NativeComponent nativeComponent, int peerVMCount) {
+      Window window = SwingUtilities.getWindowAncestor(nativeComponent);
+      if(window == null) {
+        return getNextPeerVMIndex(peerVMCount);
+      }
+      synchronized(windowToPeerVMIndexMap) {
+        Integer peerVMIndex = windowToPeerVMIndexMap.get(window);
+        if(peerVMIndex == null || peerVMIndex >= peerVMCount) {
+          peerVMIndex = getNextPeerVMIndex(peerVMCount);
+          windowToPeerVMIndexMap.put(window, peerVMIndex);
+        }
+        return peerVMIndex;
+      }
+    }
+  };
+
+  private final AtomicInteger peerVMCounter = new AtomicInteger();
+
+  int getNextPeerVMIndex(int peerVMCount) {
+    return (peerVMCounter.getAndIncrement() & Integer.MAX_VALUE) % peerVMCount;
+  }
+
+}
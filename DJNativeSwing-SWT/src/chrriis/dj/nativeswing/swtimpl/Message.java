@@ -8,6 +8,7 @@
 package chrriis.dj.nativeswing.swtimpl;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The superclass of all the messages that are exchanged at the native interface.
@@ -15,7 +16,7 @@ import java.io.Serializable;
  */
 public class Message implements Serializable {
 
-  private static int nextID = 1;
+  private static final AtomicInteger nextID = new AtomicInteger(1);
 
   private int id;
   private boolean isSyncExec;
@@ -39,6 +40,10 @@ public class Message implements Serializable {
     return id;
   }
 
+  void setID(int id) {
+    this.id = id;
+  }
+
   void setSyncExec(boolean isSyncExec) {
     this.isSyncExec = isSyncExec;
   }
@@ -68,11 +73,20 @@ public class Message implements Serializable {
     if(id != 0) {
       return;
     }
-    if(isTargetNativeSide) {
-      id = nextID++;
-    } else {
-      id = -nextID++;
-    }
+    // Messages are sent from any thread, and a result is matched to its caller using that ID: two messages must never share it.
+    int nextID;
+    do {
+      nextID = Message.nextID.getAndIncrement() & Integer.MAX_VALUE;
+    } while(nextID == 0);
+    id = isTargetNativeSide? nextID: -nextID;
+  }
+
+  /**
+   * Get the key of the messages that this message supersedes. When an asynchronous message is waiting to be sent or run and a more recent one with the same key is queued, only the most recent one is sent or run. This is meant for messages whose last value is the only one that matters, like a size.
+   * @return the key, which must implement equals() and hashCode(), or null if the message cannot be skipped.
+   */
+  protected Object getCoalescingKey() {
+    return null;
   }
 
   /**
@@ -44,6 +44,22 @@ public abstract class NSPanelComponent extends JPanel implements NSComponent {
     return NSComponentOptions.constrainVisibility();
   }
 
+  static final String PEER_VM_OPTION_KEY = "Peer VM";
+
+  /**
+   * Create an option to make the component use a given peer VM when several peer VMs are set on the <code>NativeInterfaceConfiguration</code>, rather than the one chosen by the peer VM selection policy.
+   * @param peerVMIndex the index of the peer VM, from 0 to the number of peer VMs - 1.
+   * @return the option to use a given peer VM.
+   */
+  public static NSOption usePeerVM(final int peerVMIndex) {
+    return new NSOption(PEER_VM_OPTION_KEY) {
+      @Override
+      public Object getOptionValue() {
+        return peerVMIndex;
+      }
+    };
+  }
+
   private NativeComponent nativeComponent;
 
   /**
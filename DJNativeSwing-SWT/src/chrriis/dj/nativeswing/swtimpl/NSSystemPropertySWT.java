@@ -61,6 +61,49 @@ public enum NSSystemPropertySWT {
    */
   WEBSERVER_DEBUG_PRINTREQUESTS(NSSystemProperty.WEBSERVER_DEBUG_PRINTREQUESTS),
 
+  /**
+   * nativeswing.webserver.keepAliveTimeout
+   * = &lt;integer&gt; (default: 5000)<br/>
+   * Set the time in milliseconds that the web server keeps an idle connection
+   * open, waiting for another request from the browser.
+   */
+  WEBSERVER_KEEPALIVETIMEOUT(NSSystemProperty.WEBSERVER_KEEPALIVETIMEOUT),
+
+  /**
+   * nativeswing.webserver.engine
+   * = thread/nio (default: thread)<br/>
+   * Set how the web server handles its connections: with a thread per
+   * connection, or with a single selector thread and a small pool of workers,
+   * which scales better when many resources are loaded at the same time.
+   */
+  WEBSERVER_ENGINE(NSSystemProperty.WEBSERVER_ENGINE),
+
+  /**
+   * nativeswing.webserver.classpathCache.size
+   * = &lt;long&gt; (default: 16777216)<br/>
+   * Set the number of bytes of the classpath resources that the web servers
+   * keep in memory, or 0 to disable the cache.
+   */
+  WEBSERVER_CLASSPATHCACHE_SIZE(NSSystemProperty.WEBSERVER_CLASSPATHCACHE_SIZE),
+
+  /**
+   * nativeswing.webserver.classpathMaxAge
+   * = &lt;integer&gt; (default: 3600)<br/>
+   * Set the number of seconds during which the browser can use the classpath
+   * resources it cached without checking whether they changed.
+   */
+  WEBSERVER_CLASSPATHMAXAGE(NSSystemProperty.WEBSERVER_CLASSPATHMAXAGE),
+
+  /**
+   * nativeswing.webserver.mappedFileCache.size
+   * = &lt;long&gt; (default: 0)<br/>
+   * Set the number of bytes of the local files that the web servers keep mapped
+   * in memory when they are requested several times, or 0 to disable the cache.
+   * A mapped file is only released when it is garbage collected, and until then
+   * some systems do not allow to delete it.
+   */
+  WEBSERVER_MAPPEDFILECACHE_SIZE(NSSystemProperty.WEBSERVER_MAPPEDFILECACHE_SIZE),
+
 
   /**
    * nativeswing.components.debug.printOptions
@@ -107,10 +150,68 @@ public enum NSSystemPropertySWT {
    * nativeswing.interface.streamResetThreshold
    * = &lt;integer&gt; (default: 500000)<br/>
    * Set the number of bytes that need to be exchanged to trigger a reset of the
-   * Object communication stream.
+   * Object communication stream. This only applies to the serialization codec.
    */
   INTERFACE_STREAMRESETTHRESHOLD("nativeswing.interface.streamResetThreshold", Type.READ_WRITE),
 
+  /**
+   * nativeswing.interface.codec
+   * = binary/serialization (default: binary)<br/>
+   * Set how messages are encoded when communicating with the spawned VM. The
+   * binary codec is compact and falls back to serialization for unknown types.
+   * If either side asks for serialization, serialization is used.
+   */
+  INTERFACE_CODEC("nativeswing.interface.codec", Type.READ_WRITE),
+
+  /**
+   * nativeswing.interface.writer.maxBatchSize
+   * = &lt;integer&gt; (default: 64)<br/>
+   * Set the maximum number of messages that are written to the communication
+   * channel of the spawned VM before the channel is flushed.
+   */
+  INTERFACE_WRITER_MAXBATCHSIZE("nativeswing.interface.writer.maxBatchSize", Type.READ_WRITE),
+
+  /**
+   * nativeswing.interface.writer.maxLatency
+   * = &lt;integer&gt; (default: 5)<br/>
+   * Set the maximum time in milliseconds that a written message can wait for
+   * more messages before the communication channel of the spawned VM is flushed.
+   */
+  INTERFACE_WRITER_MAXLATENCY("nativeswing.interface.writer.maxLatency", Type.READ_WRITE),
+
+  /**
+   * nativeswing.interface.nonUIExecutor.maxThreads
+   * = &lt;integer&gt; (default: 16)<br/>
+   * Set the maximum number of threads that are kept to run the messages that
+   * were not sent from the UI thread. When they are all busy, a message runs in
+   * a thread of its own. Messages of the same component run in order.
+   */
+  INTERFACE_NONUIEXECUTOR_MAXTHREADS("nativeswing.interface.nonUIExecutor.maxThreads", Type.READ_WRITE),
+
+  /**
+   * nativeswing.interface.nonUIExecutor.queueSize
+   * = &lt;integer&gt; (default: 1024)<br/>
+   * Set the number of non-UI messages that can wait for the previous messages
+   * of their component, after which a message runs in a thread of its own.
+   */
+  INTERFACE_NONUIEXECUTOR_QUEUESIZE("nativeswing.interface.nonUIExecutor.queueSize", Type.READ_WRITE),
+
+  /**
+   * nativeswing.interface.nonUIExecutor.virtualThreads
+   * = true/false (default: true)<br/>
+   * Set whether the non-UI messages run in virtual threads when the JRE
+   * supports them.
+   */
+  INTERFACE_NONUIEXECUTOR_VIRTUALTHREADS("nativeswing.interface.nonUIExecutor.virtualThreads", Type.READ_WRITE),
+
+  /**
+   * nativeswing.interface.uiMessages.timeBudget
+   * = &lt;integer&gt; (default: 20)<br/>
+   * Set the time in milliseconds that the UI thread spends running received
+   * messages before it handles its other events and resumes.
+   */
+  INTERFACE_UIMESSAGES_TIMEBUDGET("nativeswing.interface.uiMessages.timeBudget", Type.READ_WRITE),
+
   /**
    * nativeswing.interface.syncMessages
    * = true/false (default: false)<br/>
@@ -136,11 +237,20 @@ public enum NSSystemPropertySWT {
 
   /**
    * nativeswing.interface.outProcess.communication
-   * = sockets/processio (default: sockets)<br/>
-   * Set whether the communication interface should use sockets or the process IO.
+   * = sockets/processio/sharedmemory (default: sockets)<br/>
+   * Set whether the communication interface should use sockets, the process IO,
+   * or ring buffers in a memory-mapped file of the temporary directory.
    */
   INTERFACE_OUTPROCESS_COMMUNICATION("nativeswing.interface.outProcess.communication", Type.READ_WRITE),
 
+  /**
+   * nativeswing.interface.sharedMemory.bufferSize
+   * = &lt;integer&gt; (default: 1048576)<br/>
+   * Set the size in bytes of each of the two ring buffers used when the
+   * communication interface uses shared memory.
+   */
+  INTERFACE_SHAREDMEMORY_BUFFERSIZE("nativeswing.interface.sharedMemory.bufferSize", Type.READ_WRITE),
+
   /**
    * nativeswing.interface.outProcess.connectionTimeout
    * = &lt;integer&gt; (default: 10000)<br/>
@@ -183,6 +293,26 @@ public enum NSSystemPropertySWT {
    */
   PEERVM_FORCEPROXYCLASSLOADER("nativeswing.peervm.forceProxyClassLoader", Type.READ_WRITE),
 
+  /**
+   * nativeswing.peervm.standby
+   * = true/false (default: false)<br/>
+   * Set whether a spare peer VM should be launched and connected in the
+   * background, so that opening the native interface or respawning the peer VM
+   * after a crash does not wait for a VM to start. The spare peer VM is launched
+   * when the native interface is initialized and after each use.
+   */
+  PEERVM_STANDBY("nativeswing.peervm.standby", Type.READ_WRITE),
+
+  /**
+   * nativeswing.peervm.classDataSharing
+   * = true/false (default: false)<br/>
+   * Set whether the default peer VM process factory should use a class data
+   * sharing archive to start the peer VM faster. The archive is recorded when
+   * the first peer VM exits and is used by the next ones. This requires a
+   * HotSpot VM of version 13 or later and is ignored otherwise.
+   */
+  PEERVM_CLASSDATASHARING("nativeswing.peervm.classDataSharing", Type.READ_WRITE),
+
   /**
    * nativeswing.peervm.debug.printStartMessage
    * = true/false (default: false)<br/>
@@ -240,6 +370,24 @@ public enum NSSystemPropertySWT {
    */
   COMPONENTS_SWALLOWRUNTIMEEXCEPTIONS("nativeswing.components.swallowRuntimeExceptions", Type.READ_WRITE),
 
+  /**
+   * nativeswing.components.imageTransfer
+   * = mappedbuffer/sockets (default: mappedbuffer)<br/>
+   * Set how the native side transfers the images of components. The mapped
+   * buffer is a file of the temporary directory that is reused by each component,
+   * while sockets open a new connection for each image.
+   */
+  COMPONENTS_IMAGETRANSFER("nativeswing.components.imageTransfer", Type.READ_WRITE),
+
+  /**
+   * nativeswing.components.imageTransfer.compression
+   * = true/false (default: false)<br/>
+   * Set whether the images of components that are transferred with sockets may be
+   * compressed. This is useful when the peer VM does not run on the same machine,
+   * for example when a custom peer VM process factory runs it in a container.
+   */
+  COMPONENTS_IMAGETRANSFER_COMPRESSION("nativeswing.components.imageTransfer.compression", Type.READ_WRITE),
+
 
   /**
    * nativeswing.webbrowser.runtime
@@ -46,6 +46,15 @@ public abstract class NativeComponent extends Canvas {
    */
   public abstract void runAsync(CommandMessage commandMessage, Object... args);
 
+  /**
+   * Run the given command if the control is created, or store it to run it when the creation occurs, and get its result when it is available without blocking.
+   * If the component is disposed before the command has a chance to run, its result is null.
+   * @param commandMessage the command message to run.
+   * @param args the arguments to pass to the command message.
+   * @return the future result of running the message.
+   */
+  public abstract CommandFuture runAsyncWithResult(CommandMessage commandMessage, Object... args);
+
   private static ObjectRegistry nativeComponentRegistry;
   private static ObjectRegistry controlRegistry;
 
@@ -93,6 +102,15 @@ public abstract class NativeComponent extends Canvas {
     return controlRegistry;
   }
 
+  /**
+   * Get the peer VM that the options of a component ask for.
+   * @param optionMap the options of the component.
+   * @return the index of the peer VM, or null if the options do not ask for a given peer VM.
+   */
+  protected static Integer getPeerVMIndexOption(Map<Object, Object> optionMap) {
+    return (Integer)optionMap.get(NSPanelComponent.PEER_VM_OPTION_KEY);
+  }
+
   /**
    * Get the unique identifier of this native component, used as a reference to communicate with the native peer.
    * @return the component ID.
@@ -108,6 +108,10 @@ public abstract class NativeInterface {
     swtNativeInterface.asyncSend_(isTargetNativeSide, message);
   }
 
+  static void submit(boolean isTargetNativeSide, Message message, CommandFuture commandFuture) {
+    swtNativeInterface.submit_(isTargetNativeSide, message, commandFuture);
+  }
+
   /**
    * Indicate if the current thread is the user interface thread.
    * @return true if the current thread is the user interface thread.
@@ -196,18 +200,38 @@ public abstract class NativeInterface {
     return message.getID();
   }
 
+  protected static void setMessageID(Message message, int id) {
+    message.setID(id);
+  }
+
   protected static boolean isMessageValid(Message message) {
     return message.isValid();
   }
 
+  protected static Object getMessageCoalescingKey(Message message) {
+    return message.getCoalescingKey();
+  }
+
   protected static void setMessageArgs(CommandMessage message, Object... args) {
     message.setArgs(args);
   }
 
+  protected static Object[] getMessageArgs(CommandMessage message) {
+    return message.getArgs();
+  }
+
   protected static void computeMessageID(Message message, boolean isTargetNativeSide) {
     message.computeID(isTargetNativeSide);
   }
 
+  protected static CommandFuture createCommandFuture() {
+    return new CommandFuture();
+  }
+
+  protected static void completeCommandFuture(CommandFuture commandFuture, Object result, Throwable exception) {
+    commandFuture.complete(result, exception);
+  }
+
   protected static void setMessageUI(Message message, boolean isUI) {
     message.setUI(isUI);
   }
@@ -25,6 +25,8 @@ public class NativeInterfaceConfiguration {
   private List<String> nativeClassPathReferenceResourceList = new ArrayList<String>();
   private String[] peerVMParams;
   private PeerVMProcessFactory peerVMProcessFactory;
+  private int peerVMCount = 1;
+  private PeerVMSelectionPolicy peerVMSelectionPolicy = DefaultPeerVMSelectionPolicy.ROUND_ROBIN;
 
   /**
    * Set the peer VM process factory which allows to override the default peer VM creation mechanism.
@@ -107,4 +109,43 @@ public class NativeInterfaceConfiguration {
     return peerVMParams;
   }
 
+  /**
+   * Set the number of peer VMs that host the native components, so that a native component that keeps its peer VM busy does not stall the others and that a crash only affects the native components of one peer VM. The default is 1.<br/>
+   * The first peer VM is created when the native interface is opened, and the others when a native component is first assigned to them. The messages that are not sent to a native component, like those of static methods, go to the first peer VM. This has no effect when the native side runs in-process.
+   * @param peerVMCount the number of peer VMs.
+   */
+  public void setPeerVMCount(int peerVMCount) {
+    if(peerVMCount < 1) {
+      throw new IllegalArgumentException("The number of peer VMs must be at least 1!");
+    }
+    this.peerVMCount = peerVMCount;
+  }
+
+  /**
+   * Get the number of peer VMs that host the native components.
+   * @return the number of peer VMs.
+   */
+  public int getPeerVMCount() {
+    return peerVMCount;
+  }
+
+  /**
+   * Set the policy that decides which peer VM hosts a native component when there are several peer VMs. The default is round-robin. A native component created with the peer VM option of <code>NSPanelComponent</code> uses that peer VM instead.
+   * @param peerVMSelectionPolicy the policy to set, which cannot be null.
+   */
+  public void setPeerVMSelectionPolicy(PeerVMSelectionPolicy peerVMSelectionPolicy) {
+    if(peerVMSelectionPolicy == null) {
+      throw new IllegalArgumentException("The peer VM selection policy cannot be null!");
+    }
+    this.peerVMSelectionPolicy = peerVMSelectionPolicy;
+  }
+
+  /**
+   * Get the policy that decides which peer VM hosts a native component when there are several peer VMs.
+   * @return the peer VM selection policy.
+   */
+  public PeerVMSelectionPolicy getPeerVMSelectionPolicy() {
+    return peerVMSelectionPolicy;
+  }
+
 }
\ No newline at end of file
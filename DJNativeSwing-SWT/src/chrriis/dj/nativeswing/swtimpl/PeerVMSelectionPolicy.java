@@ -0,0 +1,24 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl;
+
+/**
+ * An interface that can be implemented to decide which peer VM hosts a native component when several peer VMs are set on the <code>NativeInterfaceConfiguration</code>.
+ * @author Christopher Deckers
+ */
+public interface PeerVMSelectionPolicy {
+
+  /**
+   * Get the peer VM of a native component, when its native peer is about to be created.
+   * @param nativeComponent the native component, which has a window ancestor.
+   * @param peerVMCount the number of peer VMs.
+   * @return the index of the peer VM, from 0 to peerVMCount - 1.
+   */
+  public int getPeerVMIndex(NativeComponent nativeComponent, int peerVMCount);
+
+}
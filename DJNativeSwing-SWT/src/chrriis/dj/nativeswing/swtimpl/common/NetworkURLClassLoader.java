@@ -7,20 +7,33 @@
  */
 package chrriis.dj.nativeswing.swtimpl.common;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
 
 /**
- * A class loader that loads classes from a given codebase.
+ * A class loader that loads classes from a given codebase.<br/>
+ * When it is given a jar of the classes, it loads them from a copy of that jar that is cached in the temporary directory, and only uses the codebase for the classes that the jar does not contain.<br/>
+ * This class must not have inner classes: it is the only class file that is available to the peer VM before it can load classes.
  * @author Christopher Deckers
  */
 public class NetworkURLClassLoader extends ClassLoader {
 
   private final URL codebaseURL;
+  private JarFile jarFile;
+  private String jarFileURL;
 
   /**
    * Construct a network URL classloader, that will load resources from the given codebase.
@@ -30,9 +43,123 @@ public class NetworkURLClassLoader extends ClassLoader {
     codebaseURL = new URL(codebase);
   }
 
+  /**
+   * Construct a network URL classloader, that will load resources from a jar, and from the given codebase for those that the jar does not contain.
+   * @param codebase the codebase to load the resources from.
+   * @param jarURL the URL to download the jar from, when it is not already cached.
+   * @param jarHash the SHA-1 hash of the content of the jar.
+   */
+  public NetworkURLClassLoader(String codebase, String jarURL, String jarHash) throws MalformedURLException {
+    this(codebase);
+    try {
+      File file = getCachedJarFile(jarURL, jarHash);
+      jarFile = new JarFile(file);
+      jarFileURL = "jar:" + file.toURI().toURL() + "!/";
+    } catch(Exception e) {
+      // The classes are loaded one by one from the codebase.
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Get the directory where the jars of the classes are cached, creating it if needed. The directory belongs to the current user, and only its owner can access it when the system allows it, so that other users cannot plant a jar in it.
+   * @return the directory.
+   */
+  public static File getJarCacheDirectory() {
+    StringBuilder sb = new StringBuilder();
+    for(char c: System.getProperty("user.name", "").toCharArray()) {
+      sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '-'? c: '_');
+    }
+    File dir = new File(System.getProperty("java.io.tmpdir"), ".djnativeswing/classcache-" + sb);
+    if(!dir.isDirectory() && dir.mkdirs()) {
+      dir.setReadable(false, false);
+      dir.setWritable(false, false);
+      dir.setExecutable(false, false);
+      dir.setReadable(true, true);
+      dir.setWritable(true, true);
+      dir.setExecutable(true, true);
+    }
+    return dir;
+  }
+
+  /**
+   * Get the SHA-1 hash of the content of a jar, which is also its name in the cache. The content of a cached jar must be checked before it is used, as its name can be predicted.
+   * @param file the jar.
+   * @return the hash, as a hexadecimal string.
+   */
+  public static String getJarHash(File file) throws IOException {
+    MessageDigest messageDigest;
+    try {
+      messageDigest = MessageDigest.getInstance("SHA-1");
+    } catch(Exception e) {
+      throw new IOException("The SHA-1 algorithm is not available.");
+    }
+    InputStream in = new FileInputStream(file);
+    try {
+      byte[] bytes = new byte[8192];
+      for(int n; (n=in.read(bytes)) != -1; ) {
+        messageDigest.update(bytes, 0, n);
+      }
+    } finally {
+      in.close();
+    }
+    return toHexString(messageDigest.digest());
+  }
+
+  private static String toHexString(byte[] digest) {
+    StringBuilder sb = new StringBuilder();
+    for(byte b: digest) {
+      sb.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+    }
+    return sb.toString();
+  }
+
+  private static File getCachedJarFile(String jarURL, String jarHash) throws Exception {
+    File dir = getJarCacheDirectory();
+    File file = new File(dir, jarHash + ".jar");
+    if(file.length() > 0) {
+      if(jarHash.equals(getJarHash(file))) {
+        return file;
+      }
+      // The content does not match the name: the jar is downloaded again.
+      file.delete();
+    }
+    File tmpFile = File.createTempFile(jarHash, ".tmp", dir);
+    try {
+      URLConnection connection = new URL(jarURL).openConnection();
+      connection.setReadTimeout(4000);
+      InputStream in = connection.getInputStream();
+      MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
+      OutputStream out = new FileOutputStream(tmpFile);
+      try {
+        byte[] bytes = new byte[8192];
+        for(int n; (n=in.read(bytes)) != -1; ) {
+          out.write(bytes, 0, n);
+          messageDigest.update(bytes, 0, n);
+        }
+      } finally {
+        out.close();
+        in.close();
+      }
+      if(!toHexString(messageDigest.digest()).equals(jarHash)) {
+        throw new IOException("The content of the jar does not match its hash: " + jarURL);
+      }
+      // Another peer VM may have cached it in the meantime, in which case its content is checked.
+      if(!tmpFile.renameTo(file) && !jarHash.equals(getJarHash(file))) {
+        throw new IOException("Failed to cache the jar: " + file);
+      }
+    } finally {
+      tmpFile.delete();
+    }
+    return file;
+  }
+
   @Override
   protected URL findResource(String name) {
     try {
+      if(jarFile != null && jarFile.getJarEntry(name) != null) {
+        return new URL(jarFileURL + name);
+      }
       return new URL(codebaseURL, name);
     } catch(MalformedURLException e) {
       e.printStackTrace();
@@ -40,8 +167,33 @@ public class NetworkURLClassLoader extends ClassLoader {
     return null;
   }
 
+  private static byte[] readBytes(InputStream in) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    byte[] bytes = new byte[1024];
+    for(int n; (n=in.read(bytes)) != -1; baos.write(bytes, 0, n)) {
+    }
+    return baos.toByteArray();
+  }
+
   @Override
   protected Class<?> findClass(String name) throws ClassNotFoundException {
+    if(jarFile != null) {
+      JarEntry jarEntry = jarFile.getJarEntry(name.replace('.', '/') + ".class");
+      if(jarEntry != null) {
+        try {
+          InputStream in = new BufferedInputStream(jarFile.getInputStream(jarEntry));
+          byte[] bytes;
+          try {
+            bytes = readBytes(in);
+          } finally {
+            in.close();
+          }
+          return defineClass(name, bytes, 0, bytes.length);
+        } catch(IOException e) {
+          // Let's try the codebase.
+        }
+      }
+    }
     Exception exception = null;
     // Let's retry twice
     for(int i=0; i<2; i++) {
@@ -55,11 +207,7 @@ public class NetworkURLClassLoader extends ClassLoader {
         connection.setReadTimeout(4000);
         in = connection.getInputStream();
 //      InputStream in = new BufferedInputStream(getResourceAsStream(path));
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] bytes = new byte[1024];
-        for(int n; (n=in.read(bytes)) != -1; baos.write(bytes, 0, n)) {
-        }
-        bytes = baos.toByteArray();
+        byte[] bytes = readBytes(in);
         clazz = defineClass(name, bytes, 0, bytes.length);
       } catch(Exception e) {
         exception = e;
@@ -77,15 +225,28 @@ public class NetworkURLClassLoader extends ClassLoader {
     throw new ClassNotFoundException(name, exception);
   }
 
+  /**
+   * Run the main method of a class that is loaded from a codebase.
+   * @param args the codebase, optionally followed by "-jar", the URL and the hash of a jar of the classes, then the main class and its parameters.
+   */
   public static void main(String[] args) throws Exception {
     String codeBase = args[0];
-    String mainClass = args[1];
-    String[] newArgs = new String[args.length - 2];
-    System.arraycopy(args, 2, newArgs, 0, newArgs.length);
+    int offset = 1;
+    String jarURL = null;
+    String jarHash = null;
+    if("-jar".equals(args[offset])) {
+      jarURL = args[offset + 1];
+      jarHash = args[offset + 2];
+      offset += 3;
+    }
+    String mainClass = args[offset++];
+    String[] newArgs = new String[args.length - offset];
+    System.arraycopy(args, offset, newArgs, 0, newArgs.length);
     Class<?> clazz;
     Method method;
     try {
-      clazz = new NetworkURLClassLoader(codeBase).loadClass(mainClass);
+      NetworkURLClassLoader classLoader = jarURL == null? new NetworkURLClassLoader(codeBase): new NetworkURLClassLoader(codeBase, jarURL, jarHash);
+      clazz = classLoader.loadClass(mainClass);
       method = clazz.getDeclaredMethod("main", String[].class);
       method.setAccessible(true);
     } catch (Exception e) {
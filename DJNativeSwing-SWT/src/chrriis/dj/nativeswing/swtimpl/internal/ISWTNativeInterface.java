@@ -11,6 +11,7 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 
 import chrriis.dj.nativeswing.swtimpl.ApplicationMessageHandler;
+import chrriis.dj.nativeswing.swtimpl.CommandFuture;
 import chrriis.dj.nativeswing.swtimpl.Message;
 import chrriis.dj.nativeswing.swtimpl.NativeInterfaceConfiguration;
 import chrriis.dj.nativeswing.swtimpl.NativeInterfaceListener;
@@ -45,6 +46,8 @@ public interface ISWTNativeInterface {
 
   public void asyncSend_(boolean isTargetNativeSide, final Message message);
 
+  public void submit_(boolean isTargetNativeSide, Message message, CommandFuture commandFuture);
+
   public boolean isOutProcessNativeSide_();
 
   /**
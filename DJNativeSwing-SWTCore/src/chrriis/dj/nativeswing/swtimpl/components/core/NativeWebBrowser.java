@@ -148,6 +148,8 @@ class NativeWebBrowser extends SWTNativeComponent implements INativeWebBrowser {
           Window parentWindow = e.isDialogWindow()? SwingUtilities.getWindowAncestor(webBrowser): null;
           windowAncestor = (Window)WebBrowserWindowFactory.create(parentWindow, jWebBrowser);
         }
+        // The native side gets the new browser from its registry, so it has to be in the same peer VM.
+        ((NativeWebBrowser)jWebBrowser.getNativeComponent()).usePeerVMOf(nativeWebBrowser);
         jWebBrowser.getNativeComponent().initializeNativePeer();
       }
       return ((NativeWebBrowser)jWebBrowser.getNativeComponent()).getComponentID();
@@ -440,16 +442,18 @@ class NativeWebBrowser extends SWTNativeComponent implements INativeWebBrowser {
         // This forces the user to open it himself
         e.required = true;
         final Integer componentID = (Integer)new CMJ_createWindow().syncExec(browser);
+        // A web browser that was already created may be in another peer VM.
+        Browser registeredWebBrowser = componentID == null? null: (Browser)NativeComponent.getControlRegistry().get(componentID);
         final Browser newWebBrowser;
         final boolean isDisposed;
-        if(componentID == null) {
+        if(registeredWebBrowser == null) {
           isDisposed = true;
           Shell shell = new Shell();
           newWebBrowser = new Browser(shell, browser.getStyle());
           configureBrowserFunction(newWebBrowser);
         } else {
           isDisposed = false;
-          newWebBrowser = (Browser)NativeComponent.getControlRegistry().get(componentID);
+          newWebBrowser = registeredWebBrowser;
         }
         e.browser = newWebBrowser;
         newWebBrowser.addVisibilityWindowListener(new VisibilityWindowAdapter() {
@@ -0,0 +1,134 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import chrriis.dj.nativeswing.swtimpl.Message;
+import chrriis.dj.nativeswing.swtimpl.NSSystemPropertySWT;
+
+/**
+ * A writer that sends messages from a dedicated thread, so that bursts of asynchronous messages are flushed together.<br/>
+ * The stream is flushed when no more messages are queued, when a synchronous message is written, or when the batch limits are reached. An asynchronous message that is superseded by a more recent one with the same coalescing key while it waits is not sent.<br/>
+ * A message that is not sent, because the writer is closed or the stream fails, is reported to the messaging interface so that the call that waits for its result gets a failure. A stream that fails takes the messaging interface down.
+ * @author Christopher Deckers
+ */
+class BatchingMessageWriter {
+
+  private static final int MAX_BATCH_SIZE = Integer.parseInt(NSSystemPropertySWT.INTERFACE_WRITER_MAXBATCHSIZE.get("64"));
+  private static final long MAX_LATENCY = Long.parseLong(NSSystemPropertySWT.INTERFACE_WRITER_MAXLATENCY.get("5"));
+
+  private final MessagingInterface messagingInterface;
+  private final MessageCodec messageCodec;
+  private final LinkedList<Message> messageList = new LinkedList<Message>();
+  private final MessageCoalescer messageCoalescer = new MessageCoalescer();
+  private volatile boolean isActive = true;
+
+  public BatchingMessageWriter(MessagingInterface messagingInterface, MessageCodec messageCodec, String threadName) {
+    this.messagingInterface = messagingInterface;
+    this.messageCodec = messageCodec;
+    Thread writerThread = new Thread(threadName) {
+      @Override
+      public void run() {
+        runWriter();
+      }
+    };
+    writerThread.setDaemon(true);
+    writerThread.start();
+  }
+
+  public void write(Message message) {
+    synchronized(messageList) {
+      if(isActive) {
+        messageCoalescer.add(message);
+        messageList.add(message);
+        if(messageList.size() == 1) {
+          messageList.notify();
+        }
+        return;
+      }
+    }
+    messagingInterface.notifyMessageNotSent(message, new IOException("The channel is closed."));
+  }
+
+  /**
+   * Stop the writer. The messages that are still queued are not sent, and the calls that wait for their results get a failure.
+   */
+  public void close() {
+    List<Message> pendingMessageList = new ArrayList<Message>();
+    synchronized(messageList) {
+      isActive = false;
+      for(Message message: messageList) {
+        if(!messageCoalescer.isSuperseded(message)) {
+          pendingMessageList.add(message);
+        }
+      }
+      messageList.clear();
+      messageList.notify();
+    }
+    for(Message message: pendingMessageList) {
+      messagingInterface.notifyMessageNotSent(message, new IOException("The channel was closed before the message was sent."));
+    }
+  }
+
+  private void runWriter() {
+    int pendingCount = 0;
+    long firstPendingTime = 0;
+    while(true) {
+      Message message;
+      synchronized(messageList) {
+        if(pendingCount == 0) {
+          while(messageList.isEmpty() && isActive) {
+            try {
+              messageList.wait();
+            } catch(InterruptedException e) {
+            }
+          }
+        }
+        if(!isActive) {
+          return;
+        }
+        message = messageList.isEmpty()? null: messageList.removeFirst();
+        if(message != null && messageCoalescer.isSuperseded(message)) {
+          continue;
+        }
+      }
+      try {
+        if(message != null) {
+          messageCodec.writeMessage(message);
+          if(pendingCount++ == 0) {
+            firstPendingTime = System.currentTimeMillis();
+          }
+        }
+        // When the message is null, the queue is idle.
+        if(message == null || SWTNativeInterface.isMessageSyncExec(message) || pendingCount >= MAX_BATCH_SIZE || System.currentTimeMillis() - firstPendingTime >= MAX_LATENCY) {
+          messageCodec.flush();
+          pendingCount = 0;
+        }
+      } catch(MessageCodec.MessageEncodingException e) {
+        // Nothing was written, so the stream is still usable.
+        e.printStackTrace();
+        messagingInterface.notifyMessageNotSent(message, e);
+      } catch(Exception e) {
+        pendingCount = 0;
+        if(isActive) {
+          // The stream cannot be used anymore: the interface goes down, which fails the calls that wait for results, and the queued messages are not sent.
+          messagingInterface.notifyChannelFailed(e);
+          close();
+        }
+        if(message != null) {
+          messagingInterface.notifyMessageNotSent(message, e);
+        }
+      }
+    }
+  }
+
+}
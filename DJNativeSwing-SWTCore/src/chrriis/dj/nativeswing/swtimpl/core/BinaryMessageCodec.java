@@ -0,0 +1,639 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.Point;
+
+import chrriis.dj.nativeswing.swtimpl.CommandMessage;
+import chrriis.dj.nativeswing.swtimpl.Message;
+import chrriis.dj.nativeswing.swtimpl.core.MessagingInterface.CommandResultMessage;
+
+/**
+ * A codec that uses a compact tagged binary format for messages and their common argument types.<br/>
+ * Message classes are sent by name the first time they are used on a channel and referenced by an ID afterwards.
+ * Java serialization is only used as a fallback, for messages that hold additional state and for unknown argument types.
+ * @author Christopher Deckers
+ */
+class BinaryMessageCodec extends MessageCodec {
+
+  private static final int TAG_SERIALIZED_MESSAGE = 0;
+  private static final int TAG_MESSAGE = 1;
+
+  private static final int TAG_NULL = 0;
+  private static final int TAG_TRUE = 1;
+  private static final int TAG_FALSE = 2;
+  private static final int TAG_INT = 3;
+  private static final int TAG_LONG = 4;
+  private static final int TAG_STRING = 5;
+  private static final int TAG_RECTANGLE = 6;
+  private static final int TAG_CHAR = 7;
+  private static final int TAG_BYTE = 8;
+  private static final int TAG_SHORT = 9;
+  private static final int TAG_FLOAT = 10;
+  private static final int TAG_DOUBLE = 11;
+  private static final int TAG_POINT = 12;
+  private static final int TAG_DIMENSION = 13;
+  private static final int TAG_OBJECT_ARRAY = 20;
+  private static final int TAG_INT_ARRAY = 21;
+  private static final int TAG_LONG_ARRAY = 22;
+  private static final int TAG_BOOLEAN_ARRAY = 23;
+  private static final int TAG_BYTE_ARRAY = 24;
+  private static final int TAG_STRING_ARRAY = 25;
+  private static final int TAG_RECTANGLE_ARRAY = 26;
+  private static final int TAG_SERIALIZED = 127;
+
+  private static final int FLAG_SYNC_EXEC = 1;
+  private static final int FLAG_UI = 2;
+
+  private static final int KIND_MESSAGE = 0;
+  private static final int KIND_COMMAND = 1;
+  private static final int KIND_CONTROL_COMMAND = 2;
+  private static final int KIND_COMMAND_RESULT = 3;
+
+  /**
+   * The classes that both sides know without having to send their names.
+   */
+  private static final Class<?>[] SHARED_CLASSES = new Class<?>[] {
+    Message.class,
+    CommandResultMessage.class,
+  };
+
+  private static class MessageClassDescriptor {
+    private final int kind;
+    private final Constructor<?> constructor;
+    MessageClassDescriptor(int kind, Constructor<?> constructor) {
+      this.kind = kind;
+      this.constructor = constructor;
+    }
+  }
+
+  private static final MessageClassDescriptor SERIALIZED_DESCRIPTOR = new MessageClassDescriptor(-1, null);
+
+  private static final Map<Class<?>, MessageClassDescriptor> classToDescriptorMap = new HashMap<Class<?>, MessageClassDescriptor>();
+
+  /**
+   * Get the descriptor of a message class, which defines how the message is encoded.
+   * @return the descriptor, or null if the message has to be serialized.
+   */
+  private static MessageClassDescriptor getMessageClassDescriptor(Class<?> clazz) {
+    MessageClassDescriptor descriptor;
+    synchronized(classToDescriptorMap) {
+      descriptor = classToDescriptorMap.get(clazz);
+    }
+    if(descriptor == null) {
+      descriptor = createMessageClassDescriptor(clazz);
+      synchronized(classToDescriptorMap) {
+        classToDescriptorMap.put(clazz, descriptor);
+      }
+    }
+    return descriptor == SERIALIZED_DESCRIPTOR? null: descriptor;
+  }
+
+  private static MessageClassDescriptor createMessageClassDescriptor(Class<?> clazz) {
+    if(clazz == CommandResultMessage.class) {
+      return new MessageClassDescriptor(KIND_COMMAND_RESULT, null);
+    }
+    int kind;
+    Class<?> baseClass;
+    if(ControlCommandMessage.class.isAssignableFrom(clazz)) {
+      kind = KIND_CONTROL_COMMAND;
+      baseClass = ControlCommandMessage.class;
+    } else if(CommandMessage.class.isAssignableFrom(clazz)) {
+      kind = KIND_COMMAND;
+      baseClass = CommandMessage.class;
+    } else if(Message.class.isAssignableFrom(clazz)) {
+      kind = KIND_MESSAGE;
+      baseClass = Message.class;
+    } else {
+      return SERIALIZED_DESCRIPTOR;
+    }
+    // Subclasses that hold their own state are serialized, so that no state is lost.
+    for(Class<?> c = clazz; c != baseClass; c = c.getSuperclass()) {
+      for(Field field: c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if(!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+          return SERIALIZED_DESCRIPTOR;
+        }
+      }
+    }
+    if(Modifier.isAbstract(clazz.getModifiers())) {
+      return SERIALIZED_DESCRIPTOR;
+    }
+    Constructor<?> constructor;
+    try {
+      constructor = clazz.getDeclaredConstructor();
+      constructor.setAccessible(true);
+    } catch(Exception e) {
+      return SERIALIZED_DESCRIPTOR;
+    }
+    return new MessageClassDescriptor(kind, constructor);
+  }
+
+  /**
+   * The size above which the buffer in which messages are encoded is not kept, so that a large message does not retain its memory.
+   */
+  private static final int MAX_RETAINED_ENCODING_BUFFER_SIZE = 65536;
+
+  private final OutputStream os;
+  // Messages are encoded in a buffer first, so that a message that fails to encode does not leave a partial message on the stream.
+  private ByteArrayOutputStream encodingBuffer;
+  private DataOutputStream out;
+  private final DataInputStream in;
+
+  private final Map<Class<?>, Integer> outClassToIDMap = new HashMap<Class<?>, Integer>();
+  private final List<Class<?>> inClassList = new ArrayList<Class<?>>();
+
+  BinaryMessageCodec(InputStream is, OutputStream os) {
+    this.os = os;
+    encodingBuffer = new ByteArrayOutputStream();
+    out = new DataOutputStream(encodingBuffer);
+    in = new DataInputStream(is);
+    for(Class<?> clazz: SHARED_CLASSES) {
+      outClassToIDMap.put(clazz, outClassToIDMap.size());
+      inClassList.add(clazz);
+    }
+  }
+
+  @Override
+  void writeMessage(Message message) throws IOException {
+    int classCount = outClassToIDMap.size();
+    try {
+      encodeMessage(message);
+    } catch(Exception e) {
+      // The other side does not receive the classes that were first used by this message.
+      for(Iterator<Integer> it=outClassToIDMap.values().iterator(); it.hasNext(); ) {
+        if(it.next() >= classCount) {
+          it.remove();
+        }
+      }
+      resetEncodingBuffer();
+      throw new MessageEncodingException(message, e);
+    }
+    encodingBuffer.writeTo(os);
+    resetEncodingBuffer();
+  }
+
+  private void resetEncodingBuffer() {
+    if(encodingBuffer.size() > MAX_RETAINED_ENCODING_BUFFER_SIZE) {
+      encodingBuffer = new ByteArrayOutputStream();
+      out = new DataOutputStream(encodingBuffer);
+    } else {
+      encodingBuffer.reset();
+    }
+  }
+
+  private void encodeMessage(Message message) throws IOException {
+    MessageClassDescriptor descriptor = getMessageClassDescriptor(message.getClass());
+    if(descriptor == null) {
+      out.writeByte(TAG_SERIALIZED_MESSAGE);
+      writeSerialized(message);
+      return;
+    }
+    out.writeByte(TAG_MESSAGE);
+    writeClass(message.getClass());
+    writeSignedVarInt(SWTNativeInterface.getMessageID(message));
+    int flags = 0;
+    if(SWTNativeInterface.isMessageSyncExec(message)) {
+      flags |= FLAG_SYNC_EXEC;
+    }
+    if(SWTNativeInterface.isMessageUI(message)) {
+      flags |= FLAG_UI;
+    }
+    out.writeByte(flags);
+    switch(descriptor.kind) {
+      case KIND_CONTROL_COMMAND:
+        writeSignedVarInt(((ControlCommandMessage)message).getComponentID());
+        writeValue(SWTNativeInterface.getMessageArgs((CommandMessage)message));
+        break;
+      case KIND_COMMAND:
+        writeValue(SWTNativeInterface.getMessageArgs((CommandMessage)message));
+        break;
+      case KIND_COMMAND_RESULT:
+        CommandResultMessage commandResultMessage = (CommandResultMessage)message;
+        writeSignedVarInt(commandResultMessage.getOriginalID());
+        writeValue(commandResultMessage.getResult());
+        writeValue(commandResultMessage.getException());
+        break;
+    }
+  }
+
+  @Override
+  void flush() throws IOException {
+    os.flush();
+  }
+
+  @Override
+  Message readMessage() throws IOException, ClassNotFoundException {
+    int tag = in.readUnsignedByte();
+    if(tag == TAG_SERIALIZED_MESSAGE) {
+      Object o = readSerialized();
+      if(o instanceof Message) {
+        return (Message)o;
+      }
+      System.err.println("Unknown message: " + o);
+      return null;
+    }
+    if(tag != TAG_MESSAGE) {
+      throw new IOException("Invalid message tag: " + tag);
+    }
+    Class<?> clazz = readClass();
+    MessageClassDescriptor descriptor = getMessageClassDescriptor(clazz);
+    if(descriptor == null) {
+      throw new IOException("The message class cannot be decoded: " + clazz.getName());
+    }
+    int id = readSignedVarInt();
+    int flags = in.readUnsignedByte();
+    Message message;
+    switch(descriptor.kind) {
+      case KIND_COMMAND_RESULT: {
+        int originalID = readSignedVarInt();
+        Object result = readValue();
+        Throwable exception = (Throwable)readValue();
+        message = new CommandResultMessage(originalID, result, exception);
+        break;
+      }
+      case KIND_CONTROL_COMMAND: {
+        ControlCommandMessage controlCommandMessage = (ControlCommandMessage)newMessage(descriptor);
+        controlCommandMessage.setComponentID(readSignedVarInt());
+        setArgs(controlCommandMessage, readValue());
+        message = controlCommandMessage;
+        break;
+      }
+      case KIND_COMMAND: {
+        CommandMessage commandMessage = (CommandMessage)newMessage(descriptor);
+        setArgs(commandMessage, readValue());
+        message = commandMessage;
+        break;
+      }
+      default:
+        message = newMessage(descriptor);
+        break;
+    }
+    SWTNativeInterface.setMessageID(message, id);
+    SWTNativeInterface.setMessageSyncExec(message, (flags & FLAG_SYNC_EXEC) != 0);
+    SWTNativeInterface.setMessageUI(message, (flags & FLAG_UI) != 0);
+    return message;
+  }
+
+  private static void setArgs(CommandMessage commandMessage, Object args) {
+    if(args != null) {
+      SWTNativeInterface.setMessageArgs(commandMessage, (Object[])args);
+    }
+  }
+
+  private static Message newMessage(MessageClassDescriptor descriptor) throws IOException {
+    try {
+      return (Message)descriptor.constructor.newInstance();
+    } catch(Exception e) {
+      IOException ioException = new IOException("Failed to create the message: " + descriptor.constructor.getDeclaringClass().getName());
+      ioException.initCause(e);
+      throw ioException;
+    }
+  }
+
+  private void writeClass(Class<?> clazz) throws IOException {
+    Integer id = outClassToIDMap.get(clazz);
+    if(id != null) {
+      writeVarInt(id << 1);
+      return;
+    }
+    id = outClassToIDMap.size();
+    outClassToIDMap.put(clazz, id);
+    writeVarInt(id << 1 | 1);
+    writeString(clazz.getName());
+  }
+
+  private Class<?> readClass() throws IOException, ClassNotFoundException {
+    int value = readVarInt();
+    int id = value >>> 1;
+    if((value & 1) == 0) {
+      if(id >= inClassList.size()) {
+        throw new IOException("Unknown message class ID: " + id);
+      }
+      return inClassList.get(id);
+    }
+    String className = readString();
+    if(id != inClassList.size()) {
+      throw new IOException("Unexpected message class ID: " + id + " for " + className);
+    }
+    Class<?> clazz;
+    try {
+      clazz = Class.forName(className, false, BinaryMessageCodec.class.getClassLoader());
+    } catch(ClassNotFoundException e) {
+      ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+      if(contextClassLoader == null) {
+        throw e;
+      }
+      clazz = Class.forName(className, false, contextClassLoader);
+    }
+    inClassList.add(clazz);
+    return clazz;
+  }
+
+  private void writeValue(Object o) throws IOException {
+    if(o == null) {
+      out.writeByte(TAG_NULL);
+      return;
+    }
+    Class<?> clazz = o.getClass();
+    if(clazz == Integer.class) {
+      out.writeByte(TAG_INT);
+      writeSignedVarInt((Integer)o);
+    } else if(clazz == Boolean.class) {
+      out.writeByte((Boolean)o? TAG_TRUE: TAG_FALSE);
+    } else if(clazz == String.class) {
+      out.writeByte(TAG_STRING);
+      writeString((String)o);
+    } else if(clazz == Long.class) {
+      out.writeByte(TAG_LONG);
+      writeSignedVarLong((Long)o);
+    } else if(clazz == Object[].class) {
+      Object[] array = (Object[])o;
+      out.writeByte(TAG_OBJECT_ARRAY);
+      writeVarInt(array.length);
+      for(Object element: array) {
+        writeValue(element);
+      }
+    } else if(clazz == Rectangle.class) {
+      out.writeByte(TAG_RECTANGLE);
+      writeRectangle((Rectangle)o);
+    } else if(clazz == Point.class) {
+      Point point = (Point)o;
+      out.writeByte(TAG_POINT);
+      writeSignedVarInt(point.x);
+      writeSignedVarInt(point.y);
+    } else if(clazz == Dimension.class) {
+      Dimension dimension = (Dimension)o;
+      out.writeByte(TAG_DIMENSION);
+      writeSignedVarInt(dimension.width);
+      writeSignedVarInt(dimension.height);
+    } else if(clazz == Character.class) {
+      out.writeByte(TAG_CHAR);
+      out.writeChar((Character)o);
+    } else if(clazz == Byte.class) {
+      out.writeByte(TAG_BYTE);
+      out.writeByte((Byte)o);
+    } else if(clazz == Short.class) {
+      out.writeByte(TAG_SHORT);
+      out.writeShort((Short)o);
+    } else if(clazz == Float.class) {
+      out.writeByte(TAG_FLOAT);
+      out.writeFloat((Float)o);
+    } else if(clazz == Double.class) {
+      out.writeByte(TAG_DOUBLE);
+      out.writeDouble((Double)o);
+    } else if(clazz == int[].class) {
+      int[] array = (int[])o;
+      out.writeByte(TAG_INT_ARRAY);
+      writeVarInt(array.length);
+      for(int value: array) {
+        writeSignedVarInt(value);
+      }
+    } else if(clazz == long[].class) {
+      long[] array = (long[])o;
+      out.writeByte(TAG_LONG_ARRAY);
+      writeVarInt(array.length);
+      for(long value: array) {
+        writeSignedVarLong(value);
+      }
+    } else if(clazz == boolean[].class) {
+      boolean[] array = (boolean[])o;
+      out.writeByte(TAG_BOOLEAN_ARRAY);
+      writeVarInt(array.length);
+      for(boolean value: array) {
+        out.writeBoolean(value);
+      }
+    } else if(clazz == byte[].class) {
+      byte[] array = (byte[])o;
+      out.writeByte(TAG_BYTE_ARRAY);
+      writeVarInt(array.length);
+      out.write(array);
+    } else if(clazz == String[].class) {
+      String[] array = (String[])o;
+      out.writeByte(TAG_STRING_ARRAY);
+      writeVarInt(array.length);
+      for(String value: array) {
+        if(value == null) {
+          out.writeBoolean(false);
+        } else {
+          out.writeBoolean(true);
+          writeString(value);
+        }
+      }
+    } else if(clazz == Rectangle[].class) {
+      Rectangle[] array = (Rectangle[])o;
+      out.writeByte(TAG_RECTANGLE_ARRAY);
+      writeVarInt(array.length);
+      for(Rectangle value: array) {
+        if(value == null) {
+          out.writeBoolean(false);
+        } else {
+          out.writeBoolean(true);
+          writeRectangle(value);
+        }
+      }
+    } else {
+      out.writeByte(TAG_SERIALIZED);
+      writeSerialized(o);
+    }
+  }
+
+  private Object readValue() throws IOException, ClassNotFoundException {
+    int tag = in.readUnsignedByte();
+    switch(tag) {
+      case TAG_NULL: return null;
+      case TAG_TRUE: return Boolean.TRUE;
+      case TAG_FALSE: return Boolean.FALSE;
+      case TAG_INT: return readSignedVarInt();
+      case TAG_LONG: return readSignedVarLong();
+      case TAG_STRING: return readString();
+      case TAG_RECTANGLE: return readRectangle();
+      case TAG_CHAR: return in.readChar();
+      case TAG_BYTE: return in.readByte();
+      case TAG_SHORT: return in.readShort();
+      case TAG_FLOAT: return in.readFloat();
+      case TAG_DOUBLE: return in.readDouble();
+      case TAG_POINT: return new Point(readSignedVarInt(), readSignedVarInt());
+      case TAG_DIMENSION: return new Dimension(readSignedVarInt(), readSignedVarInt());
+      case TAG_OBJECT_ARRAY: {
+        Object[] array = new Object[readVarInt()];
+        for(int i=0; i<array.length; i++) {
+          array[i] = readValue();
+        }
+        return array;
+      }
+      case TAG_INT_ARRAY: {
+        int[] array = new int[readVarInt()];
+        for(int i=0; i<array.length; i++) {
+          array[i] = readSignedVarInt();
+        }
+        return array;
+      }
+      case TAG_LONG_ARRAY: {
+        long[] array = new long[readVarInt()];
+        for(int i=0; i<array.length; i++) {
+          array[i] = readSignedVarLong();
+        }
+        return array;
+      }
+      case TAG_BOOLEAN_ARRAY: {
+        boolean[] array = new boolean[readVarInt()];
+        for(int i=0; i<array.length; i++) {
+          array[i] = in.readBoolean();
+        }
+        return array;
+      }
+      case TAG_BYTE_ARRAY: {
+        byte[] array = new byte[readVarInt()];
+        in.readFully(array);
+        return array;
+      }
+      case TAG_STRING_ARRAY: {
+        String[] array = new String[readVarInt()];
+        for(int i=0; i<array.length; i++) {
+          array[i] = in.readBoolean()? readString(): null;
+        }
+        return array;
+      }
+      case TAG_RECTANGLE_ARRAY: {
+        Rectangle[] array = new Rectangle[readVarInt()];
+        for(int i=0; i<array.length; i++) {
+          array[i] = in.readBoolean()? readRectangle(): null;
+        }
+        return array;
+      }
+      case TAG_SERIALIZED: return readSerialized();
+    }
+    throw new IOException("Invalid value tag: " + tag);
+  }
+
+  private void writeRectangle(Rectangle rectangle) throws IOException {
+    writeSignedVarInt(rectangle.x);
+    writeSignedVarInt(rectangle.y);
+    writeSignedVarInt(rectangle.width);
+    writeSignedVarInt(rectangle.height);
+  }
+
+  private Rectangle readRectangle() throws IOException {
+    return new Rectangle(readSignedVarInt(), readSignedVarInt(), readSignedVarInt(), readSignedVarInt());
+  }
+
+  private void writeString(String s) throws IOException {
+    // writeUTF() is limited to 64KB, which is too small for HTML content.
+    byte[] bytes = s.getBytes("UTF-8");
+    writeVarInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private String readString() throws IOException {
+    byte[] bytes = new byte[readVarInt()];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  private void writeSerialized(Object o) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(baos);
+    oos.writeObject(o);
+    oos.close();
+    writeVarInt(baos.size());
+    baos.writeTo(out);
+  }
+
+  private Object readSerialized() throws IOException, ClassNotFoundException {
+    byte[] bytes = new byte[readVarInt()];
+    in.readFully(bytes);
+    ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return ois.readObject();
+    } finally {
+      ois.close();
+    }
+  }
+
+  private void writeVarInt(int value) throws IOException {
+    while((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private int readVarInt() throws IOException {
+    int value = 0;
+    for(int shift=0; shift<32; shift+=7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7F) << shift;
+      if((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed variable-length integer!");
+  }
+
+  private void writeSignedVarInt(int value) throws IOException {
+    writeVarInt((value << 1) ^ (value >> 31));
+  }
+
+  private int readSignedVarInt() throws IOException {
+    int value = readVarInt();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private void writeSignedVarLong(long value) throws IOException {
+    value = (value << 1) ^ (value >> 63);
+    while((value & ~0x7FL) != 0) {
+      out.writeByte((int)(value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte((int)value);
+  }
+
+  private long readSignedVarLong() throws IOException {
+    long value = 0;
+    for(int shift=0; shift<64; shift+=7) {
+      int b = in.readUnsignedByte();
+      value |= (long)(b & 0x7F) << shift;
+      if((b & 0x80) == 0) {
+        return (value >>> 1) ^ -(value & 1);
+      }
+    }
+    throw new IOException("Malformed variable-length long!");
+  }
+
+  @Override
+  void closeOutput() throws IOException {
+    os.close();
+  }
+
+  @Override
+  void closeInput() throws IOException {
+    in.close();
+  }
+
+}
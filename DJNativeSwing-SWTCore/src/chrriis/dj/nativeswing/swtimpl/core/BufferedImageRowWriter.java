@@ -0,0 +1,63 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.IntBuffer;
+
+/**
+ * A writer of ARGB rows to an image. Images backed by an int array receive bulk copies straight into their raster, other images go through setRGB().
+ * @author Christopher Deckers
+ */
+class BufferedImageRowWriter {
+
+  private final BufferedImage image;
+  private int[] data;
+  private int scanlineStride;
+  private int offset;
+  private int[] pixels;
+
+  public BufferedImageRowWriter(BufferedImage image) {
+    this.image = image;
+    WritableRaster raster = image.getRaster();
+    DataBuffer dataBuffer = raster.getDataBuffer();
+    SampleModel sampleModel = raster.getSampleModel();
+    int type = image.getType();
+    if(dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel && (type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_ARGB_PRE || type == BufferedImage.TYPE_INT_RGB)) {
+      data = ((DataBufferInt)dataBuffer).getData();
+      scanlineStride = ((SinglePixelPackedSampleModel)sampleModel).getScanlineStride();
+      offset = dataBuffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride - raster.getSampleModelTranslateX();
+    }
+  }
+
+  public void setRow(int x, int y, int width, int[] argbPixels, int argbOffset) {
+    if(data != null) {
+      System.arraycopy(argbPixels, argbOffset, data, offset + y * scanlineStride + x, width);
+    } else {
+      image.setRGB(x, y, width, 1, argbPixels, argbOffset, width);
+    }
+  }
+
+  public void setRow(int x, int y, int width, IntBuffer argbBuffer) {
+    if(data != null) {
+      argbBuffer.get(data, offset + y * scanlineStride + x, width);
+      return;
+    }
+    if(pixels == null || pixels.length < width) {
+      pixels = new int[width];
+    }
+    argbBuffer.get(pixels, 0, width);
+    image.setRGB(x, y, width, 1, pixels, 0, width);
+  }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+import org.eclipse.swt.widgets.Control;
+
+import chrriis.dj.nativeswing.common.Utils;
+
+/**
+ * A memory-mapped region, reused across captures of a component, in which the native side writes the ARGB pixels of the component image.<br/>
+ * The pixels of the requested rectangles are stored one after the other, row by row.
+ * @author Christopher Deckers
+ */
+class ComponentImageBuffer {
+
+  private static final String CONTROL_DATA_KEY = "NS_ComponentImageBuffer";
+
+  private File file;
+  private IntBuffer intBuffer;
+  private int capacity;
+
+  /**
+   * Get the buffer, making sure that it can contain at least the given number of pixels. The buffer is recreated in a new file when it grows, because some systems cannot resize a mapped file.
+   */
+  public IntBuffer getIntBuffer(int pixelCount) throws IOException {
+    if(intBuffer == null || capacity < pixelCount) {
+      dispose();
+      // The file contains the pixels of the control: other users must not be able to read or replace it.
+      File dir = Utils.getUserTempDirectory("images");
+      File file = File.createTempFile("image", ".buf", dir);
+      file.deleteOnExit();
+      try {
+        intBuffer = map(file, pixelCount);
+      } catch(IOException e) {
+        file.delete();
+        throw e;
+      }
+      this.file = file;
+      capacity = pixelCount;
+    }
+    intBuffer.clear();
+    return intBuffer;
+  }
+
+  public String getPath() {
+    return file.getAbsolutePath();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  public void dispose() {
+    intBuffer = null;
+    capacity = 0;
+    if(file != null) {
+      // On some systems, the file cannot be deleted while it is still mapped. It is then deleted on exit.
+      file.delete();
+      file = null;
+    }
+  }
+
+  private static IntBuffer map(File file, int pixelCount) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+    try {
+      // Both sides are on the same machine, so the native order avoids any byte swapping.
+      return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, pixelCount * 4L).order(ByteOrder.nativeOrder()).asIntBuffer();
+    } finally {
+      // The mapping remains valid after the file is closed.
+      randomAccessFile.close();
+    }
+  }
+
+  /**
+   * Get the buffer that the Swing side created for a control, from the native side. The mapping is kept with the control until the Swing side recreates the buffer.
+   * @return the buffer, or null if the file of the Swing side cannot be found from the native side.
+   */
+  public static IntBuffer getIntBuffer(Control control, String path, int capacity) throws IOException {
+    Object[] mapping = (Object[])control.getData(CONTROL_DATA_KEY);
+    if(mapping == null || !path.equals(mapping[0])) {
+      File file = new File(path);
+      // Mapping a file that does not exist would create one that the Swing side never reads.
+      if(file.length() < capacity * 4L) {
+        return null;
+      }
+      mapping = new Object[] {path, map(file, capacity)};
+      control.setData(CONTROL_DATA_KEY, mapping);
+    }
+    IntBuffer intBuffer = (IntBuffer)mapping[1];
+    intBuffer.clear();
+    return intBuffer;
+  }
+
+  /**
+   * Copy the pixels of the rectangles from the buffer to the image.
+   */
+  public static void copyToImage(IntBuffer intBuffer, Rectangle[] rectangles, BufferedImage image) {
+    BufferedImageRowWriter rowWriter = new BufferedImageRowWriter(image);
+    for(Rectangle rectangle: rectangles) {
+      for(int y=0; y<rectangle.height; y++) {
+        rowWriter.setRow(rectangle.x, rectangle.y + y, rectangle.width, intBuffer);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.awt.Rectangle;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The encoding of the rows of RGB bytes that are sent on a component image socket.<br/>
+ * When the Swing side accepts compression, the native side announces the encoding it chose in the first byte of the stream. The compressed encoding replaces each row with its difference to the previous row of the same rectangle, which turns the uniform areas of typical pages into runs of zeros, and deflates the result with the fastest level.
+ * @author Christopher Deckers
+ */
+class ComponentImageStream {
+
+  static final int RAW_ENCODING = 0;
+  static final int DEFLATED_ROW_DELTA_ENCODING = 1;
+
+  /**
+   * Below this number of pixels, compression costs more than it saves.
+   */
+  private static final int MIN_COMPRESSED_PIXEL_COUNT = 4096;
+
+  static int getEncoding(boolean isCompressionAccepted, Rectangle[] rectangles) {
+    if(!isCompressionAccepted) {
+      return RAW_ENCODING;
+    }
+    int pixelCount = 0;
+    for(Rectangle rectangle: rectangles) {
+      pixelCount += rectangle.width * rectangle.height;
+    }
+    return pixelCount < MIN_COMPRESSED_PIXEL_COUNT? RAW_ENCODING: DEFLATED_ROW_DELTA_ENCODING;
+  }
+
+  static class Writer {
+
+    private OutputStream out;
+    private Deflater deflater;
+    private byte[] previousRow;
+    private byte[] deltaRow;
+
+    /**
+     * @param isEncodingAnnounced true if the Swing side accepted compression, in which case it expects the encoding as the first byte.
+     */
+    public Writer(OutputStream out, int encoding, boolean isEncodingAnnounced) throws IOException {
+      if(isEncodingAnnounced) {
+        out.write(encoding);
+      }
+      if(encoding == DEFLATED_ROW_DELTA_ENCODING) {
+        deflater = new Deflater(Deflater.BEST_SPEED);
+        out = new DeflaterOutputStream(out, deflater, 8192);
+      }
+      this.out = out;
+    }
+
+    public void startRectangle(int rowLength) {
+      if(deflater != null) {
+        // The first row of a rectangle is a difference to zeros.
+        previousRow = new byte[rowLength];
+        deltaRow = new byte[rowLength];
+      }
+    }
+
+    public void writeRow(byte[] row, int length) throws IOException {
+      if(deflater == null) {
+        out.write(row, 0, length);
+        return;
+      }
+      for(int i=0; i<length; i++) {
+        deltaRow[i] = (byte)(row[i] - previousRow[i]);
+      }
+      System.arraycopy(row, 0, previousRow, 0, length);
+      out.write(deltaRow, 0, length);
+    }
+
+    public void finish() throws IOException {
+      if(deflater != null) {
+        ((DeflaterOutputStream)out).finish();
+      }
+      out.flush();
+    }
+
+    /**
+     * Release the native resources of the compression, whether the stream was finished or not.
+     */
+    public void end() {
+      if(deflater != null) {
+        deflater.end();
+        deflater = null;
+      }
+    }
+
+  }
+
+  static class Reader {
+
+    private DataInputStream in;
+    private Inflater inflater;
+    private byte[] previousRow;
+
+    /**
+     * @param isEncodingAnnounced true if compression was accepted, in which case the encoding is the first byte.
+     */
+    public Reader(InputStream in, boolean isEncodingAnnounced) throws IOException {
+      if(isEncodingAnnounced) {
+        int encoding = in.read();
+        if(encoding == DEFLATED_ROW_DELTA_ENCODING) {
+          inflater = new Inflater();
+          in = new InflaterInputStream(in, inflater, 8192);
+        } else if(encoding != RAW_ENCODING && encoding != -1) {
+          // The stream is empty (-1) when the native side has nothing to send, which is reported when reading the first row.
+          throw new IOException("Unknown component image encoding: " + encoding);
+        }
+      }
+      this.in = new DataInputStream(in);
+    }
+
+    public void startRectangle(int rowLength) {
+      if(inflater != null) {
+        previousRow = new byte[rowLength];
+      }
+    }
+
+    /**
+     * Read a row fully.
+     * @throws java.io.EOFException if the stream ends before the row is complete.
+     */
+    public void readRow(byte[] row, int length) throws IOException {
+      in.readFully(row, 0, length);
+      if(inflater != null) {
+        for(int i=0; i<length; i++) {
+          row[i] += previousRow[i];
+        }
+        System.arraycopy(row, 0, previousRow, 0, length);
+      }
+    }
+
+    public void close() {
+      try {
+        in.close();
+      } catch(Exception e) {
+      }
+      if(inflater != null) {
+        inflater.end();
+        inflater = null;
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A benchmark of the encodings of the component image stream, which compares the raw RGB rows with the deflated row deltas on synthetic web pages.<br/>
+ * For each page, it reports the size of the stream, the time to encode and decode it, and the total time of a transfer on links of a few speeds, such as those between the Swing side and a peer VM in a container or a virtual machine. The decoded rows are checked against the original ones.<br/>
+ * Usage: ComponentImageStreamBenchmark [iteration count]
+ * @author Christopher Deckers
+ */
+class ComponentImageStreamBenchmark {
+
+  /**
+   * The link speeds, in megabits per second.
+   */
+  private static final int[] LINK_SPEEDS = new int[] {100, 1000, 10000};
+
+  private static final String TEXT = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat.";
+
+  private static interface PagePainter {
+    public void paint(Graphics2D g, int width, int height);
+  }
+
+  /**
+   * A page of text with a header and a side bar.
+   */
+  private static final PagePainter TEXT_PAGE = new PagePainter() {
+    public void paint(Graphics2D g, int width, int height) {
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, width, height);
+      g.setPaint(new GradientPaint(0, 0, new Color(0x2060A0), 0, 80, new Color(0x4080C0)));
+      g.fillRect(0, 0, width, 80);
+      g.setColor(Color.WHITE);
+      g.setFont(new Font(Font.SANS_SERIF, Font.BOLD, 32));
+      g.drawString("Native Swing Benchmark Page", 24, 52);
+      g.setColor(new Color(0xF0F0F0));
+      g.fillRect(0, 80, 220, height - 80);
+      g.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 14));
+      g.setColor(new Color(0x2060A0));
+      for(int y=110; y<height; y+=28) {
+        g.drawString("Navigation link " + y / 28, 16, y);
+      }
+      g.setColor(new Color(0x202020));
+      for(int y=110, i=0; y<height; y+=20, i++) {
+        int offset = i * 17 % TEXT.length();
+        g.drawString(TEXT.substring(offset) + " " + TEXT.substring(0, offset), 240, y);
+      }
+    }
+  };
+
+  /**
+   * A page of text with a photo, whose noise does not compress.
+   */
+  private static final PagePainter PHOTO_PAGE = new PagePainter() {
+    public void paint(Graphics2D g, int width, int height) {
+      TEXT_PAGE.paint(g, width, height);
+      int photoWidth = width / 3;
+      int photoHeight = height / 3;
+      BufferedImage photo = new BufferedImage(photoWidth, photoHeight, BufferedImage.TYPE_INT_RGB);
+      Random random = new Random(width);
+      for(int y=0; y<photoHeight; y++) {
+        for(int x=0; x<photoWidth; x++) {
+          int base = 0x80 * x / photoWidth + 0x40 * y / photoHeight;
+          int red = Math.min(255, base + random.nextInt(64));
+          int green = Math.min(255, base / 2 + random.nextInt(64));
+          int blue = Math.min(255, 0x60 + random.nextInt(64));
+          photo.setRGB(x, y, red << 16 | green << 8 | blue);
+        }
+      }
+      g.drawImage(photo, width - photoWidth - 40, 120, null);
+    }
+  };
+
+  private static byte[][] createRows(PagePainter pagePainter, int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    pagePainter.paint(g, width, height);
+    g.dispose();
+    byte[][] rows = new byte[height][width * 3];
+    int[] pixels = new int[width];
+    for(int y=0; y<height; y++) {
+      image.getRGB(0, y, width, 1, pixels, 0, width);
+      byte[] row = rows[y];
+      for(int x=0; x<width; x++) {
+        int pixel = pixels[x];
+        row[x * 3] = (byte)(pixel >> 16);
+        row[x * 3 + 1] = (byte)(pixel >> 8);
+        row[x * 3 + 2] = (byte)pixel;
+      }
+    }
+    return rows;
+  }
+
+  private static byte[] encode(byte[][] rows, int encoding) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ComponentImageStream.Writer writer = new ComponentImageStream.Writer(out, encoding, true);
+    try {
+      int rowLength = rows[0].length;
+      writer.startRectangle(rowLength);
+      for(byte[] row: rows) {
+        writer.writeRow(row, rowLength);
+      }
+      writer.finish();
+    } finally {
+      writer.end();
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[][] decode(byte[] bytes, int rowCount, int rowLength) throws IOException {
+    ComponentImageStream.Reader reader = new ComponentImageStream.Reader(new ByteArrayInputStream(bytes), true);
+    byte[][] rows = new byte[rowCount][rowLength];
+    try {
+      reader.startRectangle(rowLength);
+      for(byte[] row: rows) {
+        reader.readRow(row, rowLength);
+      }
+    } finally {
+      reader.close();
+    }
+    return rows;
+  }
+
+  /**
+   * @return the best encoding and decoding times of the iterations, in nanoseconds.
+   */
+  private static long[] measure(byte[][] rows, int encoding, int iterationCount) throws IOException {
+    int rowLength = rows[0].length;
+    // Warm up so that the measured iterations run compiled code.
+    long warmUpEndTime = System.currentTimeMillis() + 500;
+    for(int i=0; i<3 || System.currentTimeMillis() < warmUpEndTime; i++) {
+      decode(encode(rows, encoding), rows.length, rowLength);
+    }
+    long bestEncodingTime = Long.MAX_VALUE;
+    long bestDecodingTime = Long.MAX_VALUE;
+    for(int i=0; i<iterationCount; i++) {
+      long startTime = System.nanoTime();
+      byte[] bytes = encode(rows, encoding);
+      long middleTime = System.nanoTime();
+      decode(bytes, rows.length, rowLength);
+      long endTime = System.nanoTime();
+      bestEncodingTime = Math.min(bestEncodingTime, middleTime - startTime);
+      bestDecodingTime = Math.min(bestDecodingTime, endTime - middleTime);
+    }
+    return new long[] {bestEncodingTime, bestDecodingTime};
+  }
+
+  public static void main(String[] args) throws IOException {
+    int iterationCount = args.length > 0? Integer.parseInt(args[0]): 10;
+    Object[][] pages = new Object[][] {
+      {"Text page", TEXT_PAGE},
+      {"Photo page", PHOTO_PAGE},
+    };
+    int[][] sizes = new int[][] {
+      {1280, 800},
+      {1920, 1080},
+    };
+    boolean isSuccessful = true;
+    System.out.println("Best time of " + iterationCount + " iterations. The transfer times add the encoding, the transmission and the decoding.");
+    for(int[] size: sizes) {
+      int width = size[0];
+      int height = size[1];
+      for(Object[] page: pages) {
+        byte[][] rows = createRows((PagePainter)page[1], width, height);
+        System.out.println();
+        System.out.println(page[0] + ", " + width + "x" + height + ":");
+        for(int encoding: new int[] {ComponentImageStream.RAW_ENCODING, ComponentImageStream.DEFLATED_ROW_DELTA_ENCODING}) {
+          byte[] bytes = encode(rows, encoding);
+          byte[][] decodedRows = decode(bytes, rows.length, rows[0].length);
+          boolean isIdentical = Arrays.deepEquals(rows, decodedRows);
+          isSuccessful &= isIdentical;
+          long[] times = measure(rows, encoding, iterationCount);
+          StringBuilder sb = new StringBuilder();
+          sb.append(String.format("  %-10s %9d bytes, encoding: %6.2f ms, decoding: %6.2f ms, transfer:", encoding == ComponentImageStream.RAW_ENCODING? "Raw": "Compressed", bytes.length, times[0] / 1000000d, times[1] / 1000000d));
+          for(int linkSpeed: LINK_SPEEDS) {
+            double transmissionTime = bytes.length * 8d / (linkSpeed * 1000d);
+            sb.append(String.format(" %7.1f ms at %d Mb/s", (times[0] + times[1]) / 1000000d + transmissionTime, linkSpeed));
+            if(linkSpeed != LINK_SPEEDS[LINK_SPEEDS.length - 1]) {
+              sb.append(',');
+            }
+          }
+          if(!isIdentical) {
+            sb.append(" (DIFFERENT ROWS)");
+          }
+          System.out.println(sb);
+        }
+      }
+    }
+    System.out.println();
+    System.out.println(isSuccessful? "The decoded rows match the original rows.": "FAILED: the decoded rows differ from the original rows.");
+  }
+
+}
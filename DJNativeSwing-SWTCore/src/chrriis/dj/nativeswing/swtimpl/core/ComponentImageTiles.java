@@ -0,0 +1,120 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.widgets.Control;
+
+/**
+ * The hashes of the tiles of the last images of a control that were sent to the Swing side, so that only the tiles that changed are sent again.<br/>
+ * The hashes describe the content of the image that the Swing side maintains incrementally, which is why they are reset when the Swing side starts a new image.
+ * @author Christopher Deckers
+ */
+class ComponentImageTiles {
+
+  private static final String CONTROL_DATA_KEY = "NS_ComponentImageTiles";
+
+  private static final int TILE_SIZE = 64;
+
+  private static class Tile {
+
+    private final Rectangle bounds;
+    private final long hash;
+
+    public Tile(Rectangle bounds, long hash) {
+      this.bounds = bounds;
+      this.hash = hash;
+    }
+
+  }
+
+  private final Map<Integer, Tile> tileMap = new HashMap<Integer, Tile>();
+  private int[] pixels;
+
+  /**
+   * Get the areas of the rectangles whose content changed since they were last sent, and remember the new content as sent.
+   * @param isResetting true if the Swing side does not have any of the previously sent content.
+   */
+  public static Rectangle[] getChangedRectangles(Control control, ImageData imageData, Rectangle[] rectangles, boolean isResetting) {
+    ComponentImageTiles componentImageTiles = (ComponentImageTiles)control.getData(CONTROL_DATA_KEY);
+    if(componentImageTiles == null || isResetting) {
+      componentImageTiles = new ComponentImageTiles();
+      control.setData(CONTROL_DATA_KEY, componentImageTiles);
+    }
+    return componentImageTiles.getChangedRectangles(imageData, rectangles);
+  }
+
+  private Rectangle[] getChangedRectangles(ImageData imageData, Rectangle[] rectangles) {
+    List<Rectangle> changedRectangleList = new ArrayList<Rectangle>();
+    for(Rectangle rectangle: rectangles) {
+      int tileX1 = rectangle.x / TILE_SIZE;
+      int tileY1 = rectangle.y / TILE_SIZE;
+      int tileX2 = (rectangle.x + rectangle.width - 1) / TILE_SIZE;
+      int tileY2 = (rectangle.y + rectangle.height - 1) / TILE_SIZE;
+      for(int tileY=tileY1; tileY<=tileY2; tileY++) {
+        Rectangle lastChangedRectangle = null;
+        for(int tileX=tileX1; tileX<=tileX2; tileX++) {
+          Rectangle part = rectangle.intersection(new Rectangle(tileX * TILE_SIZE, tileY * TILE_SIZE, TILE_SIZE, TILE_SIZE));
+          long hash = getHash(imageData, part);
+          Integer key = tileY << 16 | tileX;
+          Tile tile = tileMap.get(key);
+          if(tile != null && tile.hash == hash && tile.bounds.equals(part)) {
+            lastChangedRectangle = null;
+            continue;
+          }
+          tileMap.put(key, new Tile(part, hash));
+          // Consecutive tiles of a row are merged, so that their rows are transferred in one go.
+          if(lastChangedRectangle != null) {
+            lastChangedRectangle.width += part.width;
+          } else {
+            lastChangedRectangle = new Rectangle(part);
+            changedRectangleList.add(lastChangedRectangle);
+          }
+        }
+      }
+    }
+    return changedRectangleList.toArray(new Rectangle[0]);
+  }
+
+  private long getHash(ImageData imageData, Rectangle part) {
+    // FNV-1a, on the raw data when pixels are made of whole bytes.
+    long hash = 0xCBF29CE484222325L;
+    int x1 = Math.min(part.x, imageData.width);
+    int x2 = Math.min(part.x + part.width, imageData.width);
+    int y2 = Math.min(part.y + part.height, imageData.height);
+    int depth = imageData.depth;
+    if(depth % 8 == 0) {
+      byte[] data = imageData.data;
+      int bytesPerPixel = depth / 8;
+      int bytesPerLine = imageData.bytesPerLine;
+      for(int y=part.y; y<y2; y++) {
+        for(int i=y * bytesPerLine + x1 * bytesPerPixel, end=y * bytesPerLine + x2 * bytesPerPixel; i<end; i++) {
+          hash = (hash ^ (data[i] & 0xFF)) * 0x100000001B3L;
+        }
+      }
+    } else if(x2 > x1) {
+      if(pixels == null || pixels.length < x2 - x1) {
+        pixels = new int[TILE_SIZE];
+      }
+      for(int y=part.y; y<y2; y++) {
+        imageData.getPixels(x1, y, x2 - x1, pixels, 0);
+        for(int i=0; i<x2 - x1; i++) {
+          hash = (hash ^ pixels[i]) * 0x100000001B3L;
+        }
+      }
+    }
+    return hash;
+  }
+
+}
@@ -7,6 +7,8 @@
  */
 package chrriis.dj.nativeswing.swtimpl.core;
 
+import java.util.Arrays;
+
 import org.eclipse.swt.SWT;
 import org.eclipse.swt.SWTException;
 import org.eclipse.swt.widgets.Control;
@@ -33,6 +35,10 @@ public abstract class ControlCommandMessage extends CommandMessage {
     return componentID;
   }
 
+  void setComponentID(int componentID) {
+    this.componentID = componentID;
+  }
+
   /**
    * Set the control that is used to identify the control on the local side.
    * @param control the control.
@@ -148,6 +154,14 @@ public abstract class ControlCommandMessage extends CommandMessage {
     super.asyncExec(isTargetNativeSide, args);
   }
 
+  /**
+   * Get a coalescing key that makes this message supersede the queued messages of the same class for the same component. Subclasses can return it from getCoalescingKey() when only their last value matters.
+   * @return the coalescing key.
+   */
+  protected Object getComponentCoalescingKey() {
+    return Arrays.asList(getClass(), componentID);
+  }
+
   private void checkComponentID() {
     if(componentID == 0) {
       throw new IllegalStateException("The component was not specified!");
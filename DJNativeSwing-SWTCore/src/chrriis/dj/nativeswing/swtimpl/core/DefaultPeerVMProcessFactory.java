@@ -67,6 +67,7 @@ public class DefaultPeerVMProcessFactory implements PeerVMProcessFactory {
     } else {
       isTryingAppletCompatibility = false;
     }
+    List<String> classDataSharingParamList = null;
     for(int mode=isTryingAppletCompatibility? 1: 0; mode>=0; mode--) {
       List<String> argList = new ArrayList<String>();
       for(String candidateBinary: candidateBinaries) {
@@ -80,6 +81,10 @@ public class DefaultPeerVMProcessFactory implements PeerVMProcessFactory {
         for(String vmParam: vmParams) {
           argList.add(vmParam);
         }
+        if(classDataSharingParamList == null) {
+          classDataSharingParamList = getClassDataSharingParamList(classpathItems, mainClass);
+        }
+        argList.addAll(classDataSharingParamList);
         // System properties
         for(Map.Entry<String, String> propertyEntry: systemPropertiesMap.entrySet()) {
           String value = propertyEntry.getValue();
@@ -111,14 +116,118 @@ public class DefaultPeerVMProcessFactory implements PeerVMProcessFactory {
         if(Boolean.parseBoolean(NSSystemPropertySWT.PEERVM_DEBUG_PRINTCOMMANDLINE.get())) {
           System.err.println("Native Command: " + Arrays.toString(argList.toArray()));
         }
+        Process process;
         try {
-          return new ProcessBuilder(argList).start();
+          process = new ProcessBuilder(argList).start();
         } catch(IOException e) {
+          deleteClassDataSharingLockFile(classDataSharingParamList, null);
           throw new IllegalStateException(e);
         }
+        deleteClassDataSharingLockFile(classDataSharingParamList, process);
+        return process;
       }
     }
     return null;
   }
 
+  private static final long CLASS_DATA_SHARING_LOCK_TIMEOUT = 10 * 60 * 1000;
+
+  private static final String ARCHIVE_CLASSES_AT_EXIT_PARAM = "-XX:ArchiveClassesAtExit=";
+
+  /**
+   * Delete the lock of the class data sharing archive, if the parameters record the archive, once the peer VM has exited and has written the archive.
+   * @param process the peer VM, or null if it could not be started.
+   */
+  private static void deleteClassDataSharingLockFile(List<String> classDataSharingParamList, final Process process) {
+    for(String param: classDataSharingParamList) {
+      if(param.startsWith(ARCHIVE_CLASSES_AT_EXIT_PARAM)) {
+        final File lockFile = new File(param.substring(ARCHIVE_CLASSES_AT_EXIT_PARAM.length()) + ".lock");
+        if(process == null) {
+          lockFile.delete();
+          return;
+        }
+        Thread lockThread = new Thread("NativeSwing Class Data Sharing Lock") {
+          @Override
+          public void run() {
+            while(true) {
+              try {
+                process.waitFor();
+                break;
+              } catch(InterruptedException e) {
+              }
+            }
+            lockFile.delete();
+          }
+        };
+        lockThread.setDaemon(true);
+        lockThread.start();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Get the VM parameters that make the peer VM use a class data sharing archive of its classes, or that record that archive when the peer VM exits if it does not exist yet.
+   * @return the parameters, which are empty when class data sharing is not active or not supported.
+   */
+  private static List<String> getClassDataSharingParamList(String[] classpathItems, String mainClass) {
+    List<String> paramList = new ArrayList<String>();
+    if(!Boolean.parseBoolean(NSSystemPropertySWT.PEERVM_CLASSDATASHARING.get())) {
+      return paramList;
+    }
+    // Dynamic archives appeared in HotSpot 13. Other VMs may not know the options.
+    String vmName = SystemProperty.JAVA_VM_NAME.get();
+    if(vmName == null || !vmName.contains("HotSpot") && !vmName.contains("OpenJDK")) {
+      return paramList;
+    }
+    int specificationVersion;
+    try {
+      String version = SystemProperty.JAVA_SPECIFICATION_VERSION.get();
+      specificationVersion = Integer.parseInt(version.startsWith("1.")? version.substring(2): version);
+    } catch(Exception e) {
+      return paramList;
+    }
+    if(specificationVersion < 13) {
+      return paramList;
+    }
+    // The archive is only valid for the same VM and class path, so these are part of its name.
+    StringBuilder sb = new StringBuilder();
+    sb.append(SystemProperty.JAVA_HOME.get()).append('|').append(SystemProperty.JAVA_VM_VERSION.get()).append('|').append(mainClass);
+    for(String classpathItem: classpathItems) {
+      File classpathFile = new File(classpathItem);
+      sb.append('|').append(classpathItem).append(':').append(classpathFile.lastModified()).append(':').append(classpathFile.length());
+    }
+    // The peer VM loads its classes from the archive, so other users must not be able to plant one.
+    File dir;
+    try {
+      dir = Utils.getUserTempDirectory("cds");
+    } catch(IOException e) {
+      return paramList;
+    }
+    String archiveName = "peervm-" + Integer.toHexString(sb.toString().hashCode()) + ".jsa";
+    File archiveFile = new File(dir, archiveName);
+    if(archiveFile.length() > 0) {
+      paramList.add("-XX:SharedArchiveFile=" + archiveFile.getAbsolutePath());
+    } else {
+      // Only one peer VM records the archive, in case several are running. The lock is deleted when that peer VM exits, and a lock that is too old is from a VM that did not exit properly.
+      File lockFile = new File(dir, archiveName + ".lock");
+      if(lockFile.exists() && System.currentTimeMillis() - lockFile.lastModified() > CLASS_DATA_SHARING_LOCK_TIMEOUT) {
+        lockFile.delete();
+      }
+      try {
+        if(!lockFile.createNewFile()) {
+          return paramList;
+        }
+      } catch(IOException e) {
+        return paramList;
+      }
+      paramList.add(ARCHIVE_CLASSES_AT_EXIT_PARAM + archiveFile.getAbsolutePath());
+    }
+    // An archive that cannot be used or created must not prevent the peer VM from starting or print warnings.
+    paramList.add("-XX:+IgnoreUnrecognizedVMOptions");
+    paramList.add("-Xshare:auto");
+    paramList.add("-Xlog:cds=off");
+    return paramList;
+  }
+
 }
@@ -0,0 +1,188 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * A benchmark of the conversion of captured component images, which compares the former per-pixel conversion with the scanline conversion of ImageDataConverter and BufferedImageRowWriter.<br/>
+ * The capture step converts the image data of the native side to ARGB rows, and the paint step copies these rows to the image of the Swing side. Both conversions are checked to produce the same pixels.<br/>
+ * Usage: ImageConversionBenchmark [iteration count]
+ * @author Christopher Deckers
+ */
+class ImageConversionBenchmark {
+
+  private static final int[][] SIZES = new int[][] {
+    {640, 480},
+    {1920, 1080},
+    {3840, 2160},
+  };
+
+  private static interface Conversion {
+    public void run(ImageData imageData, int[] rowPixels, BufferedImage image);
+  }
+
+  private static final Conversion PER_PIXEL_CAPTURE = new Conversion() {
+    public void run(ImageData imageData, int[] rowPixels, BufferedImage image) {
+      for(int y=0; y<imageData.height; y++) {
+        capturePerPixel(imageData, y, rowPixels);
+      }
+    }
+  };
+
+  private static final Conversion SCANLINE_CAPTURE = new Conversion() {
+    public void run(ImageData imageData, int[] rowPixels, BufferedImage image) {
+      ImageDataConverter converter = ImageDataConverter.getConverter(imageData);
+      for(int y=0; y<imageData.height; y++) {
+        converter.getARGB(0, y, imageData.width, rowPixels, 0);
+      }
+    }
+  };
+
+  private static final Conversion PER_ROW_SET_RGB_PAINT = new Conversion() {
+    public void run(ImageData imageData, int[] rowPixels, BufferedImage image) {
+      int width = image.getWidth();
+      for(int y=0, height=image.getHeight(); y<height; y++) {
+        image.setRGB(0, y, width, 1, rowPixels, 0, width);
+      }
+    }
+  };
+
+  private static final Conversion ROW_WRITER_PAINT = new Conversion() {
+    public void run(ImageData imageData, int[] rowPixels, BufferedImage image) {
+      BufferedImageRowWriter rowWriter = new BufferedImageRowWriter(image);
+      int width = image.getWidth();
+      for(int y=0, height=image.getHeight(); y<height; y++) {
+        rowWriter.setRow(0, y, width, rowPixels, 0);
+      }
+    }
+  };
+
+  /**
+   * The conversion of a row that was done before ImageDataConverter, one getPixel() call and one mask and shift computation per channel for every pixel.
+   */
+  private static void capturePerPixel(ImageData imageData, int y, int[] pixels) {
+    PaletteData palette = imageData.palette;
+    for(int x=0; x<imageData.width; x++) {
+      int pixel = imageData.getPixel(x, y);
+      if (palette.isDirect) {
+        int red = pixel & palette.redMask;
+        red = (palette.redShift < 0? red >>> -palette.redShift: red << palette.redShift) & 0xFF;
+        int green = pixel & palette.greenMask;
+        green = (palette.greenShift < 0? green >>> -palette.greenShift: green << palette.greenShift) & 0xFF;
+        int blue = pixel & palette.blueMask;
+        blue = (palette.blueShift < 0? blue >>> -palette.blueShift: blue << palette.blueShift) & 0xFF;
+        pixels[x] = 0xFF000000 | red << 16 | green << 8 | blue;
+      } else {
+        RGB rgb = palette.colors[pixel];
+        pixels[x] = 0xFF000000 | rgb.red << 16 | rgb.green << 8 | rgb.blue;
+      }
+    }
+  }
+
+  private static ImageData createImageData(int width, int height, int depth, PaletteData palette) {
+    ImageData imageData = new ImageData(width, height, depth, palette);
+    Random random = new Random(width * 31 + depth);
+    int pixelMask = depth == 32? -1: (1 << depth) - 1;
+    int[] row = new int[width];
+    for(int y=0; y<height; y++) {
+      for(int x=0; x<width; x++) {
+        row[x] = random.nextInt() & pixelMask;
+      }
+      imageData.setPixels(0, y, width, row, 0);
+    }
+    return imageData;
+  }
+
+  private static PaletteData createIndexedPalette() {
+    RGB[] colors = new RGB[256];
+    for(int i=0; i<colors.length; i++) {
+      colors[i] = new RGB(i, 255 - i, i * 7 & 0xFF);
+    }
+    return new PaletteData(colors);
+  }
+
+  /**
+   * @return the best time of the iterations, in nanoseconds.
+   */
+  private static long measure(Conversion conversion, ImageData imageData, int[] rowPixels, BufferedImage image, int iterationCount) {
+    // Warm up so that the measured iterations run compiled code.
+    long warmUpEndTime = System.currentTimeMillis() + 500;
+    for(int i=0; i<3 || System.currentTimeMillis() < warmUpEndTime; i++) {
+      conversion.run(imageData, rowPixels, image);
+    }
+    long bestTime = Long.MAX_VALUE;
+    for(int i=0; i<iterationCount; i++) {
+      long startTime = System.nanoTime();
+      conversion.run(imageData, rowPixels, image);
+      bestTime = Math.min(bestTime, System.nanoTime() - startTime);
+    }
+    return bestTime;
+  }
+
+  private static boolean isCaptureIdentical(ImageData imageData) {
+    int width = imageData.width;
+    int[] expectedPixels = new int[width];
+    int[] pixels = new int[width];
+    ImageDataConverter converter = ImageDataConverter.getConverter(imageData);
+    for(int y=0; y<imageData.height; y++) {
+      capturePerPixel(imageData, y, expectedPixels);
+      converter.getARGB(0, y, width, pixels, 0);
+      if(!Arrays.equals(expectedPixels, pixels)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static String formatTime(long nanoTime) {
+    return String.format("%8.2f ms", nanoTime / 1000000d);
+  }
+
+  public static void main(String[] args) {
+    int iterationCount = args.length > 0? Integer.parseInt(args[0]): 10;
+    Object[][] layouts = new Object[][] {
+      {"24-bit RGB", 24, new PaletteData(0xFF0000, 0xFF00, 0xFF)},
+      {"24-bit BGR", 24, new PaletteData(0xFF, 0xFF00, 0xFF0000)},
+      {"32-bit BGRX", 32, new PaletteData(0xFF00, 0xFF0000, 0xFF000000)},
+      {"32-bit XRGB", 32, new PaletteData(0xFF0000, 0xFF00, 0xFF)},
+      {"16-bit RGB565", 16, new PaletteData(0xF800, 0x7E0, 0x1F)},
+      {"8-bit indexed", 8, createIndexedPalette()},
+    };
+    boolean isSuccessful = true;
+    System.out.println("Best time of " + iterationCount + " iterations.");
+    for(int[] size: SIZES) {
+      int width = size[0];
+      int height = size[1];
+      System.out.println();
+      System.out.println(width + "x" + height + ":");
+      int[] rowPixels = new int[width];
+      for(Object[] layout: layouts) {
+        ImageData imageData = createImageData(width, height, (Integer)layout[1], (PaletteData)layout[2]);
+        boolean isIdentical = isCaptureIdentical(imageData);
+        isSuccessful &= isIdentical;
+        long perPixelTime = measure(PER_PIXEL_CAPTURE, imageData, rowPixels, null, iterationCount);
+        long scanlineTime = measure(SCANLINE_CAPTURE, imageData, rowPixels, null, iterationCount);
+        System.out.println(String.format("  Capture %-14s per pixel: %s, scanline: %s, speedup: %5.1fx%s", layout[0], formatTime(perPixelTime), formatTime(scanlineTime), perPixelTime / (double)scanlineTime, isIdentical? "": " (DIFFERENT PIXELS)"));
+      }
+      BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+      long setRGBTime = measure(PER_ROW_SET_RGB_PAINT, null, rowPixels, image, iterationCount);
+      long rowWriterTime = measure(ROW_WRITER_PAINT, null, rowPixels, image, iterationCount);
+      System.out.println(String.format("  Paint   %-14s setRGB:    %s, raster:   %s, speedup: %5.1fx", "INT_RGB", formatTime(setRGBTime), formatTime(rowWriterTime), setRGBTime / (double)rowWriterTime));
+    }
+    System.out.println();
+    System.out.println(isSuccessful? "The scanline conversion matches the per-pixel conversion.": "FAILED: the scanline conversion differs from the per-pixel conversion.");
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+
+/**
+ * A converter of the pixels of an image data to opaque ARGB values, one scanline at a time.<br/>
+ * The pixels of a scanline are read in bulk, and the common direct palette layouts are converted without any mask and shift computation per channel.
+ * @author Christopher Deckers
+ */
+abstract class ImageDataConverter {
+
+  private final ImageData imageData;
+
+  private ImageDataConverter(ImageData imageData) {
+    this.imageData = imageData;
+  }
+
+  public static ImageDataConverter getConverter(ImageData imageData) {
+    PaletteData palette = imageData.palette;
+    if(!palette.isDirect) {
+      return new IndexedConverter(imageData);
+    }
+    int redMask = palette.redMask;
+    int greenMask = palette.greenMask;
+    int blueMask = palette.blueMask;
+    if(redMask == 0xFF0000 && greenMask == 0xFF00 && blueMask == 0xFF) {
+      return new ImageDataConverter(imageData) {
+        @Override
+        protected void convert(int[] pixels, int offset, int length) {
+          for(int i=offset, end=offset+length; i<end; i++) {
+            pixels[i] |= 0xFF000000;
+          }
+        }
+      };
+    }
+    if(redMask == 0xFF && greenMask == 0xFF00 && blueMask == 0xFF0000) {
+      return new ImageDataConverter(imageData) {
+        @Override
+        protected void convert(int[] pixels, int offset, int length) {
+          for(int i=offset, end=offset+length; i<end; i++) {
+            int pixel = pixels[i];
+            pixels[i] = 0xFF000000 | (pixel & 0xFF) << 16 | pixel & 0xFF00 | (pixel >> 16) & 0xFF;
+          }
+        }
+      };
+    }
+    if(redMask == 0xFF00 && greenMask == 0xFF0000 && blueMask == 0xFF000000) {
+      return new ImageDataConverter(imageData) {
+        @Override
+        protected void convert(int[] pixels, int offset, int length) {
+          for(int i=offset, end=offset+length; i<end; i++) {
+            int pixel = pixels[i];
+            pixels[i] = 0xFF000000 | (pixel & 0xFF00) << 8 | (pixel >> 8) & 0xFF00 | pixel >>> 24;
+          }
+        }
+      };
+    }
+    if(redMask == 0xFF000000 && greenMask == 0xFF0000 && blueMask == 0xFF00) {
+      return new ImageDataConverter(imageData) {
+        @Override
+        protected void convert(int[] pixels, int offset, int length) {
+          for(int i=offset, end=offset+length; i<end; i++) {
+            pixels[i] = 0xFF000000 | pixels[i] >>> 8;
+          }
+        }
+      };
+    }
+    return new DirectConverter(imageData);
+  }
+
+  /**
+   * Get a segment of a scanline. The pixels that are outside of the image data are opaque black.
+   */
+  public void getARGB(int x, int y, int width, int[] pixels, int offset) {
+    int availableWidth = y < imageData.height? Math.max(0, Math.min(width, imageData.width - x)): 0;
+    if(availableWidth > 0) {
+      imageData.getPixels(x, y, availableWidth, pixels, offset);
+      convert(pixels, offset, availableWidth);
+    }
+    for(int i=offset+availableWidth, end=offset+width; i<end; i++) {
+      pixels[i] = 0xFF000000;
+    }
+  }
+
+  /**
+   * Convert the raw pixels in place.
+   */
+  protected abstract void convert(int[] pixels, int offset, int length);
+
+  private static class DirectConverter extends ImageDataConverter {
+
+    private final int redMask;
+    private final int redShift;
+    private final int greenMask;
+    private final int greenShift;
+    private final int blueMask;
+    private final int blueShift;
+
+    public DirectConverter(ImageData imageData) {
+      super(imageData);
+      PaletteData palette = imageData.palette;
+      redMask = palette.redMask;
+      redShift = palette.redShift;
+      greenMask = palette.greenMask;
+      greenShift = palette.greenShift;
+      blueMask = palette.blueMask;
+      blueShift = palette.blueShift;
+    }
+
+    @Override
+    protected void convert(int[] pixels, int offset, int length) {
+      for(int i=offset, end=offset+length; i<end; i++) {
+        int pixel = pixels[i];
+        int red = pixel & redMask;
+        red = (redShift < 0? red >>> -redShift: red << redShift) & 0xFF;
+        int green = pixel & greenMask;
+        green = (greenShift < 0? green >>> -greenShift: green << greenShift) & 0xFF;
+        int blue = pixel & blueMask;
+        blue = (blueShift < 0? blue >>> -blueShift: blue << blueShift) & 0xFF;
+        pixels[i] = 0xFF000000 | red << 16 | green << 8 | blue;
+      }
+    }
+
+  }
+
+  private static class IndexedConverter extends ImageDataConverter {
+
+    private final int[] colors;
+
+    public IndexedConverter(ImageData imageData) {
+      super(imageData);
+      RGB[] rgbs = imageData.palette.colors;
+      colors = new int[rgbs.length];
+      for(int i=0; i<rgbs.length; i++) {
+        RGB rgb = rgbs[i];
+        colors[i] = 0xFF000000 | rgb.red << 16 | rgb.green << 8 | rgb.blue;
+      }
+    }
+
+    @Override
+    protected void convert(int[] pixels, int offset, int length) {
+      for(int i=offset, end=offset+length; i<end; i++) {
+        pixels[i] = colors[pixels[i]];
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import chrriis.dj.nativeswing.swtimpl.Message;
+
+/**
+ * The tracker of the most recent queued message for each coalescing key, which allows a queue to drop the asynchronous messages that were superseded by a more recent one while they were waiting.<br/>
+ * Messages are added when they are queued and checked when they are dequeued, which can happen from different threads. Every message that is added must be checked when it is dequeued, in the same order.<br/>
+ * Coalescing never crosses a message that cannot be coalesced, like a sync message, because that message may depend on the state that the messages before it set. The message that is kept is the last one, in its own place, so only messages that can be coalesced are between the dropped messages and the one that replaces them.
+ * @author Christopher Deckers
+ */
+class MessageCoalescer {
+
+  /**
+   * The most recent message for each key, in one map per segment of the queue, segments being separated by the messages that cannot be coalesced. The first segment is the one being dequeued and the last one is the one being queued. A segment without messages to coalesce has no map.
+   */
+  private final LinkedList<Map<Object, Message>> segmentList = new LinkedList<Map<Object, Message>>();
+
+  public MessageCoalescer() {
+    segmentList.add(null);
+  }
+
+  /**
+   * Record a message that is being queued.
+   */
+  public synchronized void add(Message message) {
+    Object key = getCoalescingKey(message);
+    if(key == null) {
+      segmentList.add(null);
+      return;
+    }
+    Map<Object, Message> lastMessageMap = segmentList.getLast();
+    if(lastMessageMap == null) {
+      lastMessageMap = new HashMap<Object, Message>();
+      segmentList.set(segmentList.size() - 1, lastMessageMap);
+    }
+    lastMessageMap.put(key, message);
+  }
+
+  /**
+   * Indicate whether a message that is dequeued was superseded by a more recent message with the same key, in which case it must be dropped.
+   */
+  public synchronized boolean isSuperseded(Message message) {
+    Object key = getCoalescingKey(message);
+    if(key == null) {
+      // All the messages that were queued before this message were dequeued.
+      if(segmentList.size() > 1) {
+        segmentList.removeFirst();
+      }
+      return false;
+    }
+    Map<Object, Message> firstMessageMap = segmentList.getFirst();
+    if(firstMessageMap == null) {
+      return false;
+    }
+    Message lastMessage = firstMessageMap.get(key);
+    if(lastMessage == message) {
+      firstMessageMap.remove(key);
+      return false;
+    }
+    // A more recent message was queued before the next message that cannot be coalesced: it is the one to run.
+    return lastMessage != null;
+  }
+
+  /**
+   * @return the coalescing key of the message, or null if the message cannot be coalesced.
+   */
+  private static Object getCoalescingKey(Message message) {
+    if(SWTNativeInterface.isMessageSyncExec(message)) {
+      return null;
+    }
+    return SWTNativeInterface.getMessageCoalescingKey(message);
+  }
+
+}
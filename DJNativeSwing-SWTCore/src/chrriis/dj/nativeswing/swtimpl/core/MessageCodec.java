@@ -0,0 +1,90 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import chrriis.dj.nativeswing.swtimpl.Message;
+import chrriis.dj.nativeswing.swtimpl.NSSystemPropertySWT;
+
+/**
+ * The encoding of messages on an out-process communication channel.<br/>
+ * Both sides announce the codec they want when the channel is opened, and the most conservative one is used.
+ * @author Christopher Deckers
+ */
+abstract class MessageCodec {
+
+  private static final int HANDSHAKE_MAGIC = 0x444A4E53;
+
+  static final int SERIALIZATION_CODEC = 0;
+  static final int BINARY_CODEC = 1;
+
+  private static int getPreferredCodec() {
+    if("serialization".equals(NSSystemPropertySWT.INTERFACE_CODEC.get())) {
+      return SERIALIZATION_CODEC;
+    }
+    return BINARY_CODEC;
+  }
+
+  /**
+   * Negotiate the codec with the other side and create it. This call blocks until the other side has announced its codec.
+   */
+  static MessageCodec createMessageCodec(InputStream is, OutputStream os) throws IOException {
+    BufferedOutputStream bos = new BufferedOutputStream(os);
+    BufferedInputStream bis = new BufferedInputStream(is);
+    DataOutputStream dos = new DataOutputStream(bos);
+    dos.writeInt(HANDSHAKE_MAGIC);
+    dos.writeByte(getPreferredCodec());
+    dos.flush();
+    DataInputStream dis = new DataInputStream(bis);
+    if(dis.readInt() != HANDSHAKE_MAGIC) {
+      throw new IOException("The other side of the communication channel is not a compatible messaging interface!");
+    }
+    int codec = Math.min(getPreferredCodec(), dis.readUnsignedByte());
+    switch(codec) {
+      case BINARY_CODEC:
+        return new BinaryMessageCodec(bis, bos);
+      default:
+        return new SerializationMessageCodec(bis, bos);
+    }
+  }
+
+  /**
+   * The exception that is thrown when a message cannot be encoded, in which case nothing was written to the stream.
+   */
+  static class MessageEncodingException extends IOException {
+    public MessageEncodingException(Message message, Throwable cause) {
+      super("Failed to encode the message: " + message, cause);
+    }
+  }
+
+  /**
+   * Write a message to the underlying stream. The data may remain buffered until the next flush.
+   * @throws MessageEncodingException when the message cannot be encoded, in which case the stream is left as is.
+   */
+  abstract void writeMessage(Message message) throws IOException;
+
+  abstract void flush() throws IOException;
+
+  /**
+   * Read the next message, blocking until one is available.
+   * @return the message, or null if the stream contained an object that is not a message.
+   */
+  abstract Message readMessage() throws IOException, ClassNotFoundException;
+
+  abstract void closeOutput() throws IOException;
+
+  abstract void closeInput() throws IOException;
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chrriis.dj.nativeswing.swtimpl.Message;
+
+/**
+ * The time that the received messages waited before they were run, per message class.
+ * @author Christopher Deckers
+ */
+class MessageLatencyStatistics {
+
+  static class Latency {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+      count.incrementAndGet();
+      totalNanos.addAndGet(nanos);
+      for(long max; nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos); ) {
+      }
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getAverageNanos() {
+      long count = this.count.get();
+      return count == 0? 0: totalNanos.get() / count;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos.get();
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + getCount() + ", average=" + getAverageNanos() / 1000 + "us, max=" + getMaxNanos() / 1000 + "us";
+    }
+
+  }
+
+  private final ConcurrentMap<Class<?>, Latency> latencyMap = new ConcurrentHashMap<Class<?>, Latency>();
+
+  /**
+   * Record the time between the reception of a message and the moment it starts to run.
+   * @param receptionTime the time of the reception, as given by System.nanoTime().
+   */
+  public void record(Message message, long receptionTime) {
+    Class<?> messageClass = message.getClass();
+    Latency latency = latencyMap.get(messageClass);
+    if(latency == null) {
+      latency = new Latency();
+      Latency existingLatency = latencyMap.putIfAbsent(messageClass, latency);
+      if(existingLatency != null) {
+        latency = existingLatency;
+      }
+    }
+    latency.record(System.nanoTime() - receptionTime);
+  }
+
+  /**
+   * Get the latencies of the message classes that were received so far.
+   */
+  public Map<Class<?>, Latency> getLatencies() {
+    return Collections.unmodifiableMap(new HashMap<Class<?>, Latency>(latencyMap));
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for(Map.Entry<Class<?>, Latency> entry: latencyMap.entrySet()) {
+      sb.append(entry.getKey().getName()).append(": ").append(entry.getValue()).append('\n');
+    }
+    return sb.toString();
+  }
+
+}
@@ -12,13 +12,17 @@ import java.awt.EventQueue;
 import java.awt.Toolkit;
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
 import org.eclipse.swt.SWT;
 
 import chrriis.dj.nativeswing.common.ObjectRegistry;
+import chrriis.dj.nativeswing.swtimpl.CommandFuture;
 import chrriis.dj.nativeswing.swtimpl.CommandMessage;
 import chrriis.dj.nativeswing.swtimpl.Message;
 import chrriis.dj.nativeswing.swtimpl.NSSystemPropertySWT;
@@ -31,6 +35,8 @@ abstract class MessagingInterface {
 
   protected static final boolean IS_DEBUGGING_MESSAGES = Boolean.parseBoolean(NSSystemPropertySWT.INTERFACE_DEBUG_PRINTMESSAGES.get());
 
+  private static final long UI_MESSAGES_TIME_BUDGET = Long.parseLong(NSSystemPropertySWT.INTERFACE_UIMESSAGES_TIMEBUDGET.get("20")) * 1000000;
+
   private int pid;
 
   public MessagingInterface(boolean isNativeSide, int pid) {
@@ -52,13 +58,17 @@ abstract class MessagingInterface {
     return isAlive;
   }
 
+  private boolean exitOnEndOfStream;
+  private final Object channelFailureLock = new Object();
+
   protected void initialize(boolean exitOnEndOfStream) {
+    this.exitOnEndOfStream = exitOnEndOfStream;
     setAlive(true);
     openChannel();
-    createReceiverThread(exitOnEndOfStream);
+    createReceiverThread();
   }
 
-  private static class CommandResultMessage extends Message {
+  static class CommandResultMessage extends Message {
 
     private final int originalID;
     private final Object result;
@@ -89,28 +99,157 @@ abstract class MessagingInterface {
 
   }
 
-  private Object RECEIVER_LOCK = new Object();
+  private static class ReceivedMessage {
+
+    private final Message message;
+    private final long receptionTime;
+
+    public ReceivedMessage(Message message, long receptionTime) {
+      this.message = message;
+      this.receptionTime = receptionTime;
+    }
+
+  }
+
+  /**
+   * The slot in which the result of a sync call is placed, once all the messages that were received before it have run.
+   */
+  private static class CommandResultSlot {
+
+    private volatile CommandResultMessage commandResultMessage;
+
+    public boolean isComplete() {
+      return commandResultMessage != null;
+    }
+
+    /**
+     * Indicate whether the messages that were received before the result have to run before the result is given.
+     */
+    public boolean isOrdered() {
+      return true;
+    }
+
+    public void complete(CommandResultMessage commandResultMessage) {
+      this.commandResultMessage = commandResultMessage;
+    }
+
+  }
+
+  /**
+   * The slot of a submitted message, which completes its future as soon as the result is received. The future is completed from a non-UI thread that is not the receiver thread, so that its listeners can send sync messages.
+   */
+  private class CommandFutureSlot extends CommandResultSlot {
+
+    private final CommandFuture commandFuture;
 
-  private CommandResultMessage processReceivedMessages() {
-    while(true) {
-      Message message;
-      synchronized(RECEIVER_LOCK) {
-        if(receivedMessageList.isEmpty()) {
-          return null;
+    public CommandFutureSlot(CommandFuture commandFuture) {
+      this.commandFuture = commandFuture;
+    }
+
+    @Override
+    public boolean isOrdered() {
+      return false;
+    }
+
+    @Override
+    public void complete(final CommandResultMessage commandResultMessage) {
+      super.complete(commandResultMessage);
+      nonUIMessageExecutor.execute(0, new Runnable() {
+        public void run() {
+          SWTNativeInterface.completeCommandFuture(commandFuture, commandResultMessage.getResult(), commandResultMessage.getException());
         }
-        message = receivedMessageList.remove(0);
+      });
+    }
+
+  }
+
+  private final ConcurrentMap<Integer, CommandResultSlot> commandResultSlotMap = new ConcurrentHashMap<Integer, CommandResultSlot>();
+
+  private boolean isCommandResultOrdered(CommandResultMessage commandResultMessage) {
+    CommandResultSlot commandResultSlot = commandResultSlotMap.get(commandResultMessage.getOriginalID());
+    return commandResultSlot != null && commandResultSlot.isOrdered();
+  }
+
+  private void completeCommandResult(CommandResultMessage commandResultMessage) {
+    CommandResultSlot commandResultSlot = commandResultSlotMap.remove(commandResultMessage.getOriginalID());
+    if(commandResultSlot == null) {
+      // The call gave up waiting.
+      if(IS_DEBUGGING_MESSAGES) {
+        System.err.println("<DROP: " + SWTNativeInterface.getMessageID(commandResultMessage));
+      }
+      return;
+    }
+    commandResultSlot.complete(commandResultMessage);
+  }
+
+  /**
+   * Process the received messages in the order they were received, and give the command results to their sync calls.
+   * @param timeBudget the time in nanoseconds after which the processing stops to let the UI thread handle its events, or -1 to process all the messages.
+   * @param commandResultSlot the slot of the sync call that processes the messages, whose completion stops the processing, or null.
+   */
+  private void processReceivedMessages(long timeBudget, CommandResultSlot commandResultSlot) {
+    long startTime = System.nanoTime();
+    while(commandResultSlot == null || !commandResultSlot.isComplete()) {
+      ReceivedMessage receivedMessage = receivedMessageQueue.poll();
+      if(receivedMessage == null) {
+        return;
       }
+      Message message = receivedMessage.message;
       if(message instanceof CommandResultMessage) {
-        return (CommandResultMessage)message;
+        // The result may be for a sync call further up the stack, which finds it when it resumes.
+        completeCommandResult((CommandResultMessage)message);
+        continue;
       }
-      runMessage(message);
+      if(messageCoalescer.isSuperseded(message)) {
+        continue;
+      }
+      runMessage(message, receivedMessage.receptionTime);
+      if(timeBudget >= 0 && System.nanoTime() - startTime > timeBudget) {
+        if(!receivedMessageQueue.isEmpty()) {
+          scheduleReceivedMessageProcessing();
+        }
+        return;
+      }
+    }
+  }
+
+  private final AtomicBoolean isReceivedMessageProcessingScheduled = new AtomicBoolean();
+
+  private final Runnable receivedMessageProcessor = new Runnable() {
+    public void run() {
+      // Cleared before processing, so that a message received in the meantime schedules a new run.
+      isReceivedMessageProcessingScheduled.set(false);
+      processReceivedMessages(UI_MESSAGES_TIME_BUDGET, null);
+    }
+  };
+
+  private void scheduleReceivedMessageProcessing() {
+    if(isReceivedMessageProcessingScheduled.compareAndSet(false, true)) {
+      asyncUIExec(receivedMessageProcessor);
     }
   }
 
+  private final MessageLatencyStatistics messageLatencyStatistics = new MessageLatencyStatistics();
+
+  /**
+   * Get the time that the received messages waited before they were run, per message class.
+   */
+  MessageLatencyStatistics getMessageLatencyStatistics() {
+    return messageLatencyStatistics;
+  }
+
+  private CommandResultMessage runMessage(Message message, long receptionTime) {
+    messageLatencyStatistics.record(message, receptionTime);
+    return runMessage(message);
+  }
+
   private CommandResultMessage runMessage(Message message) {
     if(IS_DEBUGGING_MESSAGES) {
       System.err.println(">RUN: " + SWTNativeInterface.getMessageID(message) + ", " + message);
     }
+    if(message instanceof MessagingInterfaceCommandMessage) {
+      ((MessagingInterfaceCommandMessage)message).messagingInterface = this;
+    }
     CommandResultMessage commandResultMessage;
     if(message instanceof CommandMessage) {
       CommandMessage commandMessage = (CommandMessage)message;
@@ -162,35 +301,51 @@ abstract class MessagingInterface {
     }
   }
 
-  private List<Message> receivedMessageList = new LinkedList<Message>();
-  private boolean isWaitingResponse;
+  private final Queue<ReceivedMessage> receivedMessageQueue = new ConcurrentLinkedQueue<ReceivedMessage>();
+  /**
+   * The tracker of the queued messages that a more recent one makes obsolete, which matters when the UI thread is busy.
+   */
+  private final MessageCoalescer messageCoalescer = new MessageCoalescer();
+  /**
+   * The UI thread when it is waiting for the result of a sync call.
+   */
+  private volatile Thread waitingThread;
+
+  private void wakeUpWaitingThread() {
+    Thread waitingThread = this.waitingThread;
+    if(waitingThread != null) {
+      LockSupport.unpark(waitingThread);
+    }
+  }
+
+  /**
+   * A command that concerns the messaging interface that runs it, which is not necessarily the main one when there are several peer VMs.
+   */
+  private static abstract class MessagingInterfaceCommandMessage extends CommandMessage {
+    protected transient MessagingInterface messagingInterface;
+  }
 
-  private static class CM_asyncExecResponse extends CommandMessage {
+  private static class CM_asyncExecResponse extends MessagingInterfaceCommandMessage {
     @Override
     public Object run(Object[] args) {
       int instanceID = (Integer)args[0];
-      boolean isOriginatorNativeSide = (Boolean)args[2];
-      MessagingInterface messagingInterface = SWTNativeInterface.getInstance().getMessagingInterface(!isOriginatorNativeSide);
       ThreadLock threadLock = (ThreadLock)messagingInterface.syncThreadRegistry.get(instanceID);
-      messagingInterface.syncThreadRegistry.remove(instanceID);
       if(threadLock == null) {
         return null;
       }
       synchronized(threadLock) {
-        messagingInterface.syncThreadRegistry.add(args[1], instanceID);
+        threadLock.commandResultMessage = (CommandResultMessage)args[1];
         threadLock.notify();
       }
       return null;
     }
   }
 
-  private static class CM_asyncExec extends CommandMessage {
+  private static class CM_asyncExec extends MessagingInterfaceCommandMessage {
     @Override
     public Object run(Object[] args) {
       Message message = (Message)args[1];
-      boolean isOriginatorNativeSide = (Boolean)args[2];
       SWTNativeInterface.setMessageSyncExec(message, false);
-      MessagingInterface messagingInterface = SWTNativeInterface.getInstance().getMessagingInterface(!isOriginatorNativeSide);
       CM_asyncExecResponse asyncExecResponse = new CM_asyncExecResponse();
       SWTNativeInterface.setMessageArgs(asyncExecResponse, args[0], messagingInterface.runMessage(message), messagingInterface.isNativeSide());
       messagingInterface.asyncSend(asyncExecResponse);
@@ -200,7 +355,11 @@ abstract class MessagingInterface {
 
   private ObjectRegistry syncThreadRegistry = new ObjectRegistry();
 
+  /**
+   * The lock on which a thread waits for the result of its call. The registry only keeps weak references, so the result is kept by the lock, which the waiting thread references.
+   */
   private static class ThreadLock {
+    private CommandResultMessage commandResultMessage;
   }
 
   private Object nonUISyncExec(Message message) {
@@ -209,22 +368,37 @@ abstract class MessagingInterface {
     CM_asyncExec asyncExec = new CM_asyncExec();
     SWTNativeInterface.setMessageArgs(asyncExec, instanceID, message, isNativeSide());
     asyncSend(asyncExec);
-    synchronized(threadLock) {
-      while(syncThreadRegistry.get(instanceID) instanceof ThreadLock) {
-        try {
-          threadLock.wait();
-        } catch(Exception e) {
-        }
-        if(!isAlive()) {
-          syncThreadRegistry.remove(instanceID);
-          printFailedInvocation(message);
-          return null;
+    Object previousWaitingLock = nonUIMessageExecutor.startWaiting(threadLock);
+    try {
+      while(true) {
+        Runnable laneRunnable;
+        synchronized(threadLock) {
+          // The thread also wakes up to run the messages of its component, so the result may not be there yet.
+          if(threadLock.commandResultMessage != null) {
+            break;
+          }
+          laneRunnable = nonUIMessageExecutor.pollWaitingLaneRunnable();
+          if(laneRunnable == null) {
+            try {
+              threadLock.wait();
+            } catch(Exception e) {
+            }
+            if(!isAlive()) {
+              syncThreadRegistry.remove(instanceID);
+              printFailedInvocation(message);
+              return null;
+            }
+            continue;
+          }
         }
+        // The messages of the same component would otherwise wait behind this call, while the result may depend on them.
+        nonUIMessageExecutor.runWaitingLaneRunnable(laneRunnable);
       }
-      CommandResultMessage commandResultMessage = (CommandResultMessage)syncThreadRegistry.get(instanceID);
-      syncThreadRegistry.remove(instanceID);
-      return processCommandResult(commandResultMessage);
+    } finally {
+      nonUIMessageExecutor.stopWaiting(previousWaitingLock);
     }
+    syncThreadRegistry.remove(instanceID);
+    return processCommandResult(threadLock.commandResultMessage);
   }
 
   private final Object LOCK = new Object();
@@ -241,92 +415,106 @@ abstract class MessagingInterface {
         printFailedInvocation(message);
         return null;
       }
-      CommandResultMessage commandResultMessage = null;
+      int messageID = SWTNativeInterface.getMessageID(message);
+      CommandResultSlot commandResultSlot = new CommandResultSlot();
+      commandResultSlotMap.put(messageID, commandResultSlot);
       try {
         writeMessage(message);
-        List<CommandResultMessage> commandResultMessageList = new ArrayList<CommandResultMessage>();
         while(true) {
-          commandResultMessage = processReceivedMessages();
-          if(commandResultMessage != null) {
-            if(commandResultMessage.getOriginalID() != SWTNativeInterface.getMessageID(message)) {
-              commandResultMessageList.add(commandResultMessage);
-              commandResultMessage = null;
-            } else {
-              break;
-            }
-          } else {
-            synchronized(RECEIVER_LOCK) {
-              boolean isFirst = true;
-              while(receivedMessageList.isEmpty()) {
-                if(!isAlive()) {
-                  printFailedInvocation(message);
-                  return null;
-                }
-                if(!isFirst) {
-                  isFirst = true;
-                  if(isNativeSide()) {
-                    // Sometimes, AWT is synchronously waiting for the native side to pump some event.
-                    // The native side is currently waiting, so we set a timeout and do some pumping.
-                    SWTNativeInterface.getInstance().getDisplay().readAndDispatch();
-                  } else {
-                    // On Mac OS, under rare circumstances, we have a situation where SWT is waiting synchronously on AWT, while AWT is blocked here.
-                    // We have to use a similar forced dispatching trick.
-                    EventQueue eventQueue = Toolkit.getDefaultToolkit().getSystemEventQueue();
-                    AWTEvent nextEvent = eventQueue.peekEvent();
-                    if(nextEvent != null) {
-                      nextEvent = eventQueue.getNextEvent();
-                      if(nextEvent != null) {
-                        Method dispatchMethod = EventQueue.class.getDeclaredMethod("dispatchEvent", AWTEvent.class);
-                        dispatchMethod.setAccessible(true);
-                        dispatchMethod.invoke(eventQueue, nextEvent);
-                      }
-                    }
-                  }
-                }
-                isFirst = false;
-                isWaitingResponse = true;
-                if(isNativeSide()) {
-                  String timeout = NSSystemPropertySWT.INTERFACE_SYNCSEND_NATIVE_TIMEOUT.get();
-                  if(timeout != null) {
-                    RECEIVER_LOCK.wait(Long.parseLong(timeout));
-                  } else {
-                    RECEIVER_LOCK.wait(500);
-                  }
-                } else {
-                  // The Mac OS case is very rare, so we set a long timeout.
-                  String timeout = NSSystemPropertySWT.INTERFACE_SYNCSEND_LOCAL_TIMEOUT.get();
-                  if(timeout != null) {
-                    RECEIVER_LOCK.wait(Long.parseLong(timeout));
-                  } else {
-                    RECEIVER_LOCK.wait(5000);
-                  }
-                }
-                isWaitingResponse = false;
-              }
-            }
+          // The messages that were received before the result run first.
+          processReceivedMessages(-1, commandResultSlot);
+          if(commandResultSlot.isComplete()) {
+            break;
           }
           if(!isAlive()) {
             printFailedInvocation(message);
             return null;
           }
+          waitForReceivedMessage(commandResultSlot);
         }
-        synchronized(RECEIVER_LOCK) {
-          if(!commandResultMessageList.isEmpty()) {
-            receivedMessageList.addAll(0, commandResultMessageList);
-          } else {
-            if(!receivedMessageList.isEmpty()) {
-              asyncUIExec(new Runnable() {
-                public void run() {
-                  processReceivedMessages();
-                }
-              });
-            }
-          }
+        if(!receivedMessageQueue.isEmpty()) {
+          scheduleReceivedMessageProcessing();
         }
       } catch(Exception e) {
         throw new IllegalStateException(e);
+      } finally {
+        commandResultSlotMap.remove(messageID);
+      }
+      return processCommandResult(commandResultSlot.commandResultMessage);
+    }
+  }
+
+  private void waitForReceivedMessage(CommandResultSlot commandResultSlot) throws Exception {
+    long timeout;
+    if(isNativeSide()) {
+      String timeoutProperty = NSSystemPropertySWT.INTERFACE_SYNCSEND_NATIVE_TIMEOUT.get();
+      timeout = timeoutProperty != null? Long.parseLong(timeoutProperty): 500;
+    } else {
+      // The Mac OS case is very rare, so we set a long timeout.
+      String timeoutProperty = NSSystemPropertySWT.INTERFACE_SYNCSEND_LOCAL_TIMEOUT.get();
+      timeout = timeoutProperty != null? Long.parseLong(timeoutProperty): 5000;
+    }
+    long startTime = System.nanoTime();
+    // The receiver thread checks the waiting thread after it publishes a message or a result, so it is set before checking for them.
+    waitingThread = Thread.currentThread();
+    try {
+      if(!receivedMessageQueue.isEmpty() || commandResultSlot.isComplete() || !isAlive()) {
+        return;
+      }
+      LockSupport.parkNanos(this, timeout * 1000000);
+    } finally {
+      waitingThread = null;
+    }
+    if(receivedMessageQueue.isEmpty() && !commandResultSlot.isComplete() && isAlive() && System.nanoTime() - startTime >= timeout * 1000000) {
+      if(isNativeSide()) {
+        // Sometimes, AWT is synchronously waiting for the native side to pump some event.
+        // The native side is currently waiting, so we set a timeout and do some pumping.
+        SWTNativeInterface.getInstance().getDisplay().readAndDispatch();
+      } else {
+        // On Mac OS, under rare circumstances, we have a situation where SWT is waiting synchronously on AWT, while AWT is blocked here.
+        // We have to use a similar forced dispatching trick.
+        EventQueue eventQueue = Toolkit.getDefaultToolkit().getSystemEventQueue();
+        AWTEvent nextEvent = eventQueue.peekEvent();
+        if(nextEvent != null) {
+          nextEvent = eventQueue.getNextEvent();
+          if(nextEvent != null) {
+            Method dispatchMethod = EventQueue.class.getDeclaredMethod("dispatchEvent", AWTEvent.class);
+            dispatchMethod.setAccessible(true);
+            dispatchMethod.invoke(eventQueue, nextEvent);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Send a message that is run like a sync message by the other side, without waiting for its result.
+   * @param commandFuture the future that receives the result.
+   */
+  public void submit(Message message, CommandFuture commandFuture) {
+    SWTNativeInterface.computeMessageID(message, !isNativeSide());
+    SWTNativeInterface.setMessageUI(message, isUIThread());
+    SWTNativeInterface.setMessageSyncExec(message, true);
+    if(!isAlive()) {
+      printFailedInvocation(message);
+      SWTNativeInterface.completeCommandFuture(commandFuture, null, null);
+      return;
+    }
+    int messageID = SWTNativeInterface.getMessageID(message);
+    commandResultSlotMap.put(messageID, new CommandFutureSlot(commandFuture));
+    if(!isAlive()) {
+      // The interface died after the check, possibly after the receiver thread completed the pending slots: whoever removes the slot completes the future.
+      if(commandResultSlotMap.remove(messageID) != null) {
+        printFailedInvocation(message);
+        SWTNativeInterface.completeCommandFuture(commandFuture, null, null);
       }
-      return processCommandResult(commandResultMessage);
+      return;
+    }
+    try {
+      writeMessage(message);
+    } catch(Exception e) {
+      commandResultSlotMap.remove(messageID);
+      throw new IllegalStateException(e);
     }
   }
 
@@ -345,8 +533,19 @@ abstract class MessagingInterface {
   }
 
   public void asyncSend(Message message) {
+    asyncSend(message, isUIThread());
+  }
+
+  /**
+   * Send a message asynchronously so that it runs in the UI thread of the other side whatever the current thread, which orders it with the UI messages that are sent after it.
+   */
+  public void asyncSendUI(Message message) {
+    asyncSend(message, true);
+  }
+
+  private void asyncSend(Message message, boolean isUI) {
     SWTNativeInterface.computeMessageID(message, !isNativeSide());
-    SWTNativeInterface.setMessageUI(message, isUIThread());
+    SWTNativeInterface.setMessageUI(message, isUI);
     SWTNativeInterface.setMessageSyncExec(message, false);
     try {
       writeMessage(message);
@@ -370,6 +569,32 @@ abstract class MessagingInterface {
 
   protected abstract Message readMessageFromChannel() throws IOException, ClassNotFoundException;
 
+  /**
+   * Called by the writer of the channel when a message was not sent, because it could not be encoded, or because the channel failed or was closed while it was queued. The call that waits for a result gets the failure, whichever side it is on.
+   */
+  void notifyMessageNotSent(Message message, Exception exception) {
+    printFailedInvocation(message);
+    if(message instanceof CommandResultMessage) {
+      // The result could not be sent, so the other side gets the failure instead. The failure is sent as text in case the exception cannot be encoded either.
+      asyncSend(new CommandResultMessage(((CommandResultMessage)message).getOriginalID(), null, new IOException(exception.toString())));
+    } else if(message instanceof CM_asyncExecResponse) {
+      Object[] args = SWTNativeInterface.getMessageArgs((CommandMessage)message);
+      CM_asyncExecResponse asyncExecResponse = new CM_asyncExecResponse();
+      SWTNativeInterface.setMessageArgs(asyncExecResponse, args[0], new CommandResultMessage(((CommandResultMessage)args[1]).getOriginalID(), null, new IOException(exception.toString())), args[2]);
+      asyncSend(asyncExecResponse);
+    } else if(message instanceof CM_asyncExec) {
+      // A sync call from a non-UI thread, which waits for its response.
+      Object[] args = SWTNativeInterface.getMessageArgs((CommandMessage)message);
+      CM_asyncExecResponse asyncExecResponse = new CM_asyncExecResponse();
+      SWTNativeInterface.setMessageArgs(asyncExecResponse, args[0], new CommandResultMessage(SWTNativeInterface.getMessageID((Message)args[1]), null, exception), args[2]);
+      asyncExecResponse.messagingInterface = this;
+      asyncExecResponse.run(SWTNativeInterface.getMessageArgs(asyncExecResponse));
+    } else if(SWTNativeInterface.isMessageSyncExec(message)) {
+      completeCommandResult(new CommandResultMessage(SWTNativeInterface.getMessageID(message), null, exception));
+      wakeUpWaitingThread();
+    }
+  }
+
   private void printFailedInvocation(Message message) {
     System.err.println("Failed messaging: " + message);
   }
@@ -382,7 +607,80 @@ abstract class MessagingInterface {
     return pid;
   }
 
-  private void createReceiverThread(final boolean exitOnEndOfStream) {
+  private NonUIMessageExecutor nonUIMessageExecutor;
+
+  /**
+   * Get the executor of the messages that were sent from a thread that is not the UI thread, which gives access to its statistics.
+   */
+  NonUIMessageExecutor getNonUIMessageExecutor() {
+    return nonUIMessageExecutor;
+  }
+
+  /**
+   * Get the ID of the component that a message targets, if any, so that the non-UI messages of a component run in order.
+   */
+  private static int getComponentID(Message message) {
+    if(message instanceof CM_asyncExec) {
+      message = (Message)SWTNativeInterface.getMessageArgs((CommandMessage)message)[1];
+    }
+    if(message instanceof ControlCommandMessage) {
+      return ((ControlCommandMessage)message).getComponentID();
+    }
+    return 0;
+  }
+
+  /**
+   * Take the interface down when its channel fails, whether it is the receiver that cannot read or the writer that cannot write, and unlock all the calls that wait for a result.
+   */
+  void notifyChannelFailed(Exception exception) {
+    boolean isFailing;
+    synchronized(channelFailureLock) {
+      isFailing = isAlive();
+      if(isFailing) {
+        setAlive(false);
+      }
+    }
+    boolean isRespawned = false;
+    if(isFailing) {
+      if(exitOnEndOfStream) {
+        terminate();
+        return;
+      }
+      exception.printStackTrace();
+      // A spare or an additional peer VM that dies does not take the native interface down.
+      if(!SWTNativeInterface.OutProcess.notifySecondaryMessagingInterfaceKilled(this)) {
+        try {
+          isRespawned = SWTNativeInterface.getInstance().notifyKilled();
+        } catch(Exception ex) {
+          ex.printStackTrace();
+        }
+      }
+    }
+    // Unlock all locked sync calls
+    receivedMessageQueue.clear();
+    wakeUpWaitingThread();
+    // Submitted messages get a null result, like the sync calls that give up.
+    for(int messageID: commandResultSlotMap.keySet()) {
+      CommandResultSlot commandResultSlot = commandResultSlotMap.get(messageID);
+      if(commandResultSlot instanceof CommandFutureSlot) {
+        completeCommandResult(new CommandResultMessage(messageID, null, null));
+      }
+    }
+    for(int instanceID: syncThreadRegistry.getInstanceIDs()) {
+      Object o = syncThreadRegistry.get(instanceID);
+      if(o instanceof ThreadLock) {
+        synchronized(o) {
+          o.notify();
+        }
+      }
+    }
+    if(isRespawned) {
+      SWTNativeInterface.getInstance().notifyRespawned();
+    }
+  }
+
+  private void createReceiverThread() {
+    nonUIMessageExecutor = new NonUIMessageExecutor("NativeSwing[" + pid + "] " + (isNativeSide()? "SWT": "Swing") + " Non-UI Message Executor");
     Thread receiverThread = new Thread("NativeSwing[" + pid + "] " + (isNativeSide()? "SWT": "Swing") + " Receiver") {
       @Override
       public void run() {
@@ -391,68 +689,38 @@ abstract class MessagingInterface {
           try {
             message = readMessageFromChannel();
           } catch(Exception e) {
-            boolean isRespawned = false;
-            if(MessagingInterface.this.isAlive()) {
-              setAlive(false);
-              if(exitOnEndOfStream) {
-                terminate();
-                return;
-              }
-              e.printStackTrace();
-              try {
-                isRespawned = SWTNativeInterface.getInstance().notifyKilled();
-              } catch(Exception ex) {
-                ex.printStackTrace();
-              }
-            }
-            // Unlock all locked sync calls
-            synchronized(RECEIVER_LOCK) {
-              receivedMessageList.clear();
-              RECEIVER_LOCK.notify();
-            }
-            for(int instanceID: syncThreadRegistry.getInstanceIDs()) {
-              Object o = syncThreadRegistry.get(instanceID);
-              if(o instanceof ThreadLock) {
-                synchronized(o) {
-                  o.notify();
-                }
-              }
-            }
-            if(isRespawned) {
-              SWTNativeInterface.getInstance().notifyRespawned();
-            }
+            notifyChannelFailed(e);
           }
           if(message != null) {
-            if(!SWTNativeInterface.isMessageUI(message)) {
+            if(message instanceof CM_asyncExecResponse) {
+              // It only wakes up a waiting thread, and must not wait behind the threads it would wake up.
+              runMessage(message);
+            } else if(message instanceof CommandResultMessage && (receivedMessageQueue.isEmpty() || !isCommandResultOrdered((CommandResultMessage)message))) {
+              // Nothing received before the result remains to be run, so the call can have it right away.
+              completeCommandResult((CommandResultMessage)message);
+              wakeUpWaitingThread();
+            } else if(!(message instanceof CommandResultMessage) && !SWTNativeInterface.isMessageUI(message)) {
               final Message message_ = message;
-              new Thread("NativeSwing[" + getPID() + "] Non-UI Message [" + SWTNativeInterface.getMessageID(message) + "] Executor") {
-                @Override
+              final long receptionTime = System.nanoTime();
+              nonUIMessageExecutor.execute(getComponentID(message), new Runnable() {
                 public void run() {
-                  runMessage(message_);
+                  runMessage(message_, receptionTime);
                 }
-              }.start();
+              });
             } else {
-              synchronized(RECEIVER_LOCK) {
-                receivedMessageList.add(message);
-                if(isWaitingResponse) {
-                  RECEIVER_LOCK.notify();
-                } else if(receivedMessageList.size() == 1) {
-                  asyncUIExec(new Runnable() {
-                    public void run() {
-                      CommandResultMessage commandResultMessage = processReceivedMessages();
-                      if(commandResultMessage != null) {
-                        synchronized(RECEIVER_LOCK) {
-                          receivedMessageList.add(0, commandResultMessage);
-                        }
-                      }
-                    }
-                  });
-                }
+              // A result waits for the messages that were received before it, whatever the thread that sent it.
+              messageCoalescer.add(message);
+              receivedMessageQueue.add(new ReceivedMessage(message, System.nanoTime()));
+              if(waitingThread != null) {
+                wakeUpWaitingThread();
+              } else {
+                scheduleReceivedMessageProcessing();
               }
             }
           }
         }
         closeChannel();
+        nonUIMessageExecutor.shutdown();
       }
     };
     receiverThread.setDaemon(true);
@@ -0,0 +1,252 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chrriis.dj.nativeswing.swtimpl.NSSystemPropertySWT;
+
+/**
+ * The executor of the messages that are not meant for the UI thread.<br/>
+ * The messages run on a pool of threads that are reused, except those of the same component, which run one after the other in the order they were received. The pool hands each message to a thread directly: when all its threads are busy, for example waiting for the results of sync calls, or when the queues of the components are full, a message runs in a thread of its own like before the pool existed. A message is never queued behind messages that may be waiting for it.<br/>
+ * A message of a component that waits for the result of a sync call runs the messages of that component that are received in the meantime, like the UI thread does, because they may be needed to produce that result.
+ * @author Christopher Deckers
+ */
+class NonUIMessageExecutor {
+
+  private static final int MAX_THREADS = Integer.parseInt(NSSystemPropertySWT.INTERFACE_NONUIEXECUTOR_MAXTHREADS.get("16"));
+  private static final int QUEUE_SIZE = Integer.parseInt(NSSystemPropertySWT.INTERFACE_NONUIEXECUTOR_QUEUESIZE.get("1024"));
+  private static final boolean IS_USING_VIRTUAL_THREADS = !"false".equals(NSSystemPropertySWT.INTERFACE_NONUIEXECUTOR_VIRTUALTHREADS.get());
+
+  private final String threadName;
+  private final ThreadPoolExecutor threadPoolExecutor;
+  private final Map<Integer, Lane> laneMap = new HashMap<Integer, Lane>();
+  private final ThreadLocal<Lane> currentLane = new ThreadLocal<Lane>();
+  private int laneRunnableCount;
+  private final AtomicInteger queueDepth = new AtomicInteger();
+  private final AtomicLong rejectedCount = new AtomicLong();
+
+  private class Lane implements Runnable {
+
+    private final int key;
+    private final LinkedList<Runnable> runnableList = new LinkedList<Runnable>();
+    /**
+     * The lock on which the runnable that is running waits for the result of a sync call, or null.
+     */
+    private Object waitingLock;
+
+    public Lane(int key) {
+      this.key = key;
+    }
+
+    private void addRunnable(Runnable runnable) {
+      runnableList.add(runnable);
+      laneRunnableCount++;
+    }
+
+    private Runnable removeFirstRunnable() {
+      laneRunnableCount--;
+      return runnableList.removeFirst();
+    }
+
+    public void run() {
+      currentLane.set(this);
+      try {
+        while(true) {
+          Runnable runnable;
+          synchronized(laneMap) {
+            if(runnableList.isEmpty()) {
+              laneMap.remove(key);
+              return;
+            }
+            runnable = removeFirstRunnable();
+          }
+          runRunnable(runnable);
+        }
+      } finally {
+        currentLane.remove();
+      }
+    }
+
+  }
+
+  /**
+   * @param threadName the prefix of the names of the threads, to which a counter is appended.
+   */
+  public NonUIMessageExecutor(String threadName) {
+    this.threadName = threadName;
+    threadPoolExecutor = new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), createThreadFactory(threadName), new RejectedExecutionHandler() {
+      public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+        startOverflowThread(runnable);
+      }
+    });
+  }
+
+  private static ThreadFactory createThreadFactory(final String threadName) {
+    if(IS_USING_VIRTUAL_THREADS) {
+      try {
+        // Virtual threads are only available on recent JDKs, so they are created through reflection.
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadName + "-", 1L);
+        return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+      } catch(Exception e) {
+        // Not available: use regular threads.
+      }
+    }
+    return new ThreadFactory() {
+      private final AtomicInteger threadCount = new AtomicInteger();
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, threadName + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  private void startOverflowThread(Runnable runnable) {
+    rejectedCount.incrementAndGet();
+    Thread thread = new Thread(runnable, threadName + " (overflow)");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Execute a runnable.
+   * @param key the key of the runnables that must run in order, or 0 if the runnable can run concurrently with any other.
+   */
+  public void execute(int key, Runnable runnable) {
+    queueDepth.incrementAndGet();
+    if(key == 0) {
+      threadPoolExecutor.execute(new QueuedRunnable(runnable));
+      return;
+    }
+    Lane newLane = null;
+    Object waitingLock = null;
+    boolean isOverflowing = false;
+    synchronized(laneMap) {
+      Lane lane = laneMap.get(key);
+      if(lane == null) {
+        // A new lane gets a thread of the pool, or an overflow thread.
+        newLane = new Lane(key);
+        newLane.addRunnable(runnable);
+        laneMap.put(key, newLane);
+      } else if(laneRunnableCount < QUEUE_SIZE) {
+        lane.addRunnable(runnable);
+        waitingLock = lane.waitingLock;
+      } else {
+        isOverflowing = true;
+      }
+    }
+    if(newLane != null) {
+      threadPoolExecutor.execute(newLane);
+    } else if(isOverflowing) {
+      // The message loses its order with the other messages of the component.
+      startOverflowThread(new QueuedRunnable(runnable));
+    } else if(waitingLock != null) {
+      synchronized(waitingLock) {
+        waitingLock.notify();
+      }
+    }
+  }
+
+  /**
+   * Indicate that the current thread is going to wait for the result of a sync call on the given lock. If the current thread runs the messages of a component, the lock is notified when a message of that component is received, which the thread has to run with runWaitingLaneRunnable().
+   * @return the lock that the thread was waiting on before, to restore with stopWaiting().
+   */
+  public Object startWaiting(Object waitingLock) {
+    Lane lane = currentLane.get();
+    if(lane == null) {
+      return null;
+    }
+    synchronized(laneMap) {
+      Object previousWaitingLock = lane.waitingLock;
+      lane.waitingLock = waitingLock;
+      return previousWaitingLock;
+    }
+  }
+
+  public void stopWaiting(Object previousWaitingLock) {
+    Lane lane = currentLane.get();
+    if(lane == null) {
+      return;
+    }
+    synchronized(laneMap) {
+      lane.waitingLock = previousWaitingLock;
+    }
+  }
+
+  /**
+   * Remove the next runnable of the component whose message is waiting in the current thread.
+   * @return the runnable, or null if there is none.
+   */
+  public Runnable pollWaitingLaneRunnable() {
+    Lane lane = currentLane.get();
+    if(lane == null) {
+      return null;
+    }
+    synchronized(laneMap) {
+      return lane.runnableList.isEmpty()? null: lane.removeFirstRunnable();
+    }
+  }
+
+  public void runWaitingLaneRunnable(Runnable runnable) {
+    runRunnable(runnable);
+  }
+
+  private class QueuedRunnable implements Runnable {
+
+    private final Runnable runnable;
+
+    public QueuedRunnable(Runnable runnable) {
+      this.runnable = runnable;
+    }
+
+    public void run() {
+      runRunnable(runnable);
+    }
+
+  }
+
+  private void runRunnable(Runnable runnable) {
+    queueDepth.decrementAndGet();
+    try {
+      runnable.run();
+    } catch(Throwable t) {
+      t.printStackTrace();
+    }
+  }
+
+  /**
+   * Get the number of runnables that are waiting to run.
+   */
+  public int getQueueDepth() {
+    return queueDepth.get();
+  }
+
+  /**
+   * Get the number of times all the threads of the pool or the queues of the components were busy, leading to the creation of a dedicated thread.
+   */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  public void shutdown() {
+    threadPoolExecutor.shutdown();
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.io.IOException;
+
+import javax.swing.SwingUtilities;
+
+import org.eclipse.swt.widgets.Display;
+
+import chrriis.dj.nativeswing.swtimpl.Message;
+import chrriis.dj.nativeswing.swtimpl.NSSystemPropertySWT;
+
+/**
+ * @author Christopher Deckers
+ */
+abstract class OutProcessSharedMemoryMessagingInterface extends MessagingInterface {
+
+  public OutProcessSharedMemoryMessagingInterface(boolean isNativeSide, SharedMemoryChannel channel, boolean exitOnEndOfStream, int pid) {
+    super(isNativeSide, pid);
+    this.channel = channel;
+    initialize(exitOnEndOfStream);
+  }
+
+  private MessageCodec messageCodec;
+  private BatchingMessageWriter messageWriter;
+
+  @Override
+  public void destroy() {
+    setAlive(false);
+    messageWriter.close();
+    channel.close();
+  }
+
+  private SharedMemoryChannel channel;
+
+  @Override
+  protected void openChannel() {
+    try {
+      messageCodec = MessageCodec.createMessageCodec(channel.getInputStream(), channel.getOutputStream());
+      messageWriter = new BatchingMessageWriter(this, messageCodec, "NativeSwing[" + getPID() + "] " + (isNativeSide()? "SWT": "Swing") + " Sender");
+    } catch(IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @Override
+  protected void closeChannel() {
+    messageWriter.close();
+    try {
+      messageCodec.closeOutput();
+    } catch(Exception e) {
+    }
+    try {
+      messageCodec.closeInput();
+    } catch(Exception e) {
+    }
+    channel.close();
+  }
+
+  @Override
+  protected void writeMessageToChannel(Message message) throws IOException {
+    messageWriter.write(message);
+  }
+
+  @Override
+  protected Message readMessageFromChannel() throws IOException, ClassNotFoundException {
+    Message message = messageCodec.readMessage();
+    if(message != null) {
+      if(IS_DEBUGGING_MESSAGES) {
+        System.err.println("RECV: " + SWTNativeInterface.getMessageID(message) + ", " + message);
+      }
+    }
+    return message;
+  }
+
+  static class SWTOutProcessSharedMemoryMessagingInterface extends OutProcessSharedMemoryMessagingInterface {
+
+    private Display display;
+
+    public SWTOutProcessSharedMemoryMessagingInterface(SharedMemoryChannel channel, final boolean exitOnEndOfStream, Display display, int pid) {
+      super(true, channel, exitOnEndOfStream, pid);
+      this.display = display;
+    }
+
+    @Override
+    protected void asyncUIExec(Runnable runnable) {
+      display.asyncExec(runnable);
+    }
+
+    @Override
+    public boolean isUIThread() {
+      return Thread.currentThread() == display.getThread();
+    }
+
+    @Override
+    protected void terminate() {
+      if(isNativeSide() && Boolean.parseBoolean(NSSystemPropertySWT.PEERVM_DEBUG_PRINTSTOPMESSAGE.get())) {
+        System.err.println("Stopping peer VM #" + getPID());
+      }
+      super.terminate();
+    }
+
+  }
+
+  static class SwingOutProcessSharedMemoryMessagingInterface extends OutProcessSharedMemoryMessagingInterface {
+
+    private final Process process;
+
+    public SwingOutProcessSharedMemoryMessagingInterface(SharedMemoryChannel channel, final boolean exitOnEndOfStream, Process process, int pid) {
+      super(false, channel, exitOnEndOfStream, pid);
+      this.process = process;
+    }
+
+    @Override
+    protected void asyncUIExec(Runnable runnable) {
+      SwingUtilities.invokeLater(runnable);
+    }
+
+    @Override
+    public boolean isUIThread() {
+      return SwingUtilities.isEventDispatchThread();
+    }
+
+    @Override
+    public void destroy() {
+      super.destroy();
+      // It is unclear whether there is any benefit in waiting for the peer VM to be closed (I don't think of any conceptually).
+      // However, a user seems to have an issue that is improved when doing so, so let's have this waiting conditional.
+      if(process != null && Boolean.parseBoolean(NSSystemPropertySWT.INTERFACE_OUTPROCESS_SYNCCLOSING.get())) {
+        while(true) {
+          try {
+            process.waitFor();
+            break;
+          } catch (InterruptedException e) {
+          }
+        }
+      }
+    }
+
+  }
+
+}
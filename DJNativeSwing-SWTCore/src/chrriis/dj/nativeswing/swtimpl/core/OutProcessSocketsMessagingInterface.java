@@ -7,11 +7,7 @@
  */
 package chrriis.dj.nativeswing.swtimpl.core;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.net.Socket;
 
 import javax.swing.SwingUtilities;
@@ -32,14 +28,15 @@ abstract class OutProcessSocketsMessagingInterface extends MessagingInterface {
     initialize(exitOnEndOfStream);
   }
 
-  private ObjectOutputStream oos;
-  private ObjectInputStream ois;
+  private MessageCodec messageCodec;
+  private BatchingMessageWriter messageWriter;
 
   @Override
   public void destroy() {
     setAlive(false);
+    messageWriter.close();
     try {
-      ois.close();
+      messageCodec.closeInput();
     } catch(Exception e) {
     }
   }
@@ -49,20 +46,8 @@ abstract class OutProcessSocketsMessagingInterface extends MessagingInterface {
   @Override
   protected void openChannel() {
     try {
-      oos = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()) {
-        @Override
-        public synchronized void write(int b) throws IOException {
-          super.write(b);
-          oosByteCount++;
-        }
-        @Override
-        public synchronized void write(byte[] b, int off, int len) throws IOException {
-          super.write(b, off, len);
-          oosByteCount += len;
-        }
-      });
-      oos.flush();
-      ois = new ObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+      messageCodec = MessageCodec.createMessageCodec(socket.getInputStream(), socket.getOutputStream());
+      messageWriter = new BatchingMessageWriter(this, messageCodec, "NativeSwing[" + getPID() + "] " + (isNativeSide()? "SWT": "Swing") + " Sender");
     } catch(IOException e) {
       throw new RuntimeException(e);
     }
@@ -70,12 +55,13 @@ abstract class OutProcessSocketsMessagingInterface extends MessagingInterface {
 
   @Override
   protected void closeChannel() {
+    messageWriter.close();
     try {
-      oos.close();
+      messageCodec.closeOutput();
     } catch(Exception e) {
     }
     try {
-      ois.close();
+      messageCodec.closeInput();
     } catch(Exception e) {
     }
     try {
@@ -85,44 +71,20 @@ abstract class OutProcessSocketsMessagingInterface extends MessagingInterface {
     socket = null;
   }
 
-  private static final int OOS_RESET_THRESHOLD;
-
-  static {
-    String maxByteCountProperty = NSSystemPropertySWT.INTERFACE_STREAMRESETTHRESHOLD.get();
-    if(maxByteCountProperty != null) {
-      OOS_RESET_THRESHOLD = Integer.parseInt(maxByteCountProperty);
-    } else {
-      OOS_RESET_THRESHOLD = 500000;
-    }
-  }
-
-  private int oosByteCount;
-
   @Override
   protected void writeMessageToChannel(Message message) throws IOException {
-    synchronized(oos) {
-      oos.writeUnshared(message);
-      oos.flush();
-      // Messages are cached, so we need to reset() from time to time to clean the cache, or else we get an OutOfMemoryError.
-      if(oosByteCount > OOS_RESET_THRESHOLD) {
-        oos.reset();
-        oosByteCount = 0;
-      }
-    }
+    messageWriter.write(message);
   }
 
   @Override
   protected Message readMessageFromChannel() throws IOException, ClassNotFoundException {
-    Object o = ois.readUnshared();
-    if(o instanceof Message) {
-      Message message = (Message)o;
+    Message message = messageCodec.readMessage();
+    if(message != null) {
       if(IS_DEBUGGING_MESSAGES) {
         System.err.println("RECV: " + SWTNativeInterface.getMessageID(message) + ", " + message);
       }
-      return message;
     }
-    System.err.println("Unknown message: " + o);
-    return null;
+    return message;
   }
 
   static class SWTOutProcessSocketsMessagingInterface extends OutProcessSocketsMessagingInterface {
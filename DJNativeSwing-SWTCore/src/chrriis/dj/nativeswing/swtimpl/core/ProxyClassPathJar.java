@@ -0,0 +1,277 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import chrriis.dj.nativeswing.common.Utils;
+import chrriis.dj.nativeswing.common.WebServer;
+import chrriis.dj.nativeswing.common.WebServer.HTTPRequest;
+import chrriis.dj.nativeswing.common.WebServer.WebServerContent;
+import chrriis.dj.nativeswing.swtimpl.common.NetworkURLClassLoader;
+
+/**
+ * A jar of the classes and resources that the peer VM needs when it uses the proxy class loader, so that it can get them in one request instead of one request per class.<br/>
+ * The jar merges the jars and directories that contain the reference classes and resources. It is named after the SHA-1 hash of its content, which lets the peer VM reuse the copy it cached during a previous launch.
+ * @author Christopher Deckers
+ */
+class ProxyClassPathJar {
+
+  private static List<Object> jarReferenceList;
+  private static String jarHash;
+
+  private ProxyClassPathJar() {}
+
+  /**
+   * Get the directory where the jars are cached, which is shared with the peer VM.
+   */
+  static File getCacheDirectory() {
+    return NetworkURLClassLoader.getJarCacheDirectory();
+  }
+
+  /**
+   * Indicate whether a cached jar has the content that its name announces, as the name can be predicted and the file may have been planted.
+   */
+  private static boolean isJarValid(File jarFile, String hash) {
+    try {
+      return jarFile.length() > 0 && hash.equals(NetworkURLClassLoader.getJarHash(jarFile));
+    } catch(Exception e) {
+      return false;
+    }
+  }
+
+  /**
+   * Get the hash of the jar of the given references, creating the jar in the cache directory if needed.
+   * @param referenceList the classes and the resource paths that the peer VM needs.
+   * @return the hash of the jar, or null if the jar could not be created.
+   */
+  public static synchronized String getJarHash(List<Object> referenceList) {
+    if(jarHash != null && referenceList.equals(jarReferenceList) && isJarValid(new File(getCacheDirectory(), jarHash + ".jar"), jarHash)) {
+      return jarHash;
+    }
+    jarHash = null;
+    jarReferenceList = null;
+    try {
+      List<URL> codeSourceURLList = new ArrayList<URL>();
+      for(Object reference: referenceList) {
+        URL codeSourceURL = getCodeSourceURL(reference);
+        if(codeSourceURL != null && !codeSourceURLList.contains(codeSourceURL)) {
+          codeSourceURLList.add(codeSourceURL);
+        }
+      }
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ZipOutputStream out = new ZipOutputStream(baos);
+      Set<String> entryNameSet = new HashSet<String>();
+      for(URL codeSourceURL: codeSourceURLList) {
+        try {
+          if("file".equals(codeSourceURL.getProtocol()) && new File(codeSourceURL.toURI()).isDirectory()) {
+            addDirectory(out, entryNameSet, new File(codeSourceURL.toURI()), "");
+          } else {
+            addJar(out, entryNameSet, codeSourceURL);
+          }
+        } catch(Exception e) {
+          // The peer VM gets the classes of that code source one by one.
+          e.printStackTrace();
+        }
+      }
+      out.close();
+      byte[] bytes = baos.toByteArray();
+      String hash = getHash(bytes);
+      File cacheDirectory = getCacheDirectory();
+      File jarFile = new File(cacheDirectory, hash + ".jar");
+      if(!isJarValid(jarFile, hash)) {
+        File tmpFile = File.createTempFile(hash, ".tmp", cacheDirectory);
+        OutputStream fout = new FileOutputStream(tmpFile);
+        try {
+          fout.write(bytes);
+        } finally {
+          fout.close();
+        }
+        // A file with a wrong content is replaced. Another VM may have created a valid one in the meantime.
+        jarFile.delete();
+        if(!tmpFile.renameTo(jarFile)) {
+          tmpFile.delete();
+          if(!isJarValid(jarFile, hash)) {
+            throw new IOException("Failed to cache the jar: " + jarFile);
+          }
+        }
+      }
+      jarReferenceList = new ArrayList<Object>(referenceList);
+      jarHash = hash;
+      return hash;
+    } catch(Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  /**
+   * Get the URL from which the peer VM can download the jar.
+   */
+  public static String getJarURL(String hash) {
+    return WebServer.getDefaultWebServer().getDynamicContentURL(ProxyClassPathJar.class.getName(), hash);
+  }
+
+  protected static WebServerContent getWebServerContent(HTTPRequest httpRequest) {
+    String hash = httpRequest.getResourcePath();
+    // The name is used in a file path, so it has to be a known hash.
+    synchronized(ProxyClassPathJar.class) {
+      if(!hash.equals(jarHash)) {
+        return null;
+      }
+    }
+    // The content that is sent is the one that is checked, so that the file cannot be replaced in between.
+    final byte[] bytes;
+    try {
+      InputStream in = new BufferedInputStream(new FileInputStream(new File(getCacheDirectory(), hash + ".jar")));
+      try {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for(int n; (n=in.read(buffer)) != -1; baos.write(buffer, 0, n)) {
+        }
+        bytes = baos.toByteArray();
+      } finally {
+        in.close();
+      }
+      if(!hash.equals(getHash(bytes))) {
+        return null;
+      }
+    } catch(Exception e) {
+      return null;
+    }
+    return new WebServerContent() {
+      @Override
+      public String getContentType() {
+        return "application/java-archive";
+      }
+      @Override
+      public long getContentLength() {
+        return bytes.length;
+      }
+      @Override
+      public InputStream getInputStream() {
+        return new ByteArrayInputStream(bytes);
+      }
+    };
+  }
+
+  /**
+   * Get the URL of the jar or of the root directory that contains a reference.
+   */
+  private static URL getCodeSourceURL(Object reference) throws IOException {
+    String resourcePath;
+    if(reference instanceof Class<?>) {
+      resourcePath = ((Class<?>)reference).getName().replace('.', '/') + ".class";
+    } else {
+      resourcePath = (String)reference;
+    }
+    URL resourceURL = Utils.getResourceWithinJavaModules(SWTNativeInterface.class, '/' + resourcePath);
+    if(resourceURL == null) {
+      return null;
+    }
+    String url = resourceURL.toExternalForm();
+    if(url.startsWith("jar:")) {
+      int index = url.indexOf("!/");
+      if(index == -1) {
+        return null;
+      }
+      return new URL(url.substring("jar:".length(), index));
+    }
+    if("file".equals(resourceURL.getProtocol()) && url.endsWith(resourcePath)) {
+      return new URL(url.substring(0, url.length() - resourcePath.length()));
+    }
+    return null;
+  }
+
+  private static boolean isExcluded(String entryName) {
+    if(!entryName.startsWith("META-INF/")) {
+      return false;
+    }
+    // Signatures would not match the merged jar.
+    String name = entryName.toUpperCase();
+    return name.equals("META-INF/MANIFEST.MF") || name.endsWith(".SF") || name.endsWith(".RSA") || name.endsWith(".DSA") || name.endsWith(".EC");
+  }
+
+  private static void addJar(ZipOutputStream out, Set<String> entryNameSet, URL jarURL) throws IOException {
+    ZipInputStream in = new ZipInputStream(new BufferedInputStream(jarURL.openStream()));
+    try {
+      byte[] bytes = new byte[8192];
+      for(ZipEntry entry; (entry = in.getNextEntry()) != null; ) {
+        String entryName = entry.getName();
+        if(entry.isDirectory() || isExcluded(entryName) || !entryNameSet.add(entryName)) {
+          continue;
+        }
+        ZipEntry newEntry = new ZipEntry(entryName);
+        // The time is part of the content, so it must not change from one launch to the next.
+        newEntry.setTime(entry.getTime());
+        out.putNextEntry(newEntry);
+        for(int n; (n=in.read(bytes)) != -1; out.write(bytes, 0, n)) {
+        }
+        out.closeEntry();
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void addDirectory(ZipOutputStream out, Set<String> entryNameSet, File dir, String path) throws IOException {
+    File[] files = dir.listFiles();
+    if(files == null) {
+      return;
+    }
+    byte[] bytes = new byte[8192];
+    for(File file: files) {
+      String entryName = path + file.getName();
+      if(file.isDirectory()) {
+        addDirectory(out, entryNameSet, file, entryName + "/");
+        continue;
+      }
+      if(isExcluded(entryName) || !entryNameSet.add(entryName)) {
+        continue;
+      }
+      ZipEntry newEntry = new ZipEntry(entryName);
+      newEntry.setTime(file.lastModified());
+      out.putNextEntry(newEntry);
+      InputStream in = new BufferedInputStream(new FileInputStream(file));
+      try {
+        for(int n; (n=in.read(bytes)) != -1; out.write(bytes, 0, n)) {
+        }
+      } finally {
+        in.close();
+      }
+      out.closeEntry();
+    }
+  }
+
+  private static String getHash(byte[] bytes) throws Exception {
+    byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+    StringBuilder sb = new StringBuilder();
+    for(byte b: digest) {
+      sb.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+    }
+    return sb.toString();
+  }
+
+}
@@ -35,6 +35,7 @@ import java.awt.peer.ComponentPeer;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.StringReader;
 import java.lang.ref.Reference;
@@ -45,8 +46,11 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EventListener;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -72,9 +76,7 @@ import org.eclipse.swt.events.PaintListener;
 import org.eclipse.swt.graphics.GC;
 import org.eclipse.swt.graphics.Image;
 import org.eclipse.swt.graphics.ImageData;
-import org.eclipse.swt.graphics.PaletteData;
 import org.eclipse.swt.graphics.Point;
-import org.eclipse.swt.graphics.RGB;
 import org.eclipse.swt.graphics.Region;
 import org.eclipse.swt.layout.FillLayout;
 import org.eclipse.swt.widgets.Composite;
@@ -85,6 +87,7 @@ import org.eclipse.swt.widgets.Shell;
 import chrriis.dj.nativeswing.NativeComponentWrapper;
 import chrriis.dj.nativeswing.common.ObjectRegistry;
 import chrriis.dj.nativeswing.common.Utils;
+import chrriis.dj.nativeswing.swtimpl.CommandFuture;
 import chrriis.dj.nativeswing.swtimpl.CommandMessage;
 import chrriis.dj.nativeswing.swtimpl.LocalMessage;
 import chrriis.dj.nativeswing.swtimpl.Message;
@@ -126,6 +129,11 @@ public abstract class SWTNativeComponent extends NativeComponent {
       SWTNativeComponent.this.paintComponent(image, rectangles);
     }
 
+    @Override
+    protected void paintNativeComponentIncrementally(BufferedImage image, Rectangle[] rectangles) {
+      SWTNativeComponent.this.paintComponent(image, rectangles, true);
+    }
+
     @Override
     protected void setNativeComponentEnabled(boolean isEnabled) {
       setControlParentEnabled(isEnabled, Utils.IS_MAC && isEnabled && isShowing());
@@ -232,6 +240,45 @@ public abstract class SWTNativeComponent extends NativeComponent {
     }
   }
 
+  private static class CMLocal_submit extends LocalMessage {
+    @Override
+    public Object run(Object[] args) {
+      SWTNativeInterface.getInstance().submit_(true, (CommandMessage)args[0], (CommandFuture)args[1]);
+      return null;
+    }
+  }
+
+  /**
+   * Run the given command if the control is created, or store it to run it when the creation occurs, and get its result when it is available without blocking.
+   * If the component is disposed before the command has a chance to run, its result is null.
+   * @param commandMessage the command message to run.
+   * @param args the arguments to pass to the command message.
+   * @return the future result of running the message, which is completed in a thread that is not the UI thread.
+   */
+  @Override
+  public CommandFuture runAsyncWithResult(CommandMessage commandMessage, Object... args) {
+    SWTNativeInterface nativeInterface = SWTNativeInterface.getInstance();
+    if(nativeInterface.isAlive()) {
+      nativeInterface.checkUIThread(false);
+    }
+    if(commandMessage instanceof ControlCommandMessage) {
+      ((ControlCommandMessage)commandMessage).setNativeComponent(this);
+    }
+    SWTNativeInterface.setMessageArgs(commandMessage, args);
+    CommandFuture commandFuture = SWTNativeInterface.createCommandFuture();
+    if(initializationCommandMessageList != null) {
+      CMLocal_submit submitMessage = new CMLocal_submit();
+      SWTNativeInterface.setMessageArgs(submitMessage, commandMessage, commandFuture);
+      initializationCommandMessageList.add(submitMessage);
+    } else if(!isNativePeerValid()) {
+      printFailedInvocation(commandMessage);
+      SWTNativeInterface.completeCommandFuture(commandFuture, null, null);
+    } else {
+      nativeInterface.submit_(true, commandMessage, commandFuture);
+    }
+    return commandFuture;
+  }
+
   private void printFailedInvocation(Message message) {
     if(IS_PRINTING_FAILED_MESSAGES) {
       System.err.println("Failed message to " + getComponentDescription() + ": " + message);
@@ -251,6 +298,10 @@ public abstract class SWTNativeComponent extends NativeComponent {
   }
 
   private static class CMN_reshape extends ControlCommandMessage {
+    @Override
+    protected Object getCoalescingKey() {
+      return getComponentCoalescingKey();
+    }
     @Override
     public Object run(Object[] args) {
       Shell shell = getControl().getShell();
@@ -319,12 +370,12 @@ public abstract class SWTNativeComponent extends NativeComponent {
     super.processKeyEvent(ke);
   }
 
-  private volatile Thread resizeThread;
-
   @SuppressWarnings("deprecation")
   @Override
   public void reshape(int x, int y, int width, int height) {
-    if(resizeThread == null && (width != getWidth() || height != getHeight())) {
+    boolean isResized = width != getWidth() || height != getHeight();
+    if(isResized && resizeThread == null && SWTNativeInterface.getInstance().isInProcess_()) {
+      // In process, no writer queue coalesces the sizes, so a burst of resizes is applied once.
       resizeThread = new Thread("NativeSwing Resize") {
         @Override
         public void run() {
@@ -338,8 +389,14 @@ public abstract class SWTNativeComponent extends NativeComponent {
       resizeThread.start();
     }
     super.reshape(x, y, width, height);
+    if(isResized && !SWTNativeInterface.getInstance().isInProcess_()) {
+      // Sent right away: the sizes that the native side did not apply yet are coalesced into the last one.
+      reshapeNativeComponent();
+    }
   }
 
+  private volatile Thread resizeThread;
+
   private void applyPendingReshape() {
     if(resizeThread == null) {
       return;
@@ -356,6 +413,18 @@ public abstract class SWTNativeComponent extends NativeComponent {
       return;
     }
     resizeThread = null;
+    reshapeNativeComponent();
+  }
+
+  private void reshapeNativeComponent() {
+    if(!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          reshapeNativeComponent();
+        }
+      });
+      return;
+    }
     if(isNativePeerValid()) {
       new CMN_reshape().asyncExec(SWTNativeComponent.this, getWidth(), getHeight());
     }
@@ -364,19 +433,27 @@ public abstract class SWTNativeComponent extends NativeComponent {
   private volatile Thread repaintThread;
 
   private void repaintNativeComponent() {
-    if(repaintThread == null && getWidth() > 0 && getHeight() > 0) {
-      repaintThread = new Thread("NativeSwing Repaint") {
-        @Override
-        public void run() {
-          try {
-            sleep(50);
-          } catch(Exception e) {
+    if(getWidth() <= 0 || getHeight() <= 0) {
+      return;
+    }
+    if(SWTNativeInterface.getInstance().isInProcess_()) {
+      // In process, no writer queue coalesces the redraws, so a burst of repaints is applied once.
+      if(repaintThread == null) {
+        repaintThread = new Thread("NativeSwing Repaint") {
+          @Override
+          public void run() {
+            try {
+              sleep(50);
+            } catch(Exception e) {
+            }
+            applyPendingRepaint();
           }
-          applyPendingRepaint();
-        }
-      };
-      repaintThread.start();
+        };
+        repaintThread.start();
+      }
+      return;
     }
+    redrawNativeComponent();
   }
 
   private void applyPendingRepaint() {
@@ -395,6 +472,18 @@ public abstract class SWTNativeComponent extends NativeComponent {
       return;
     }
     repaintThread = null;
+    redrawNativeComponent();
+  }
+
+  private void redrawNativeComponent() {
+    if(!SwingUtilities.isEventDispatchThread()) {
+      SwingUtilities.invokeLater(new Runnable() {
+        public void run() {
+          redrawNativeComponent();
+        }
+      });
+      return;
+    }
     if(isNativePeerValid()) {
       new CMN_redraw().asyncExec(SWTNativeComponent.this);
     }
@@ -871,18 +960,7 @@ public abstract class SWTNativeComponent extends NativeComponent {
       throwDuplicateCreationException();
     }
     additionCount++;
-    SwingUtilities.invokeLater(new Runnable() {
-      public void run() {
-        if(isNativePeerDisposed) {
-          if(additionCount > 1) {
-            throwDuplicateCreationException();
-          }
-        }
-        if(!isNativePeerInitialized) {
-          createNativePeer();
-        }
-      }
-    });
+    scheduleNativePeerCreation(this);
   }
 
   private boolean isForcingInitialization;
@@ -963,6 +1041,14 @@ public abstract class SWTNativeComponent extends NativeComponent {
     }
     @Override
     public void nativeInterfaceClosed() {
+      SWTNativeComponent nativeComponent = this.nativeComponent.get();
+      if(nativeComponent != null) {
+        MessagingInterface peerVMMessagingInterface = nativeComponent.peerVMMessagingInterface;
+        if(peerVMMessagingInterface != null && peerVMMessagingInterface.isAlive()) {
+          // The component lives in another peer VM, which is still running.
+          return;
+        }
+      }
       NativeInterface.removeNativeInterfaceListener(this);
       SwingUtilities.invokeLater(new Runnable() {
         public void run() {
@@ -977,6 +1063,83 @@ public abstract class SWTNativeComponent extends NativeComponent {
     }
   }
 
+  private Integer peerVMIndexOption;
+  private boolean isPeerVMInherited;
+  private volatile MessagingInterface peerVMMessagingInterface;
+
+  /**
+   * Make this component use the peer VM of another component instead of the one that the selection policy chooses. This is needed when the native peers are linked, like a web browser and the windows that it opens. This must be called before the native peer is initialized.
+   * @param nativeComponent the component whose peer VM is used.
+   */
+  protected void usePeerVMOf(SWTNativeComponent nativeComponent) {
+    isPeerVMInherited = true;
+    peerVMMessagingInterface = nativeComponent.peerVMMessagingInterface;
+  }
+
+  /**
+   * Get the messaging interface of the additional peer VM that hosts this component.
+   * @return the messaging interface, or null if the component is hosted by the first peer VM.
+   */
+  MessagingInterface getPeerVMMessagingInterface() {
+    return peerVMMessagingInterface;
+  }
+
+  /**
+   * Choose the peer VM that hosts this component when there are several peer VMs, launching it if needed.
+   */
+  private void selectPeerVMMessagingInterface() {
+    if(isPeerVMInherited) {
+      MessagingInterface peerVMMessagingInterface = this.peerVMMessagingInterface;
+      if(peerVMMessagingInterface == null || peerVMMessagingInterface.isAlive()) {
+        return;
+      }
+      // The peer VM died with the other component: a new one is chosen.
+      isPeerVMInherited = false;
+      this.peerVMMessagingInterface = null;
+    }
+    SWTNativeInterface nativeInterface = SWTNativeInterface.getInstance();
+    int peerVMCount = nativeInterface.getConfiguration_().getPeerVMCount();
+    if(peerVMCount <= 1 || nativeInterface.isInProcess_()) {
+      return;
+    }
+    int peerVMIndex;
+    if(peerVMIndexOption != null) {
+      peerVMIndex = peerVMIndexOption;
+    } else {
+      peerVMIndex = nativeInterface.getConfiguration_().getPeerVMSelectionPolicy().getPeerVMIndex(this, peerVMCount);
+    }
+    peerVMIndex = Math.max(0, Math.min(peerVMCount - 1, peerVMIndex));
+    if(peerVMIndex > 0) {
+      peerVMMessagingInterface = SWTNativeInterface.OutProcess.getPeerVMMessagingInterface(peerVMIndex);
+    }
+  }
+
+  /**
+   * Run a command that concerns this component but that is not a control command in the peer VM that hosts this component.
+   */
+  private Object runSyncInPeerVM(CommandMessage commandMessage, Object... args) {
+    MessagingInterface peerVMMessagingInterface = this.peerVMMessagingInterface;
+    if(peerVMMessagingInterface == null) {
+      return runSync(commandMessage, args);
+    }
+    SWTNativeInterface.setMessageArgs(commandMessage, args);
+    try {
+      return peerVMMessagingInterface.syncSend(commandMessage);
+    } catch(RuntimeException e) {
+      processFailedMessageException(e, commandMessage);
+      return null;
+    }
+  }
+
+  void notifyNativePeerDied() {
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        invalidateNativePeer("The native peer died unexpectedly.");
+        repaint();
+      }
+    });
+  }
+
   /**
    * Get the parameters that are passed to the creation method. This method can be overridden by subclasses to pass additional information necessary for the native peer creation.
    * @return the parameters.
@@ -986,12 +1149,126 @@ public abstract class SWTNativeComponent extends NativeComponent {
     return null;
   }
 
+  private static final Object NATIVE_PEER_CREATION_LOCK = new Object();
+  private static List<SWTNativeComponent> pendingNativePeerCreationList;
+
+  /**
+   * Schedule the creation of the native peer of a component that was added to a component hierarchy. The components that are added before the UI thread gets to process the creation, like when a whole user interface is built, get their native peers created together.
+   */
+  private static void scheduleNativePeerCreation(SWTNativeComponent nativeComponent) {
+    synchronized(NATIVE_PEER_CREATION_LOCK) {
+      if(pendingNativePeerCreationList != null) {
+        if(!pendingNativePeerCreationList.contains(nativeComponent)) {
+          pendingNativePeerCreationList.add(nativeComponent);
+        }
+        return;
+      }
+      pendingNativePeerCreationList = new ArrayList<SWTNativeComponent>();
+      pendingNativePeerCreationList.add(nativeComponent);
+    }
+    SwingUtilities.invokeLater(new Runnable() {
+      public void run() {
+        List<SWTNativeComponent> nativeComponentList;
+        synchronized(NATIVE_PEER_CREATION_LOCK) {
+          nativeComponentList = pendingNativePeerCreationList;
+          pendingNativePeerCreationList = null;
+        }
+        List<SWTNativeComponent> creationList = new ArrayList<SWTNativeComponent>();
+        RuntimeException exception = null;
+        for(SWTNativeComponent nativeComponent: nativeComponentList) {
+          try {
+            if(nativeComponent.isNativePeerDisposed) {
+              if(nativeComponent.additionCount > 1) {
+                nativeComponent.throwDuplicateCreationException();
+              }
+            }
+            if(!nativeComponent.isNativePeerInitialized) {
+              creationList.add(nativeComponent);
+            }
+          } catch(RuntimeException e) {
+            if(exception == null) {
+              exception = e;
+            }
+          }
+        }
+        try {
+          createNativePeers(creationList);
+        } catch(RuntimeException e) {
+          if(exception == null) {
+            exception = e;
+          }
+        }
+        if(exception != null) {
+          throw exception;
+        }
+      }
+    });
+  }
+
   private void createNativePeer() {
+    createNativePeers(Collections.singletonList(this));
+  }
+
+  /**
+   * Create the native peers of several components: the controls that are in the same peer VM are created with a single message, and then the messages that were queued for each component are sent.
+   * A failure of a component does not prevent the creation of the others: the first exception is thrown when all the components are processed.
+   */
+  private static void createNativePeers(List<SWTNativeComponent> nativeComponentList) {
     SWTNativeInterface nativeInterface = SWTNativeInterface.getInstance();
     boolean isInterfaceAlive = nativeInterface.isAlive();
     if(isInterfaceAlive) {
       nativeInterface.checkUIThread(false);
     }
+    RuntimeException exception = null;
+    List<SWTNativeComponent> preparedNativeComponentList = new ArrayList<SWTNativeComponent>(nativeComponentList.size());
+    List<List<CommandMessage>> initializationCommandMessageListList = new ArrayList<List<CommandMessage>>(nativeComponentList.size());
+    Map<MessagingInterface, List<SWTNativeComponent>> peerVMToCreationListMap = new LinkedHashMap<MessagingInterface, List<SWTNativeComponent>>();
+    for(SWTNativeComponent nativeComponent: nativeComponentList) {
+      try {
+        initializationCommandMessageListList.add(nativeComponent.prepareNativePeerCreation(isInterfaceAlive));
+        preparedNativeComponentList.add(nativeComponent);
+      } catch(RuntimeException e) {
+        if(exception == null) {
+          exception = e;
+        }
+        continue;
+      }
+      if(nativeComponent.isNativePeerValid) {
+        // The first peer VM has a null key.
+        List<SWTNativeComponent> creationList = peerVMToCreationListMap.get(nativeComponent.peerVMMessagingInterface);
+        if(creationList == null) {
+          creationList = new ArrayList<SWTNativeComponent>();
+          peerVMToCreationListMap.put(nativeComponent.peerVMMessagingInterface, creationList);
+        }
+        creationList.add(nativeComponent);
+      }
+    }
+    for(Map.Entry<MessagingInterface, List<SWTNativeComponent>> entry: peerVMToCreationListMap.entrySet()) {
+      createControls(entry.getKey(), entry.getValue());
+    }
+    for(int i=0; i<preparedNativeComponentList.size(); i++) {
+      SWTNativeComponent nativeComponent = preparedNativeComponentList.get(i);
+      try {
+        if(isInterfaceAlive && nativeComponent.isNativePeerInitialized) {
+          new CMN_reshape().asyncExec(nativeComponent, nativeComponent.getWidth(), nativeComponent.getHeight());
+        }
+        nativeComponent.runInitializationCommandMessages(initializationCommandMessageListList.get(i));
+      } catch(RuntimeException e) {
+        if(exception == null) {
+          exception = e;
+        }
+      }
+    }
+    if(exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Mark the native peer as initialized and choose its peer VM.
+   * @return the messages that were queued while the native peer was not initialized.
+   */
+  private List<CommandMessage> prepareNativePeerCreation(boolean isInterfaceAlive) {
     if(initializationCommandMessageList == null) {
       throwDuplicateCreationException();
     }
@@ -1006,24 +1283,101 @@ public abstract class SWTNativeComponent extends NativeComponent {
         NativeInterface.addNativeInterfaceListener(nativeInterfaceListener);
         isNativePeerValid = true;
         try {
-          runSync(new CMN_createControl(), componentID, getHandle(), SWTNativeComponent.this.getClass().getName(), getNativePeerCreationParameters());
+          selectPeerVMMessagingInterface();
         } catch(Exception e) {
-          isNativePeerValid = false;
-          StringBuilder sb = new StringBuilder();
-          for(Throwable t = e; t != null; t = t.getCause()) {
-            sb.append("    " + t.toString() + "\n");
-          }
-          invalidNativePeerText = "Failed to create " + getComponentDescription() + "\n\nReason:\n" + sb.toString();
-          e.printStackTrace();
+          failNativePeerCreation(e);
         }
-        new CMN_reshape().asyncExec(this, getWidth(), getHeight());
       } else {
         invalidNativePeerText = "Failed to create " + getComponentDescription() + "\n\nReason:\nThe native interface is not open!";
       }
     }
+    return initializationCommandMessageList_;
+  }
+
+  private Object[] getControlCreationArgs() {
+    return new Object[] {componentID, getHandle(), getClass().getName(), getNativePeerCreationParameters()};
+  }
+
+  private void failNativePeerCreation(Throwable throwable) {
+    isNativePeerValid = false;
+    StringBuilder sb = new StringBuilder();
+    for(Throwable t = throwable; t != null; t = t.getCause()) {
+      sb.append("    " + t.toString() + "\n");
+    }
+    invalidNativePeerText = "Failed to create " + getComponentDescription() + "\n\nReason:\n" + sb.toString();
+    throwable.printStackTrace();
+  }
+
+  private static class CMN_createControls extends CommandMessage implements NoSerializationTestMessage {
+    @Override
+    public Object run(Object[] args) {
+      Exception[] exceptions = new Exception[args.length];
+      for(int i=0; i<args.length; i++) {
+        try {
+          new CMN_createControl().run((Object[])args[i]);
+        } catch(Exception e) {
+          exceptions[i] = e;
+        }
+      }
+      return exceptions;
+    }
+  }
+
+  /**
+   * Create the controls of components that are hosted by the same peer VM.
+   * @param peerVMMessagingInterface the messaging interface of the peer VM, or null for the first peer VM.
+   */
+  private static void createControls(MessagingInterface peerVMMessagingInterface, List<SWTNativeComponent> nativeComponentList) {
+    if(nativeComponentList.size() == 1) {
+      SWTNativeComponent nativeComponent = nativeComponentList.get(0);
+      try {
+        nativeComponent.runSyncInPeerVM(new CMN_createControl(), nativeComponent.getControlCreationArgs());
+      } catch(Exception e) {
+        nativeComponent.failNativePeerCreation(e);
+      }
+      return;
+    }
+    List<SWTNativeComponent> creationList = new ArrayList<SWTNativeComponent>(nativeComponentList.size());
+    List<Object> creationArgsList = new ArrayList<Object>(nativeComponentList.size());
+    for(SWTNativeComponent nativeComponent: nativeComponentList) {
+      try {
+        creationArgsList.add(nativeComponent.getControlCreationArgs());
+        creationList.add(nativeComponent);
+      } catch(Exception e) {
+        nativeComponent.failNativePeerCreation(e);
+      }
+    }
+    Exception[] exceptions;
+    try {
+      CMN_createControls message = new CMN_createControls();
+      if(peerVMMessagingInterface == null) {
+        exceptions = (Exception[])message.syncExec(true, creationArgsList.toArray());
+      } else {
+        SWTNativeInterface.setMessageArgs(message, creationArgsList.toArray());
+        exceptions = (Exception[])peerVMMessagingInterface.syncSend(message);
+      }
+    } catch(Exception e) {
+      for(SWTNativeComponent nativeComponent: creationList) {
+        nativeComponent.failNativePeerCreation(e);
+      }
+      return;
+    }
+    if(exceptions != null) {
+      for(int i=0; i<exceptions.length; i++) {
+        if(exceptions[i] != null) {
+          creationList.get(i).failNativePeerCreation(exceptions[i]);
+        }
+      }
+    }
+  }
+
+  private void runInitializationCommandMessages(List<CommandMessage> initializationCommandMessageList_) {
     for(CommandMessage initCommandMessage: initializationCommandMessageList_) {
       if(!isNativePeerValid()) {
         printFailedInvocation(initCommandMessage);
+        if(initCommandMessage instanceof CMLocal_submit) {
+          SWTNativeInterface.completeCommandFuture((CommandFuture)SWTNativeInterface.getMessageArgs(initCommandMessage)[1], null, null);
+        }
       } else {
         // We have to restore the sync state, otherwise 2 sync calls (like navigation calls) would be sent
         // before processing messages generated by each of these calls (like location changing events).
@@ -1109,6 +1463,9 @@ public abstract class SWTNativeComponent extends NativeComponent {
         }
       }
       invalidateNativePeer("The native component was disposed.");
+      synchronized(componentImageBuffer) {
+        componentImageBuffer.dispose();
+      }
       SWTNativeComponent.getNativeComponentRegistry().remove(componentID);
       nativeComponentWrapper.disposeNativeComponent();
     }
@@ -1138,6 +1495,10 @@ public abstract class SWTNativeComponent extends NativeComponent {
    */
   @Override
   public boolean isNativePeerValid() {
+    MessagingInterface peerVMMessagingInterface = this.peerVMMessagingInterface;
+    if(peerVMMessagingInterface != null) {
+      return isNativePeerValid && peerVMMessagingInterface.isAlive();
+    }
     return isNativePeerValid && SWTNativeInterface.getInstance().isAlive();
   }
 
@@ -1165,10 +1526,15 @@ public abstract class SWTNativeComponent extends NativeComponent {
    */
   @Override
   protected Component createEmbeddableComponent(Map<Object, Object> optionMap) {
+    peerVMIndexOption = getPeerVMIndexOption(optionMap);
     return nativeComponentWrapper.createEmbeddableComponent(optionMap);
   }
 
   private static class CMN_setControlParentEnabled extends ControlCommandMessage {
+    @Override
+    protected Object getCoalescingKey() {
+      return getComponentCoalescingKey();
+    }
     @Override
     public Object run(Object[] args) {
       final Control control = getControl();
@@ -1423,11 +1789,22 @@ public abstract class SWTNativeComponent extends NativeComponent {
       return imageData;
     }
 
+    /**
+     * Let the Swing side stop waiting for the image data when there is nothing to send. There is nothing to do when the data is transferred with a mapped buffer, because the Swing side waits for the result of the message.
+     */
+    private static void cancelImageData(String hostAddress, int port) throws IOException {
+      if(port > 0) {
+        new Socket(hostAddress, port).close();
+      }
+    }
+
     @Override
     public Object run(Object[] args) throws Exception {
       final int port = (Integer)args[0];
       Rectangle[] rectangles = (Rectangle[])args[1];
       final String hostAddress = (String)args[2];
+      // Without a port, the native side writes to the mapped buffer of the component.
+      boolean isMappedTransfer = port == 0;
       final Control control = getControl();
       ImageData imageData;
       final Region region = new Region();
@@ -1438,7 +1815,7 @@ public abstract class SWTNativeComponent extends NativeComponent {
         final AtomicReference<Exception> exception = new AtomicReference<Exception>();
         final AtomicReference<ImageData> result = new AtomicReference<ImageData>();
         if(control == null || control.isDisposed()) {
-          new Socket(hostAddress, port).close();
+          cancelImageData(hostAddress, port);
           return null;
         }
         final AtomicReference<Boolean> isSocketClosed = new AtomicReference<Boolean>(false);
@@ -1446,7 +1823,7 @@ public abstract class SWTNativeComponent extends NativeComponent {
           public void run() {
             if(control.isDisposed()) {
               try {
-                new Socket(hostAddress, port).close();
+                cancelImageData(hostAddress, port);
                 isSocketClosed.set(true);
               } catch(Exception e) {
               }
@@ -1460,11 +1837,11 @@ public abstract class SWTNativeComponent extends NativeComponent {
           }
         });
         if(!isSocketClosed.get() && control.isDisposed()) {
-          new Socket(hostAddress, port).close();
+          cancelImageData(hostAddress, port);
           return null;
         }
         if(exception.get() != null) {
-          new Socket(hostAddress, port).close();
+          cancelImageData(hostAddress, port);
           throw exception.get();
         }
         imageData = result.get();
@@ -1473,70 +1850,83 @@ public abstract class SWTNativeComponent extends NativeComponent {
       }
       region.dispose();
       if(imageData == null) {
-        new Socket(hostAddress, port).close();
+        cancelImageData(hostAddress, port);
         return null;
       }
-      sendImageData(hostAddress, port, imageData, rectangles);
+      if(isMappedTransfer) {
+        IntBuffer intBuffer = ComponentImageBuffer.getIntBuffer(control, (String)args[3], (Integer)args[4]);
+        if(intBuffer == null) {
+          // The file of the Swing side is not visible, for example when the peer VM runs in a different container or machine.
+          return false;
+        }
+        if((Boolean)args[5]) {
+          rectangles = ComponentImageTiles.getChangedRectangles(control, imageData, rectangles, (Boolean)args[6]);
+        }
+        writeImageData(intBuffer, imageData, rectangles);
+        return rectangles;
+      }
+      sendImageData(hostAddress, port, imageData, rectangles, (Boolean)args[3]);
       return null;
     }
 
-    private void sendImageData(final String hostAddress, final int port, final ImageData imageData, final Rectangle[] rectangles) {
+    private void writeImageData(IntBuffer intBuffer, ImageData imageData, Rectangle[] rectangles) {
+      ImageDataConverter converter = ImageDataConverter.getConverter(imageData);
+      int[] pixels = null;
+      for(Rectangle rectangle: rectangles) {
+        if(pixels == null || pixels.length < rectangle.width) {
+          pixels = new int[rectangle.width];
+        }
+        for(int j=0; j<rectangle.height; j++) {
+          converter.getARGB(rectangle.x, rectangle.y + j, rectangle.width, pixels, 0);
+          intBuffer.put(pixels, 0, rectangle.width);
+        }
+      }
+    }
+
+    private void sendImageData(final String hostAddress, final int port, final ImageData imageData, final Rectangle[] rectangles, final boolean isCompressionAccepted) {
       if(NativeInterface.isUIThread(true)) {
         new Thread("NativeSwing[" + SWTNativeInterface.getInstance().getInterfaceID(true) + "] Component Image Data Transfer") {
           @Override
           public void run() {
-            sendImageData(hostAddress, port, imageData, rectangles);
+            sendImageData(hostAddress, port, imageData, rectangles, isCompressionAccepted);
           }
         }.start();
         return;
       }
-      int cursor = 0;
-      // Has to be a multiple of 3
-      byte[] bytes = new byte[1024 * 3];
-      PaletteData palette = imageData.palette;
+      ImageDataConverter converter = ImageDataConverter.getConverter(imageData);
       Socket socket = null;
       BufferedOutputStream out = null;
-      int width = imageData.width;
-      int height = imageData.height;
+      ComponentImageStream.Writer writer = null;
       try {
         socket = new Socket(hostAddress, port);
         out = new BufferedOutputStream(socket.getOutputStream());
+        writer = new ComponentImageStream.Writer(out, ComponentImageStream.getEncoding(isCompressionAccepted, rectangles), isCompressionAccepted);
+        int[] pixels = null;
+        byte[] bytes = null;
         for(Rectangle rectangle: rectangles) {
+          if(pixels == null || pixels.length < rectangle.width) {
+            pixels = new int[rectangle.width];
+            bytes = new byte[rectangle.width * 3];
+          }
+          writer.startRectangle(rectangle.width * 3);
           for(int j=0; j<rectangle.height; j++) {
-            int y = rectangle.y + j;
-            for(int i=0; i<rectangle.width; i++) {
-              int x = rectangle.x + i;
-              if(x < width && y < height) {
-                int pixel = imageData.getPixel(x, y);
-                if (palette.isDirect) {
-                  // We cannot use palette.getRGB() because all the creations of RGB objects make it too slow.
-                  int red = pixel & palette.redMask;
-                  bytes[cursor++] = (byte)(palette.redShift < 0? red >>> -palette.redShift: red << palette.redShift);
-                  int green = pixel & palette.greenMask;
-                  bytes[cursor++] = (byte)((palette.greenShift < 0)? green >>> -palette.greenShift: green << palette.greenShift);
-                  int blue = pixel & palette.blueMask;
-                  bytes[cursor++] = (byte)((palette.blueShift < 0)? blue >>> -palette.blueShift: blue << palette.blueShift);
-                } else {
-                  RGB rgb = palette.colors[pixel];
-                  bytes[cursor++] = (byte)rgb.red;
-                  bytes[cursor++] = (byte)rgb.green;
-                  bytes[cursor++] = (byte)rgb.blue;
-                }
-              } else {
-                cursor += 3;
-              }
-              if(cursor == bytes.length) {
-                out.write(bytes);
-                cursor = 0;
-              }
+            converter.getARGB(rectangle.x, rectangle.y + j, rectangle.width, pixels, 0);
+            for(int i=0, cursor=0; i<rectangle.width; i++) {
+              int pixel = pixels[i];
+              bytes[cursor++] = (byte)(pixel >> 16);
+              bytes[cursor++] = (byte)(pixel >> 8);
+              bytes[cursor++] = (byte)pixel;
             }
+            writer.writeRow(bytes, rectangle.width * 3);
           }
         }
-        out.write(bytes, 0, cursor);
-        out.flush();
+        writer.finish();
       } catch(Exception e) {
         e.printStackTrace();
       }
+      if(writer != null) {
+        writer.end();
+      }
       try {
         if(out != null) {
           out.close();
@@ -1553,6 +1943,86 @@ public abstract class SWTNativeComponent extends NativeComponent {
 
   }
 
+  private static final boolean IS_MAPPED_IMAGE_TRANSFER = !"sockets".equals(NSSystemPropertySWT.COMPONENTS_IMAGETRANSFER.get());
+  private static final boolean IS_COMPRESSING_IMAGE_TRANSFER = Boolean.parseBoolean(NSSystemPropertySWT.COMPONENTS_IMAGETRANSFER_COMPRESSION.get());
+
+  /**
+   * Set to false when the native side reports that it cannot see the mapped buffers.
+   */
+  private static volatile boolean isMappedImageTransferAvailable = true;
+
+  private final ComponentImageBuffer componentImageBuffer = new ComponentImageBuffer();
+  /**
+   * Set while a capture uses the mapped buffer, in which case the other captures use a socket. The lock of the buffer is not held during the capture, as the native side may have to wait for the UI thread, which may be painting and waiting for that lock.
+   */
+  private boolean isComponentImageBufferBusy;
+
+  private Reference<BufferedImage> incrementalImageReference;
+
+  /**
+   * Paint the rectangles using the mapped buffer of this component, which the native side fills when it receives the path of the buffer.
+   * @param isIncremental true if the image contains what the previous incremental calls painted, so that only the tiles that changed since then have to be transferred.
+   * @return false if the buffer could not be created or is used by another capture, in which case another transfer mode has to be used.
+   */
+  private boolean paintComponentWithMappedBuffer(BufferedImage image, Rectangle[] rectangles, boolean isIncremental) {
+    int pixelCount = 0;
+    for(Rectangle rectangle: rectangles) {
+      pixelCount += rectangle.width * rectangle.height;
+    }
+    // The buffer is sized to the component, so that it is reused for all the captures until the component grows.
+    pixelCount = Math.max(pixelCount, getWidth() * getHeight());
+    IntBuffer intBuffer;
+    String path;
+    int capacity;
+    boolean isResettingIncrementalState = false;
+    synchronized(componentImageBuffer) {
+      if(isComponentImageBufferBusy) {
+        return false;
+      }
+      try {
+        intBuffer = componentImageBuffer.getIntBuffer(pixelCount);
+      } catch(IOException e) {
+        incrementalImageReference = null;
+        return false;
+      }
+      path = componentImageBuffer.getPath();
+      capacity = componentImageBuffer.getCapacity();
+      if(isIncremental) {
+        isResettingIncrementalState = incrementalImageReference == null || incrementalImageReference.get() != image;
+        incrementalImageReference = null;
+      }
+      isComponentImageBufferBusy = true;
+    }
+    try {
+      Object result = new CMN_getComponentImage().syncExec(this, 0, rectangles, null, path, capacity, isIncremental, isResettingIncrementalState);
+      if(Boolean.FALSE.equals(result)) {
+        isMappedImageTransferAvailable = false;
+        synchronized(componentImageBuffer) {
+          componentImageBuffer.dispose();
+        }
+        return false;
+      }
+      if(result instanceof Rectangle[]) {
+        synchronized(image) {
+          ComponentImageBuffer.copyToImage(intBuffer, (Rectangle[])result, image);
+        }
+        if(isIncremental) {
+          // Only a successful transfer leaves the image in the state that the native side knows.
+          synchronized(componentImageBuffer) {
+            incrementalImageReference = new WeakReference<BufferedImage>(image);
+          }
+        }
+      }
+    } catch(Exception e) {
+      e.printStackTrace();
+    } finally {
+      synchronized(componentImageBuffer) {
+        isComponentImageBufferBusy = false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Paint the native component including its native peer in an image. This method can be called from a non-UI thread.
    * @param image the image to paint to.
@@ -1569,6 +2039,10 @@ public abstract class SWTNativeComponent extends NativeComponent {
    */
   @Override
   public void paintComponent(BufferedImage image, Rectangle[] rectangles) {
+    paintComponent(image, rectangles, false);
+  }
+
+  private void paintComponent(BufferedImage image, Rectangle[] rectangles, boolean isIncremental) {
     if(image == null || !isNativePeerValid() || isNativePeerDisposed) {
       return;
     }
@@ -1592,6 +2066,9 @@ public abstract class SWTNativeComponent extends NativeComponent {
       return;
     }
     rectangles = rectangleList.toArray(new Rectangle[0]);
+    if(IS_MAPPED_IMAGE_TRANSFER && isMappedImageTransferAvailable && paintComponentWithMappedBuffer(image, rectangles, isIncremental)) {
+      return;
+    }
     try {
       final ServerSocket serverSocket = new ServerSocket();
       serverSocket.setReuseAddress(false);
@@ -1635,50 +2112,28 @@ public abstract class SWTNativeComponent extends NativeComponent {
           }
         }.start();
       }
-      getComponentImage.asyncExec(this, serverSocket.getLocalPort(), rectangles, localHostAddress);
+      getComponentImage.asyncExec(this, serverSocket.getLocalPort(), rectangles, localHostAddress, IS_COMPRESSING_IMAGE_TRANSFER);
       Socket socket = serverSocket.accept();
       isServerSocketToBeClosed.set(false);
-      // Has to be a multiple of 3
-      byte[] bytes = new byte[1024 * 3];
-      int count = 0;
-      int readCount = 0;
       try {
-        BufferedInputStream in = new BufferedInputStream(socket.getInputStream());
+        ComponentImageStream.Reader in = new ComponentImageStream.Reader(new BufferedInputStream(socket.getInputStream()), IS_COMPRESSING_IMAGE_TRANSFER);
         synchronized(image) {
-          for(Rectangle rectangle: rectangles) {
-            int[] pixels = new int[rectangle.width];
-            for(int y=0; y<rectangle.height && readCount != -1; y++) {
-              for(int x=0; x<rectangle.width && readCount != -1; x++) {
-                int itCount = 0;
-                while(readCount != -1 && (readCount == 0 || (readCount % 3) != 0)) {
-                  if(itCount++ == 1000) {
-                    // I don't know if such case happens but I don't want to take the risk of a loop that never exits.
-                    readCount = -1;
-                  }
-                  int c = in.read(bytes, readCount, bytes.length - readCount);
-                  if(c == -1) {
-                    readCount = -1;
-                  } else {
-                    readCount += c;
-                  }
-                }
-                if(readCount == -1) {
-                  break;
-                }
-                pixels[x] = 0xFF000000 | (0xFF & bytes[count]) << 16 | (0xFF & bytes[count + 1]) << 8 | (0xFF & bytes[count + 2]);
-                count += 3;
-                if(count == readCount) {
-                  count = 0;
-                  readCount = 0;
+          BufferedImageRowWriter rowWriter = new BufferedImageRowWriter(image);
+          try {
+            for(Rectangle rectangle: rectangles) {
+              int[] pixels = new int[rectangle.width];
+              byte[] bytes = new byte[rectangle.width * 3];
+              in.startRectangle(bytes.length);
+              for(int y=0; y<rectangle.height; y++) {
+                in.readRow(bytes, bytes.length);
+                for(int x=0, cursor=0; x<rectangle.width; x++, cursor += 3) {
+                  pixels[x] = 0xFF000000 | (0xFF & bytes[cursor]) << 16 | (0xFF & bytes[cursor + 1]) << 8 | (0xFF & bytes[cursor + 2]);
                 }
+                rowWriter.setRow(rectangle.x, rectangle.y + y, rectangle.width, pixels, 0);
               }
-              if(readCount != -1) {
-                image.setRGB(rectangle.x, rectangle.y + y, rectangle.width, 1, pixels, 0, rectangle.width);
-              }
-            }
-            if(readCount == -1) {
-              break;
             }
+          } catch(EOFException e) {
+            // The native side closes the connection without data when the control is disposed.
           }
         }
         NativeInterface.removeNativeInterfaceListener(nativeInterfaceListener);
@@ -1719,7 +2174,7 @@ public abstract class SWTNativeComponent extends NativeComponent {
       return;
     }
     try {
-      runSync(new CMN_createControl(), componentID, getHandle());
+      runSyncInPeerVM(new CMN_createControl(), componentID, getHandle());
       new CMN_reshape().asyncExec(this, getWidth(), getHeight());
     } catch(Exception e) {
       StringBuilder sb = new StringBuilder();
@@ -1804,6 +2259,10 @@ public abstract class SWTNativeComponent extends NativeComponent {
   }
 
   private static class CMN_redraw extends ControlCommandMessage {
+    @Override
+    protected Object getCoalescingKey() {
+      return getComponentCoalescingKey();
+    }
     @Override
     public Object run(Object[] args) {
       Control control = getControl();
@@ -33,10 +33,12 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -56,10 +58,12 @@ import org.eclipse.swt.widgets.Shell;
 
 import chrriis.dj.nativeswing.NSSystemProperty;
 import chrriis.dj.nativeswing.NativeSwing;
+import chrriis.dj.nativeswing.common.ObjectRegistry;
 import chrriis.dj.nativeswing.common.SystemProperty;
 import chrriis.dj.nativeswing.common.Utils;
 import chrriis.dj.nativeswing.common.WebServer;
 import chrriis.dj.nativeswing.swtimpl.ApplicationMessageHandler;
+import chrriis.dj.nativeswing.swtimpl.CommandFuture;
 import chrriis.dj.nativeswing.swtimpl.CommandMessage;
 import chrriis.dj.nativeswing.swtimpl.LocalMessage;
 import chrriis.dj.nativeswing.swtimpl.Message;
@@ -73,6 +77,8 @@ import chrriis.dj.nativeswing.swtimpl.core.InProcessMessagingInterface.SWTInProc
 import chrriis.dj.nativeswing.swtimpl.core.InProcessMessagingInterface.SwingInProcessMessagingInterface;
 import chrriis.dj.nativeswing.swtimpl.core.OutProcessIOMessagingInterface.SWTOutProcessIOMessagingInterface;
 import chrriis.dj.nativeswing.swtimpl.core.OutProcessIOMessagingInterface.SwingOutProcessIOMessagingInterface;
+import chrriis.dj.nativeswing.swtimpl.core.OutProcessSharedMemoryMessagingInterface.SWTOutProcessSharedMemoryMessagingInterface;
+import chrriis.dj.nativeswing.swtimpl.core.OutProcessSharedMemoryMessagingInterface.SwingOutProcessSharedMemoryMessagingInterface;
 import chrriis.dj.nativeswing.swtimpl.core.OutProcessSocketsMessagingInterface.SWTOutProcessSocketsMessagingInterface;
 import chrriis.dj.nativeswing.swtimpl.core.OutProcessSocketsMessagingInterface.SwingOutProcessSocketsMessagingInterface;
 import chrriis.dj.nativeswing.swtimpl.internal.ISWTNativeInterface;
@@ -122,6 +128,10 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
         messagingInterface.destroy();
         messagingInterface = null;
       }
+      if(!isInProcess_()) {
+        OutProcess.destroyStandbyMessagingInterface();
+        OutProcess.destroyAdditionalPeerVMs();
+      }
       for(NativeInterfaceListener listener: getNativeInterfaceListeners()) {
         listener.nativeInterfaceClosed();
       }
@@ -261,6 +271,9 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
         }
       }, AWTEvent.KEY_EVENT_MASK);
       isInitialized = true;
+      if(!isInProcess_()) {
+        OutProcess.createStandbyMessagingInterface();
+      }
     }
   }
 
@@ -383,7 +396,26 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
     }
   }
 
+  /**
+   * Get the messaging interface of the additional peer VM that hosts the component that a message targets, if any.
+   * @return the messaging interface, or null if the message goes through the main messaging interface.
+   */
+  private MessagingInterface getAdditionalPeerVMMessagingInterface(boolean isTargetNativeSide, Message message) {
+    if(!isTargetNativeSide || !(message instanceof ControlCommandMessage) || OutProcess.isNativeSide()) {
+      return null;
+    }
+    Object nativeComponent = SWTNativeComponent.getNativeComponentRegistry().get(((ControlCommandMessage)message).getComponentID());
+    if(!(nativeComponent instanceof SWTNativeComponent)) {
+      return null;
+    }
+    return ((SWTNativeComponent)nativeComponent).getPeerVMMessagingInterface();
+  }
+
   public Object syncSend_(boolean isTargetNativeSide, final Message message) {
+    MessagingInterface peerVMMessagingInterface = getAdditionalPeerVMMessagingInterface(isTargetNativeSide, message);
+    if(peerVMMessagingInterface != null) {
+      return peerVMMessagingInterface.syncSend(message);
+    }
     checkOpen();
     if(message instanceof LocalMessage) {
       LocalMessage localMessage = (LocalMessage)message;
@@ -396,6 +428,11 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
     if(IS_SYNCING_MESSAGES) {
       syncSend_(isTargetNativeSide, message);
     } else {
+      MessagingInterface peerVMMessagingInterface = getAdditionalPeerVMMessagingInterface(isTargetNativeSide, message);
+      if(peerVMMessagingInterface != null) {
+        peerVMMessagingInterface.asyncSend(message);
+        return;
+      }
       checkOpen();
       if(message instanceof LocalMessage) {
         LocalMessage localMessage = (LocalMessage)message;
@@ -406,7 +443,29 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
     }
   }
 
-  private static MessagingInterface messagingInterface;
+  public void submit_(boolean isTargetNativeSide, Message message, CommandFuture commandFuture) {
+    MessagingInterface peerVMMessagingInterface = getAdditionalPeerVMMessagingInterface(isTargetNativeSide, message);
+    if(peerVMMessagingInterface != null) {
+      peerVMMessagingInterface.submit(message, commandFuture);
+      return;
+    }
+    checkOpen();
+    if(message instanceof LocalMessage) {
+      LocalMessage localMessage = (LocalMessage)message;
+      Object result = null;
+      Throwable exception = null;
+      try {
+        result = runMessageCommand(localMessage);
+      } catch(Throwable t) {
+        exception = t;
+      }
+      completeCommandFuture(commandFuture, result, exception);
+      return;
+    }
+    getMessagingInterface(!isTargetNativeSide).submit(message, commandFuture);
+  }
+
+  private static volatile MessagingInterface messagingInterface;
 
   MessagingInterface getMessagingInterface(boolean isNativeSide) {
     synchronized(OPEN_STATE_LOCK) {
@@ -423,6 +482,10 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
           SWTOutProcessSocketsMessagingInterface swtOutProcessSocketsMessagingInterface = (SWTOutProcessSocketsMessagingInterface)messagingInterface;
           return swtOutProcessSocketsMessagingInterface;
         }
+        if(messagingInterface instanceof SWTOutProcessSharedMemoryMessagingInterface) {
+          SWTOutProcessSharedMemoryMessagingInterface swtOutProcessSharedMemoryMessagingInterface = (SWTOutProcessSharedMemoryMessagingInterface)messagingInterface;
+          return swtOutProcessSharedMemoryMessagingInterface;
+        }
         SWTOutProcessIOMessagingInterface swtOutProcessIOMessagingInterface = (SWTOutProcessIOMessagingInterface)messagingInterface;
         return swtOutProcessIOMessagingInterface;
       }
@@ -430,6 +493,10 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
         SwingOutProcessSocketsMessagingInterface swingOutProcessSocketsMessagingInterface = (SwingOutProcessSocketsMessagingInterface)messagingInterface;
         return swingOutProcessSocketsMessagingInterface;
       }
+      if(messagingInterface instanceof SwingOutProcessSharedMemoryMessagingInterface) {
+        SwingOutProcessSharedMemoryMessagingInterface swingOutProcessSharedMemoryMessagingInterface = (SwingOutProcessSharedMemoryMessagingInterface)messagingInterface;
+        return swingOutProcessSharedMemoryMessagingInterface;
+      }
       SwingOutProcessIOMessagingInterface swingOutProcessIOMessagingInterface = (SwingOutProcessIOMessagingInterface)messagingInterface;
       return swingOutProcessIOMessagingInterface;
     }
@@ -778,6 +845,9 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
           }
           if(isOpen_) {
             new CMN_destroyControls().asyncExec(true);
+            for(MessagingInterface messagingInterface: getAdditionalPeerVMMessagingInterfaces()) {
+              messagingInterface.asyncSend(new CMN_destroyControls());
+            }
           }
         }
       });
@@ -805,33 +875,280 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
     }
 
     static void createOutProcessCommunicationChannel() {
+      MessagingInterface standbyMessagingInterface = takeStandbyMessagingInterface();
       synchronized(OPEN_STATE_LOCK) {
-        for(int i=2; i>=0; i--) {
-          try {
-            messagingInterface = createOutProcessMessagingInterface();
-            break;
-          } catch(RuntimeException e) {
-            if(i == 0) {
-              throw e;
+        if(standbyMessagingInterface != null) {
+          messagingInterface = standbyMessagingInterface;
+        } else {
+          for(int i=2; i>=0; i--) {
+            try {
+              messagingInterface = createOutProcessMessagingInterface();
+              break;
+            } catch(RuntimeException e) {
+              if(i == 0) {
+                throw e;
+              }
             }
           }
         }
         isOpen = true;
       }
+      // A spare peer VM already has the properties, but they may have changed since it was launched.
+      // There is no need to wait: the messages that follow, like the creation of the first controls, run after it in the UI thread of the peer VM.
+      // The current thread is generally not the UI thread, so the message has to be marked as a UI message to be ordered with them.
+      CMN_setProperties message = new CMN_setProperties();
+      setMessageArgs(message, getNativeProperties());
+      messagingInterface.asyncSendUI(message);
+      createStandbyMessagingInterface();
+    }
+
+    /**
+     * The properties that the peer VM defines itself: it keeps its own values, so they are not sent.
+     */
+    private static final Set<String> PEER_VM_DEFINED_PROPERTY_SET = new HashSet<String>(Arrays.asList(
+        "java.version", "java.version.date", "java.vendor", "java.vendor.url", "java.vendor.url.bug", "java.vendor.version", "java.home",
+        "java.class.version", "java.class.path", "java.library.path", "java.io.tmpdir", "java.compiler", "java.ext.dirs", "java.endorsed.dirs",
+        "java.runtime.name", "java.runtime.version", "java.awt.graphicsenv", "java.awt.printerjob", "java.specification.maintenance.version",
+        "os.name", "os.arch", "os.version", "file.separator", "path.separator", "line.separator", "file.encoding", "file.encoding.pkg",
+        "native.encoding", "stdout.encoding", "stderr.encoding", "user.name", "user.home", "user.dir", "user.language", "user.country",
+        "user.region", "user.variant", "user.script", "user.timezone", "awt.toolkit", "jdk.debug"
+    ));
+
+    /**
+     * The prefixes of the properties that the peer VM defines itself.
+     */
+    private static final String[] PEER_VM_DEFINED_PROPERTY_PREFIXES = new String[] {
+        "java.vm.", "java.specification.", "sun.boot.", "sun.java.", "sun.jnu.", "sun.cpu.", "sun.os.", "sun.io.", "sun.arch.", "sun.management.", "sun.desktop",
+    };
+
+    /**
+     * The prefixes of the properties that are always sent, as they configure the native side.
+     */
+    private static final String[] PEER_VM_FORWARDED_PROPERTY_PREFIXES = new String[] {
+        "nativeswing.", "swt.", "org.eclipse.swt.", "jna.",
+    };
+
+    private static boolean isNativeProperty(String key) {
+      for(String prefix: PEER_VM_FORWARDED_PROPERTY_PREFIXES) {
+        if(key.startsWith(prefix)) {
+          return true;
+        }
+      }
+      if(PEER_VM_DEFINED_PROPERTY_SET.contains(key)) {
+        return false;
+      }
+      for(String prefix: PEER_VM_DEFINED_PROPERTY_PREFIXES) {
+        if(key.startsWith(prefix)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Get the properties to send to a peer VM, which are the ones that it does not define itself: the peer VM only sets the properties that it does not have.
+     */
+    private static Properties getNativeProperties() {
       Properties nativeProperties = new Properties();
       Properties properties = System.getProperties();
       for(Object key: properties.keySet()) {
-        if(key instanceof String) {
+        if(key instanceof String && isNativeProperty((String)key)) {
           Object value = properties.get(key);
           if(value instanceof String) {
             nativeProperties.setProperty((String)key, (String)value);
           }
         }
       }
-      new CMN_setProperties().syncExec(true, nativeProperties);
+      return nativeProperties;
+    }
+
+    private static final Object STANDBY_LOCK = new Object();
+    private static MessagingInterface standbyMessagingInterface;
+    private static boolean isCreatingStandbyMessagingInterface;
+    /**
+     * The messaging interface of the spare peer VM while its first exchange takes place, before it becomes the standby messaging interface.
+     */
+    private static MessagingInterface creatingStandbyMessagingInterface;
+
+    /**
+     * Launch a spare peer VM in the background if the standby mode is active and there is none, so that the next use of a peer VM does not wait for it to start.
+     */
+    static void createStandbyMessagingInterface() {
+      if(!Boolean.parseBoolean(NSSystemPropertySWT.PEERVM_STANDBY.get()) || !Boolean.parseBoolean(NSSystemPropertySWT.PEERVM_CREATE.get("true"))) {
+        return;
+      }
+      synchronized(STANDBY_LOCK) {
+        if(isCreatingStandbyMessagingInterface || standbyMessagingInterface != null) {
+          return;
+        }
+        isCreatingStandbyMessagingInterface = true;
+      }
+      Thread standbyThread = new Thread("NativeSwing Standby Peer VM Launcher") {
+        @Override
+        public void run() {
+          MessagingInterface messagingInterface = null;
+          try {
+            messagingInterface = createOutProcessMessagingInterface();
+            synchronized(STANDBY_LOCK) {
+              creatingStandbyMessagingInterface = messagingInterface;
+            }
+            // The first exchange waits for the display of the peer VM and loads the messaging classes on both sides.
+            CMN_setProperties message = new CMN_setProperties();
+            setMessageArgs(message, getNativeProperties());
+            messagingInterface.syncSend(message);
+          } catch(Exception e) {
+            e.printStackTrace();
+            if(messagingInterface != null) {
+              messagingInterface.destroy();
+              messagingInterface = null;
+            }
+          }
+          synchronized(STANDBY_LOCK) {
+            isCreatingStandbyMessagingInterface = false;
+            creatingStandbyMessagingInterface = null;
+            if(messagingInterface != null && !messagingInterface.isAlive()) {
+              messagingInterface = null;
+            }
+            standbyMessagingInterface = messagingInterface;
+            STANDBY_LOCK.notifyAll();
+          }
+        }
+      };
+      standbyThread.setDaemon(true);
+      standbyThread.start();
+    }
+
+    /**
+     * Take the spare peer VM, waiting for it if it is being launched as it is closer to be ready than a new one.
+     * @return the messaging interface of the spare peer VM, or null if there is none.
+     */
+    private static MessagingInterface takeStandbyMessagingInterface() {
+      MessagingInterface messagingInterface;
+      synchronized(STANDBY_LOCK) {
+        while(isCreatingStandbyMessagingInterface) {
+          try {
+            STANDBY_LOCK.wait();
+          } catch(InterruptedException e) {
+          }
+        }
+        messagingInterface = standbyMessagingInterface;
+        standbyMessagingInterface = null;
+      }
+      if(messagingInterface != null && !messagingInterface.isAlive()) {
+        return null;
+      }
+      return messagingInterface;
+    }
+
+    static void destroyStandbyMessagingInterface() {
+      MessagingInterface messagingInterface = takeStandbyMessagingInterface();
+      if(messagingInterface != null) {
+        messagingInterface.destroy();
+      }
+    }
+
+    private static boolean isStandbyMessagingInterface(MessagingInterface messagingInterface) {
+      synchronized(STANDBY_LOCK) {
+        return messagingInterface == standbyMessagingInterface || messagingInterface == creatingStandbyMessagingInterface;
+      }
+    }
+
+    private static boolean isStandbyMessagingInterfaceBeingCreated() {
+      synchronized(STANDBY_LOCK) {
+        return isCreatingStandbyMessagingInterface;
+      }
+    }
+
+    private static final Object PEER_VM_LOCK = new Object();
+    private static Map<Integer, MessagingInterface> additionalPeerVMMessagingInterfaceMap = new HashMap<Integer, MessagingInterface>();
+    private static int peerVMCreationCount;
+
+    /**
+     * Get the messaging interface of an additional peer VM, launching that peer VM if it is not running.
+     * @param peerVMIndex the index of the peer VM, which is greater than 0 as the first peer VM is the one of the main messaging interface.
+     */
+    static MessagingInterface getPeerVMMessagingInterface(int peerVMIndex) {
+      synchronized(PEER_VM_LOCK) {
+        MessagingInterface messagingInterface = additionalPeerVMMessagingInterfaceMap.get(peerVMIndex);
+        if(messagingInterface != null && messagingInterface.isAlive()) {
+          return messagingInterface;
+        }
+        peerVMCreationCount++;
+      }
+      // The lock is not held while launching, as the receiver thread of the new peer VM needs it if that peer VM dies.
+      MessagingInterface messagingInterface = null;
+      try {
+        messagingInterface = createOutProcessMessagingInterface();
+        CMN_setProperties message = new CMN_setProperties();
+        setMessageArgs(message, getNativeProperties());
+        // The launching thread may not be the UI thread, and the properties must be set before the controls are created in the UI thread of the peer VM.
+        messagingInterface.asyncSendUI(message);
+      } finally {
+        synchronized(PEER_VM_LOCK) {
+          peerVMCreationCount--;
+          if(messagingInterface != null && messagingInterface.isAlive()) {
+            MessagingInterface previousMessagingInterface = additionalPeerVMMessagingInterfaceMap.get(peerVMIndex);
+            if(previousMessagingInterface != null && previousMessagingInterface.isAlive()) {
+              // Another thread launched it in the meantime.
+              messagingInterface.destroy();
+              messagingInterface = previousMessagingInterface;
+            } else {
+              additionalPeerVMMessagingInterfaceMap.put(peerVMIndex, messagingInterface);
+            }
+          }
+        }
+      }
+      if(messagingInterface == null || !messagingInterface.isAlive()) {
+        throw new IllegalStateException("The peer VM " + peerVMIndex + " could not be started.");
+      }
+      return messagingInterface;
+    }
+
+    private static List<MessagingInterface> getAdditionalPeerVMMessagingInterfaces() {
+      synchronized(PEER_VM_LOCK) {
+        return new ArrayList<MessagingInterface>(additionalPeerVMMessagingInterfaceMap.values());
+      }
+    }
+
+    static void destroyAdditionalPeerVMs() {
+      List<MessagingInterface> messagingInterfaceList;
+      synchronized(PEER_VM_LOCK) {
+        messagingInterfaceList = new ArrayList<MessagingInterface>(additionalPeerVMMessagingInterfaceMap.values());
+        additionalPeerVMMessagingInterfaceMap.clear();
+      }
+      for(MessagingInterface messagingInterface: messagingInterfaceList) {
+        messagingInterface.destroy();
+      }
+    }
+
+    /**
+     * Handle the death of a messaging interface that is not the main one, which is the one of the spare peer VM or of an additional peer VM, including while they are being launched.
+     * @return true if the messaging interface is not the main one, in which case its death must not affect the native interface.
+     */
+    static boolean notifySecondaryMessagingInterfaceKilled(MessagingInterface messagingInterface) {
+      if(isStandbyMessagingInterface(messagingInterface)) {
+        return true;
+      }
+      boolean isStandbyMessagingInterfaceBeingCreated = isStandbyMessagingInterfaceBeingCreated();
+      synchronized(PEER_VM_LOCK) {
+        if(!additionalPeerVMMessagingInterfaceMap.values().remove(messagingInterface)) {
+          // An unknown messaging interface can be one that dies while it is launched, before its launcher knows it.
+          if(peerVMCreationCount == 0 && !isStandbyMessagingInterfaceBeingCreated || messagingInterface == SWTNativeInterface.messagingInterface) {
+            return false;
+          }
+        }
+      }
+      ObjectRegistry nativeComponentRegistry = SWTNativeComponent.getNativeComponentRegistry();
+      for(int instanceID: nativeComponentRegistry.getInstanceIDs()) {
+        Object nativeComponent = nativeComponentRegistry.get(instanceID);
+        if(nativeComponent instanceof SWTNativeComponent && ((SWTNativeComponent)nativeComponent).getPeerVMMessagingInterface() == messagingInterface) {
+          ((SWTNativeComponent)nativeComponent).notifyNativePeerDied();
+        }
+      }
+      return true;
     }
 
-    private static Process createProcess(String localHostAddress, int port, int pid) {
+    private static Process createProcess(String localHostAddress, int port, int pid, String sharedMemoryPath) {
       List<String> classPathList = new ArrayList<String>();
       List<Object> referenceList = new ArrayList<Object>();
       Class<?>[] nativeClassPathReferenceClasses = getNativeClassPathReferenceClasses(nativeInterfaceConfiguration);
@@ -959,18 +1276,38 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
           systemPropertiesMap.put(flag, "true");
         }
       }
+      String[] valueProperties = new String[] {
+          NSSystemPropertySWT.INTERFACE_WRITER_MAXBATCHSIZE.getName(),
+          NSSystemPropertySWT.INTERFACE_WRITER_MAXLATENCY.getName(),
+      };
+      for(String valueProperty: valueProperties) {
+        String value = System.getProperty(valueProperty);
+        if(value != null) {
+          systemPropertiesMap.put(valueProperty, value);
+        }
+      }
       systemPropertiesMap.put(NSSystemProperty.LOCALHOSTADDRESS.getName(), localHostAddress);
       String mainClass;
       List<String> mainClassParameterList = new ArrayList<String>();
       if(isProxyClassLoaderUsed) {
         mainClass = NetworkURLClassLoader.class.getName();
         mainClassParameterList.add(WebServer.getDefaultWebServer().getClassPathResourceURL("", ""));
+        // The classes are sent in one jar, which the peer VM keeps from one launch to the next.
+        String jarHash = ProxyClassPathJar.getJarHash(referenceList);
+        if(jarHash != null) {
+          mainClassParameterList.add("-jar");
+          mainClassParameterList.add(ProxyClassPathJar.getJarURL(jarHash));
+          mainClassParameterList.add(jarHash);
+        }
         mainClassParameterList.add(NativeInterface.class.getName());
       } else {
         mainClass = NativeInterface.class.getName();
       }
       mainClassParameterList.add(String.valueOf(pid));
       mainClassParameterList.add(String.valueOf(port));
+      if(sharedMemoryPath != null) {
+        mainClassParameterList.add(sharedMemoryPath);
+      }
       PeerVMProcessFactory peerVMProcessFactory = nativeInterfaceConfiguration.getPeerVMProcessFactory();
       if(peerVMProcessFactory == null) {
         peerVMProcessFactory = new DefaultPeerVMProcessFactory();
@@ -988,6 +1325,7 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
     }
 
     private static final boolean IS_PROCESS_IO_CHANNEL_MODE = "processio".equals(NSSystemPropertySWT.INTERFACE_OUTPROCESS_COMMUNICATION.get());
+    private static final boolean IS_SHARED_MEMORY_CHANNEL_MODE = "sharedmemory".equals(NSSystemPropertySWT.INTERFACE_OUTPROCESS_COMMUNICATION.get());
 
     private static volatile int pid;
 
@@ -999,8 +1337,18 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
       boolean isCreatingProcess = Boolean.parseBoolean(NSSystemPropertySWT.PEERVM_CREATE.get("true"));
       int port;
       boolean isProcessIOChannelMode = IS_PROCESS_IO_CHANNEL_MODE && isCreatingProcess;
+      // The peer VM needs the path of the shared memory file, so that mode also requires to create the process.
+      boolean isSharedMemoryChannelMode = IS_SHARED_MEMORY_CHANNEL_MODE && isCreatingProcess;
+      SharedMemoryChannel sharedMemoryChannel = null;
       if(isProcessIOChannelMode) {
         port = 0;
+      } else if(isSharedMemoryChannelMode) {
+        port = 0;
+        try {
+          sharedMemoryChannel = SharedMemoryChannel.create();
+        } catch(IOException e) {
+          throw new RuntimeException(e);
+        }
       } else {
         port = Integer.parseInt(NSSystemPropertySWT.INTERFACE_PORT.get("-1"));
         if(port <= 0) {
@@ -1022,7 +1370,14 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
       int pid_ = ++pid;
       Process p;
       if(isCreatingProcess) {
-        p = createProcess(localHostAddress, port, pid_);
+        try {
+          p = createProcess(localHostAddress, port, pid_, sharedMemoryChannel == null? null: sharedMemoryChannel.getPath());
+        } catch(RuntimeException e) {
+          if(sharedMemoryChannel != null) {
+            sharedMemoryChannel.close();
+          }
+          throw e;
+        }
         if(!isProcessIOChannelMode) {
           connectStream(System.out, p.getInputStream(), "out", pid_);
         }
@@ -1034,9 +1389,17 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
         // We need the process in this mode, so it cannot be null.
         return new SwingOutProcessIOMessagingInterface(p.getInputStream(), p.getOutputStream(), false, p, pid_);
       }
+      long peerVMConnectionTimeout = Integer.parseInt(NSSystemPropertySWT.INTERFACE_OUTPROCESS_CONNECTIONTIMEOUT.get("10000"));
+      if(isSharedMemoryChannelMode) {
+        if(!sharedMemoryChannel.waitForPeer(p, peerVMConnectionTimeout)) {
+          sharedMemoryChannel.close();
+          p.destroy();
+          throw new IllegalStateException("Failed to connect to spawned VM!");
+        }
+        return new SwingOutProcessSharedMemoryMessagingInterface(sharedMemoryChannel, false, p, pid_);
+      }
       Exception exception = null;
       Socket socket = null;
-      long peerVMConnectionTimeout = Integer.parseInt(NSSystemPropertySWT.INTERFACE_OUTPROCESS_CONNECTIONTIMEOUT.get("10000"));
       long startTime = System.currentTimeMillis();
       do {
         if(p != null) {
@@ -1150,6 +1513,29 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
       }
     }
 
+    private static void addForcedTerminationShutdownHook() {
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        @Override
+        public void run() {
+          // There used to be cases in the past where VM was not closed properly.
+          // To prevent this case, we forcibly halt the VM after a timeout
+          Thread t = new Thread("Forced VM termination thread") {
+            @Override
+            public void run() {
+              try {
+                sleep(20000);
+              } catch (InterruptedException e) {
+              }
+              Runtime.getRuntime().halt(-1);
+            }
+          };
+          t.setDaemon(false);
+          t.start();
+          destroyControls();
+        }
+      });
+    }
+
     static void runNativeSide(String[] args) throws IOException {
       final int pid = Integer.parseInt(args[0]);
       if(Boolean.parseBoolean(NSSystemPropertySWT.PEERVM_DEBUG_PRINTSTARTMESSAGE.get())) {
@@ -1159,9 +1545,15 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
         isOpen = true;
       }
       int port = Integer.parseInt(args[1]);
-      boolean isProcessIOChannelMode = port <= 0;
+      String sharedMemoryPath = args.length > 2? args[2]: null;
+      boolean isSharedMemoryChannelMode = sharedMemoryPath != null;
+      boolean isProcessIOChannelMode = !isSharedMemoryChannelMode && port <= 0;
       Socket socket = null;
-      if(!isProcessIOChannelMode) {
+      SharedMemoryChannel sharedMemoryChannel = null;
+      if(isSharedMemoryChannelMode) {
+        sharedMemoryChannel = SharedMemoryChannel.open(sharedMemoryPath);
+        addForcedTerminationShutdownHook();
+      } else if(!isProcessIOChannelMode) {
         ServerSocket serverSocket = null;
         long startTime = System.currentTimeMillis();
         IOException exception;
@@ -1217,26 +1609,7 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
           shutdownThread.setDaemon(true);
           shutdownThread.start();
         }
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-          @Override
-          public void run() {
-            // There used to be cases in the past where VM was not closed properly.
-            // To prevent this case, we forcibly halt the VM after a timeout
-            Thread t = new Thread("Forced VM termination thread") {
-              @Override
-              public void run() {
-                try {
-                  sleep(20000);
-                } catch (InterruptedException e) {
-                }
-                Runtime.getRuntime().halt(-1);
-              }
-            };
-            t.setDaemon(false);
-            t.start();
-            destroyControls();
-          }
-        });
+        addForcedTerminationShutdownHook();
         try {
           socket = serverSocket.accept();
         } catch(Exception e) {
@@ -1340,6 +1713,11 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
             }
           }.start();
         }
+      } else if(isSharedMemoryChannelMode) {
+        SWTOutProcessSharedMemoryMessagingInterface outInterface = new SWTOutProcessSharedMemoryMessagingInterface(sharedMemoryChannel, true, display, pid);
+        synchronized(OPEN_STATE_LOCK) {
+          messagingInterface = outInterface;
+        }
       } else {
         SWTOutProcessSocketsMessagingInterface outInterface = new SWTOutProcessSocketsMessagingInterface(socket, true, display, pid);
         synchronized(OPEN_STATE_LOCK) {
@@ -1417,10 +1795,18 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
     return NativeInterface.getMessageID(message);
   }
 
+  protected static void setMessageID(Message message, int id) {
+    NativeInterface.setMessageID(message, id);
+  }
+
   protected static boolean isMessageValid(Message message) {
     return NativeInterface.isMessageValid(message);
   }
 
+  protected static Object getMessageCoalescingKey(Message message) {
+    return NativeInterface.getMessageCoalescingKey(message);
+  }
+
   protected static Object runMessageCommand(LocalMessage commandMessage) {
     return NativeInterface.runMessageCommand(commandMessage);
   }
@@ -1441,10 +1827,22 @@ public class SWTNativeInterface extends NativeInterface implements ISWTNativeInt
     NativeInterface.setMessageArgs(message, args);
   }
 
+  protected static Object[] getMessageArgs(CommandMessage message) {
+    return NativeInterface.getMessageArgs(message);
+  }
+
   protected static void computeMessageID(Message message, boolean isTargetNativeSide) {
     NativeInterface.computeMessageID(message, isTargetNativeSide);
   }
 
+  protected static CommandFuture createCommandFuture() {
+    return NativeInterface.createCommandFuture();
+  }
+
+  protected static void completeCommandFuture(CommandFuture commandFuture, Object result, Throwable exception) {
+    NativeInterface.completeCommandFuture(commandFuture, result, exception);
+  }
+
   protected static void setMessageUI(Message message, boolean isUI) {
     NativeInterface.setMessageUI(message, isUI);
   }
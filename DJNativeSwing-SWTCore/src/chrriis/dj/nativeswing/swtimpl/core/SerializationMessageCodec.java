@@ -0,0 +1,102 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+
+import chrriis.dj.nativeswing.swtimpl.Message;
+import chrriis.dj.nativeswing.swtimpl.NSSystemPropertySWT;
+
+/**
+ * A codec that uses Java serialization for the whole message.
+ * @author Christopher Deckers
+ */
+class SerializationMessageCodec extends MessageCodec {
+
+  private static final int OOS_RESET_THRESHOLD;
+
+  static {
+    String maxByteCountProperty = NSSystemPropertySWT.INTERFACE_STREAMRESETTHRESHOLD.get();
+    if(maxByteCountProperty != null) {
+      OOS_RESET_THRESHOLD = Integer.parseInt(maxByteCountProperty);
+    } else {
+      OOS_RESET_THRESHOLD = 500000;
+    }
+  }
+
+  private ObjectOutputStream oos;
+  private ObjectInputStream ois;
+  private InputStream is;
+  private int oosByteCount;
+
+  SerializationMessageCodec(InputStream is, OutputStream os) throws IOException {
+    oos = new ObjectOutputStream(new FilterOutputStream(os) {
+      @Override
+      public void write(int b) throws IOException {
+        out.write(b);
+        oosByteCount++;
+      }
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        oosByteCount += len;
+      }
+    });
+    oos.flush();
+    this.is = is;
+  }
+
+  @Override
+  void writeMessage(Message message) throws IOException {
+    oos.writeUnshared(message);
+    // Messages are cached, so we need to reset() from time to time to clean the cache, or else we get an OutOfMemoryError.
+    if(oosByteCount > OOS_RESET_THRESHOLD) {
+      oos.reset();
+      oosByteCount = 0;
+    }
+  }
+
+  @Override
+  void flush() throws IOException {
+    oos.flush();
+  }
+
+  @Override
+  Message readMessage() throws IOException, ClassNotFoundException {
+    if(ois == null) {
+      // The stream header is read lazily so that creating the codec does not block on the other side.
+      ois = new ObjectInputStream(is);
+    }
+    Object o = ois.readUnshared();
+    if(o instanceof Message) {
+      return (Message)o;
+    }
+    System.err.println("Unknown message: " + o);
+    return null;
+  }
+
+  @Override
+  void closeOutput() throws IOException {
+    oos.close();
+  }
+
+  @Override
+  void closeInput() throws IOException {
+    if(ois != null) {
+      ois.close();
+    } else {
+      is.close();
+    }
+  }
+
+}
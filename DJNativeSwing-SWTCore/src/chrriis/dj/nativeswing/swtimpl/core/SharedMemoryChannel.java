@@ -0,0 +1,697 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.security.SecureRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import chrriis.dj.nativeswing.common.Utils;
+import chrriis.dj.nativeswing.swtimpl.NSSystemPropertySWT;
+
+/**
+ * A communication channel between two processes, made of a pair of single-producer single-consumer ring buffers in a memory-mapped file.<br/>
+ * Readers and writers spin for a short while before sleeping until the other side rings a doorbell, which is a loopback socket that only carries wake-up bytes. Each side holds a lock on the file so that the other side can detect its termination.
+ * @author Christopher Deckers
+ */
+class SharedMemoryChannel {
+
+  private static final int MAGIC = 0x444A4E4D;
+
+  private static final int MAGIC_OFFSET = 0;
+  private static final int CAPACITY_OFFSET = 4;
+  private static final int PEER_ATTACHED_OFFSET = 8;
+  private static final int DOORBELL_PORT_OFFSET = 12;
+  private static final int DOORBELL_KEY_OFFSET = 16;
+  private static final int DOORBELL_COUNT_OFFSET = 24;
+  private static final int HEADER_SIZE = 128;
+
+  // Positions are kept on separate cache lines so that both sides do not contend on the same line.
+  private static final int RING_WRITE_POSITION_OFFSET = 0;
+  private static final int RING_READ_POSITION_OFFSET = 64;
+  private static final int RING_CLOSED_OFFSET = 128;
+  // The flags that a side raises before sleeping, so that the other side knows it has to ring the doorbell.
+  private static final int RING_READER_WAITING_OFFSET = 132;
+  private static final int RING_WRITER_WAITING_OFFSET = 136;
+  private static final int RING_HEADER_SIZE = 192;
+
+  // Spinning on a single processor only delays the other side.
+  private static final long SPIN_NANOS = Runtime.getRuntime().availableProcessors() > 1? 50000: 0;
+  private static final long YIELD_NANOS = 1000000;
+  private static final long MAX_PARK_NANOS = 1000000;
+  private static final long LIVENESS_CHECK_INTERVAL = 100;
+  // A thread sleeping on a doorbell is woken up when the other side terminates, so the lock is only checked in case this was missed.
+  private static final int DOORBELL_LIVENESS_CHECK_INTERVAL = 1000;
+  private static final int DOORBELL_CONNECTION_TIMEOUT = 5000;
+
+  private static final MethodHandle STORE_FENCE;
+  private static final MethodHandle LOAD_FENCE;
+  private static final MethodHandle FULL_FENCE;
+
+  static {
+    // The mapped buffer is shared with another process, so its accesses are ordered with the fences of the processor rather than with the memory model of the VM.
+    MethodHandle storeFence = null;
+    MethodHandle loadFence = null;
+    MethodHandle fullFence = null;
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+      unsafeField.setAccessible(true);
+      Object unsafe = unsafeField.get(null);
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      storeFence = lookup.unreflect(unsafeClass.getMethod("storeFence")).bindTo(unsafe);
+      loadFence = lookup.unreflect(unsafeClass.getMethod("loadFence")).bindTo(unsafe);
+      fullFence = lookup.unreflect(unsafeClass.getMethod("fullFence")).bindTo(unsafe);
+    } catch(Exception e) {
+      // Fences are not available before Java 8: volatile accesses are used instead.
+      storeFence = null;
+      loadFence = null;
+      fullFence = null;
+    }
+    STORE_FENCE = storeFence;
+    LOAD_FENCE = loadFence;
+    FULL_FENCE = fullFence;
+  }
+
+  /**
+   * A volatile field whose accesses order the accesses to the mapped buffer when fences are not available.
+   */
+  private static volatile int fence;
+
+  /**
+   * Ensure that the reads and writes of the buffer that precede this call are not reordered with the write that publishes them.
+   */
+  private static void releaseFence() {
+    if(STORE_FENCE == null) {
+      fence = 0;
+      return;
+    }
+    try {
+      // A store fence also orders the loads that precede it.
+      STORE_FENCE.invokeExact();
+    } catch(Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  /**
+   * Ensure that the reads and writes of the buffer that follow this call are not reordered with the read of the published position.
+   */
+  private static void acquireFence() {
+    if(LOAD_FENCE == null) {
+      int fence = SharedMemoryChannel.fence;
+      return;
+    }
+    try {
+      LOAD_FENCE.invokeExact();
+    } catch(Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  /**
+   * Ensure that the writes to the buffer that precede this call are visible before the reads that follow it.
+   */
+  private static void fullFence() {
+    if(FULL_FENCE == null) {
+      fence = SharedMemoryChannel.fence;
+      return;
+    }
+    try {
+      FULL_FENCE.invokeExact();
+    } catch(Throwable t) {
+      throw new IllegalStateException(t);
+    }
+  }
+
+  private final File file;
+  private final boolean isOwner;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel fileChannel;
+  private final MappedByteBuffer buffer;
+  private final int capacity;
+  private final long otherSideLockPosition;
+  private FileLock lock;
+  private ServerSocket doorbellServerSocket;
+  private long doorbellKey;
+  private final RingBuffer inputRingBuffer;
+  private final RingBuffer outputRingBuffer;
+  private volatile boolean isClosed;
+
+  private SharedMemoryChannel(File file, boolean isOwner) throws IOException {
+    this.file = file;
+    this.isOwner = isOwner;
+    randomAccessFile = new RandomAccessFile(file, "rw");
+    fileChannel = randomAccessFile.getChannel();
+    int capacity;
+    if(isOwner) {
+      capacity = Integer.parseInt(NSSystemPropertySWT.INTERFACE_SHAREDMEMORY_BUFFERSIZE.get("1048576"));
+      // Keep the second ring and the positions aligned, so that the positions are read and written atomically.
+      capacity = Math.max(4096, (capacity + 63) & ~63);
+    } else {
+      ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
+      while(headerBuffer.hasRemaining() && fileChannel.read(headerBuffer) != -1) {
+      }
+      if(headerBuffer.getInt(MAGIC_OFFSET) != MAGIC) {
+        randomAccessFile.close();
+        throw new IOException("The shared memory file is not a valid communication channel: " + file);
+      }
+      capacity = headerBuffer.getInt(CAPACITY_OFFSET);
+    }
+    this.capacity = capacity;
+    long mappedSize = HEADER_SIZE + 2L * (RING_HEADER_SIZE + capacity);
+    // The lock bytes are located after the mapped region, so that locking never interferes with the mapped data.
+    long ownerLockPosition = mappedSize;
+    long peerLockPosition = mappedSize + 1;
+    lock = fileChannel.lock(isOwner? ownerLockPosition: peerLockPosition, 1, false);
+    otherSideLockPosition = isOwner? peerLockPosition: ownerLockPosition;
+    buffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize);
+    int ownerToPeerOffset = HEADER_SIZE;
+    int peerToOwnerOffset = HEADER_SIZE + RING_HEADER_SIZE + capacity;
+    inputRingBuffer = new RingBuffer(isOwner? peerToOwnerOffset: ownerToPeerOffset);
+    outputRingBuffer = new RingBuffer(isOwner? ownerToPeerOffset: peerToOwnerOffset);
+    if(isOwner) {
+      buffer.putInt(CAPACITY_OFFSET, capacity);
+      try {
+        doorbellServerSocket = new ServerSocket(0, 2, InetAddress.getByName("127.0.0.1"));
+        // Only the processes that can read the file know the key, so that no other process can ring the doorbells.
+        doorbellKey = new SecureRandom().nextLong();
+        buffer.putInt(DOORBELL_PORT_OFFSET, doorbellServerSocket.getLocalPort());
+        buffer.putLong(DOORBELL_KEY_OFFSET, doorbellKey);
+      } catch(IOException e) {
+        // Without doorbells, waiting threads park for short periods.
+        doorbellServerSocket = null;
+      }
+      releaseFence();
+      buffer.putInt(MAGIC_OFFSET, MAGIC);
+    } else {
+      acquireFence();
+      int doorbellPort = buffer.getInt(DOORBELL_PORT_OFFSET);
+      if(doorbellPort != 0) {
+        long doorbellKey = buffer.getLong(DOORBELL_KEY_OFFSET);
+        Socket[] doorbellSockets = new Socket[2];
+        try {
+          for(int i=0; i<doorbellSockets.length; i++) {
+            Socket doorbellSocket = new Socket();
+            doorbellSockets[i] = doorbellSocket;
+            doorbellSocket.connect(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), doorbellPort), DOORBELL_CONNECTION_TIMEOUT);
+            DataOutputStream out = new DataOutputStream(doorbellSocket.getOutputStream());
+            out.writeLong(doorbellKey);
+            // 0 is the ring from the owner to the peer.
+            out.writeByte(i);
+            out.flush();
+          }
+          outputRingBuffer.setDoorbell(doorbellSockets[1]);
+          inputRingBuffer.setDoorbell(doorbellSockets[0]);
+          buffer.putInt(DOORBELL_COUNT_OFFSET, doorbellSockets.length);
+        } catch(IOException e) {
+          for(Socket doorbellSocket: doorbellSockets) {
+            if(doorbellSocket != null) {
+              try {
+                doorbellSocket.close();
+              } catch(IOException ex) {
+              }
+            }
+          }
+        }
+      }
+      releaseFence();
+      buffer.putInt(PEER_ATTACHED_OFFSET, 1);
+    }
+  }
+
+  /**
+   * Create a new channel, backed by a new file in a directory of the temporary directory that only the current user can access. The path of that file is what the other side needs to open the channel.
+   */
+  public static SharedMemoryChannel create() throws IOException {
+    // The file contains the doorbell key and all the messages, which can contain serialized objects: other users must not be able to read or replace it.
+    File dir = Utils.getUserTempDirectory("sharedmemory");
+    File file = File.createTempFile("channel", ".shm", dir);
+    file.deleteOnExit();
+    try {
+      return new SharedMemoryChannel(file, true);
+    } catch(IOException e) {
+      file.delete();
+      throw e;
+    }
+  }
+
+  /**
+   * Open a channel that was created by the other side.
+   */
+  public static SharedMemoryChannel open(String path) throws IOException {
+    return new SharedMemoryChannel(new File(path), false);
+  }
+
+  public String getPath() {
+    return file.getAbsolutePath();
+  }
+
+  /**
+   * Wait until the side that opens the channel has attached to it.
+   * @param process the process of the other side, used to stop waiting if it terminates, or null.
+   * @return true if the other side attached before the timeout.
+   */
+  public boolean waitForPeer(Process process, long timeout) {
+    long startTime = System.currentTimeMillis();
+    while(buffer.getInt(PEER_ATTACHED_OFFSET) == 0) {
+      if(process != null) {
+        try {
+          process.exitValue();
+          // The process is terminated so it will never attach.
+          return false;
+        } catch(IllegalThreadStateException e) {
+          // Process is not terminated, which means no error
+        }
+      }
+      if(System.currentTimeMillis() - startTime >= timeout) {
+        return false;
+      }
+      try {
+        Thread.sleep(10);
+      } catch(Exception e) {
+      }
+    }
+    acquireFence();
+    acceptDoorbells(buffer.getInt(DOORBELL_COUNT_OFFSET));
+    return true;
+  }
+
+  private void acceptDoorbells(int doorbellCount) {
+    if(doorbellServerSocket == null) {
+      return;
+    }
+    try {
+      // The peer connected before attaching, so the connections are already waiting.
+      doorbellServerSocket.setSoTimeout(DOORBELL_CONNECTION_TIMEOUT);
+      for(int i=0; i<doorbellCount; i++) {
+        Socket doorbellSocket = doorbellServerSocket.accept();
+        try {
+          doorbellSocket.setSoTimeout(DOORBELL_CONNECTION_TIMEOUT);
+          DataInputStream in = new DataInputStream(doorbellSocket.getInputStream());
+          if(in.readLong() != doorbellKey) {
+            throw new IOException("Invalid doorbell key!");
+          }
+          if(in.readByte() == 0) {
+            outputRingBuffer.setDoorbell(doorbellSocket);
+          } else {
+            inputRingBuffer.setDoorbell(doorbellSocket);
+          }
+        } catch(IOException e) {
+          doorbellSocket.close();
+          throw e;
+        }
+      }
+    } catch(IOException e) {
+      // The rings that have no doorbell park for short periods. Closing the server socket resets the connections that the peer may still expect to be accepted.
+    }
+    try {
+      doorbellServerSocket.close();
+    } catch(IOException e) {
+    }
+    doorbellServerSocket = null;
+  }
+
+  private boolean isOtherSideAlive() {
+    if(isOwner && buffer.getInt(PEER_ATTACHED_OFFSET) == 0) {
+      // The peer has not locked its part yet.
+      return true;
+    }
+    try {
+      FileLock otherSideLock = fileChannel.tryLock(otherSideLockPosition, 1, false);
+      if(otherSideLock == null) {
+        return true;
+      }
+      // We could acquire the lock, so the process that was holding it is gone.
+      otherSideLock.release();
+      return false;
+    } catch(Exception e) {
+      return !isClosed;
+    }
+  }
+
+  public InputStream getInputStream() {
+    return inputRingBuffer.inputStream;
+  }
+
+  public OutputStream getOutputStream() {
+    return outputRingBuffer.outputStream;
+  }
+
+  public void close() {
+    if(isClosed) {
+      return;
+    }
+    isClosed = true;
+    try {
+      outputRingBuffer.outputStream.close();
+    } catch(Exception e) {
+    }
+    outputRingBuffer.closeDoorbell();
+    inputRingBuffer.closeDoorbell();
+    if(doorbellServerSocket != null) {
+      try {
+        doorbellServerSocket.close();
+      } catch(Exception e) {
+      }
+    }
+    try {
+      lock.release();
+    } catch(Exception e) {
+    }
+    try {
+      randomAccessFile.close();
+    } catch(Exception e) {
+    }
+    if(isOwner) {
+      // On some systems, the file cannot be deleted while it is still mapped. It is then deleted on exit.
+      file.delete();
+    }
+  }
+
+  private class RingBuffer {
+
+    private final int writePositionOffset;
+    private final int readPositionOffset;
+    private final int closedOffset;
+    private final int readerWaitingOffset;
+    private final int writerWaitingOffset;
+    private final int dataOffset;
+    // Each end of the ring is used by a single thread, so each gets its own view of the buffer.
+    private final ByteBuffer inputBuffer;
+    private final ByteBuffer outputBuffer;
+
+    public RingBuffer(int offset) {
+      writePositionOffset = offset + RING_WRITE_POSITION_OFFSET;
+      readPositionOffset = offset + RING_READ_POSITION_OFFSET;
+      closedOffset = offset + RING_CLOSED_OFFSET;
+      readerWaitingOffset = offset + RING_READER_WAITING_OFFSET;
+      writerWaitingOffset = offset + RING_WRITER_WAITING_OFFSET;
+      dataOffset = offset + RING_HEADER_SIZE;
+      inputBuffer = buffer.duplicate();
+      outputBuffer = buffer.duplicate();
+    }
+
+    // Each end of the ring is used by a single thread, which is the only one to use the doorbell in this process.
+    private volatile Socket doorbellSocket;
+    private volatile InputStream doorbellInputStream;
+    private volatile OutputStream doorbellOutputStream;
+    private final byte[] doorbellBytes = new byte[64];
+
+    private void setDoorbell(Socket doorbellSocket) throws IOException {
+      doorbellSocket.setTcpNoDelay(true);
+      doorbellSocket.setSoTimeout(DOORBELL_LIVENESS_CHECK_INTERVAL);
+      doorbellInputStream = doorbellSocket.getInputStream();
+      doorbellOutputStream = doorbellSocket.getOutputStream();
+      this.doorbellSocket = doorbellSocket;
+    }
+
+    private void closeDoorbell() {
+      Socket doorbellSocket = this.doorbellSocket;
+      if(doorbellSocket == null) {
+        return;
+      }
+      doorbellInputStream = null;
+      doorbellOutputStream = null;
+      this.doorbellSocket = null;
+      try {
+        doorbellSocket.close();
+      } catch(IOException e) {
+      }
+    }
+
+    /**
+     * Wake up the other side if it sleeps until this side publishes something.
+     * @param waitingOffset the offset of the flag that the other side raises before sleeping.
+     */
+    private void ring(int waitingOffset) {
+      // The published value must be visible before the flag is read, as the other side raises the flag before checking that value again.
+      fullFence();
+      if(buffer.getInt(waitingOffset) == 0) {
+        return;
+      }
+      OutputStream doorbellOutputStream = this.doorbellOutputStream;
+      if(doorbellOutputStream != null) {
+        try {
+          doorbellOutputStream.write(0);
+        } catch(IOException e) {
+          closeDoorbell();
+        }
+      }
+    }
+
+    private boolean isRingClosed() {
+      return buffer.getInt(closedOffset) != 0;
+    }
+
+    private class Waiter {
+
+      private final boolean isReader;
+      private long waitStartTime;
+      private long lastLivenessCheckTime;
+      private boolean isWaitingFlagRaised;
+
+      public Waiter(boolean isReader) {
+        this.isReader = isReader;
+      }
+
+      private int getWaitingOffset() {
+        return isReader? readerWaitingOffset: writerWaitingOffset;
+      }
+
+      public boolean isWaiting() {
+        return waitStartTime != 0;
+      }
+
+      public void start() {
+        waitStartTime = System.nanoTime();
+        lastLivenessCheckTime = System.currentTimeMillis();
+      }
+
+      public void stop() {
+        waitStartTime = 0;
+        if(isWaitingFlagRaised) {
+          isWaitingFlagRaised = false;
+          buffer.putInt(getWaitingOffset(), 0);
+        }
+      }
+
+      /**
+       * Wait a bit, spinning first, then yielding and finally sleeping until the other side rings the doorbell. The caller has to check its condition after each call.
+       * @return false if the channel is closed or the other side is gone.
+       */
+      public boolean await() {
+        long elapsed = System.nanoTime() - waitStartTime;
+        if(elapsed < SPIN_NANOS) {
+          return !isClosed;
+        }
+        if(elapsed < YIELD_NANOS) {
+          Thread.yield();
+          return !isClosed;
+        }
+        InputStream doorbellInputStream = RingBuffer.this.doorbellInputStream;
+        if(doorbellInputStream == null) {
+          LockSupport.parkNanos(Math.min(elapsed / 8, MAX_PARK_NANOS));
+          return checkOtherSide(LIVENESS_CHECK_INTERVAL);
+        }
+        if(!isWaitingFlagRaised) {
+          // The caller checks its condition once more after the flag is raised, in case the other side published before it could see the flag.
+          isWaitingFlagRaised = true;
+          buffer.putInt(getWaitingOffset(), 1);
+          fullFence();
+          return !isClosed;
+        }
+        try {
+          // Several rings may be pending, when the other side published again before the flag was lowered.
+          if(doorbellInputStream.read(doorbellBytes) == -1) {
+            // The other side closed the doorbell: from now on we park, which checks whether it is alive.
+            closeDoorbell();
+          }
+        } catch(SocketTimeoutException e) {
+          // Just check that the other side is alive.
+        } catch(IOException e) {
+          closeDoorbell();
+        }
+        return checkOtherSide(DOORBELL_LIVENESS_CHECK_INTERVAL);
+      }
+
+      private boolean checkOtherSide(long livenessCheckInterval) {
+        if(isClosed) {
+          return false;
+        }
+        long time = System.currentTimeMillis();
+        if(time - lastLivenessCheckTime >= livenessCheckInterval) {
+          lastLivenessCheckTime = time;
+          return isOtherSideAlive();
+        }
+        return true;
+      }
+
+    }
+
+    private final InputStream inputStream = new InputStream() {
+
+      private long readPosition;
+      private final Waiter waiter = new Waiter(true);
+
+      private int awaitAvailable() throws IOException {
+        try {
+          while(true) {
+            long available = buffer.getLong(writePositionOffset) - readPosition;
+            if(available > 0) {
+              acquireFence();
+              return (int)available;
+            }
+            if(isRingClosed()) {
+              return -1;
+            }
+            if(!waiter.isWaiting()) {
+              waiter.start();
+            } else if(!waiter.await()) {
+              if(isClosed) {
+                throw new IOException("The communication channel is closed!");
+              }
+              return -1;
+            }
+          }
+        } finally {
+          waiter.stop();
+        }
+      }
+
+      @Override
+      public int read() throws IOException {
+        byte[] bytes = new byte[1];
+        int count = read(bytes, 0, 1);
+        return count == -1? -1: bytes[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+          return 0;
+        }
+        int available = awaitAvailable();
+        if(available == -1) {
+          return -1;
+        }
+        int index = (int)(readPosition % capacity);
+        int count = Math.min(Math.min(available, len), capacity - index);
+        inputBuffer.position(dataOffset + index);
+        inputBuffer.get(b, off, count);
+        readPosition += count;
+        releaseFence();
+        buffer.putLong(readPositionOffset, readPosition);
+        ring(writerWaitingOffset);
+        return count;
+      }
+
+      @Override
+      public int available() throws IOException {
+        return (int)Math.min(buffer.getLong(writePositionOffset) - readPosition, Integer.MAX_VALUE);
+      }
+
+      @Override
+      public void close() throws IOException {
+        SharedMemoryChannel.this.close();
+      }
+
+    };
+
+    private final OutputStream outputStream = new OutputStream() {
+
+      private long writePosition;
+      private final Waiter waiter = new Waiter(false);
+
+      private void publish() {
+        releaseFence();
+        buffer.putLong(writePositionOffset, writePosition);
+        ring(readerWaitingOffset);
+      }
+
+      private int awaitFreeSpace() throws IOException {
+        try {
+          while(true) {
+            long free = capacity - (writePosition - buffer.getLong(readPositionOffset));
+            if(free > 0) {
+              // The reader must be done with the space before we overwrite it.
+              acquireFence();
+              return (int)free;
+            }
+            if(!waiter.isWaiting()) {
+              // The reader may be waiting for what we wrote so far.
+              publish();
+              waiter.start();
+            } else if(!waiter.await()) {
+              throw new IOException("The communication channel is closed!");
+            }
+          }
+        } finally {
+          waiter.stop();
+        }
+      }
+
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if(isClosed) {
+          throw new IOException("The communication channel is closed!");
+        }
+        while(len > 0) {
+          int free = awaitFreeSpace();
+          int index = (int)(writePosition % capacity);
+          int count = Math.min(Math.min(free, len), capacity - index);
+          outputBuffer.position(dataOffset + index);
+          outputBuffer.put(b, off, count);
+          writePosition += count;
+          off += count;
+          len -= count;
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        publish();
+      }
+
+      @Override
+      public void close() throws IOException {
+        releaseFence();
+        buffer.putLong(writePositionOffset, writePosition);
+        releaseFence();
+        buffer.putInt(closedOffset, 1);
+        ring(readerWaitingOffset);
+      }
+
+    };
+
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.swtimpl.core;
+
+import java.lang.reflect.Field;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+
+import chrriis.dj.nativeswing.swtimpl.CommandMessage;
+import chrriis.dj.nativeswing.swtimpl.Message;
+import chrriis.dj.nativeswing.swtimpl.core.OutProcessSocketsMessagingInterface.SwingOutProcessSocketsMessagingInterface;
+
+/**
+ * A stress test of the sync calls, which connects two messaging interfaces through a local socket, like the Swing side and the peer VM, and makes many threads of both sides call the other side at once.<br/>
+ * Each call carries a value that is unique to its caller, which the other side returns: the test fails if a result reaches another caller than the one that made the call. The message ID counter starts close to its limit so that the IDs wrap around during the test.<br/>
+ * Usage: SyncCallStressTest [thread count per side] [call count per thread]
+ * @author Christopher Deckers
+ */
+class SyncCallStressTest {
+
+  /**
+   * The side that plays the peer VM, whose UI thread is a plain thread.
+   */
+  private static class PeerMessagingInterface extends OutProcessSocketsMessagingInterface {
+
+    private static Thread uiThread;
+    private static final List<Runnable> runnableList = new ArrayList<Runnable>();
+
+    static {
+      uiThread = new Thread("Stress Test Peer UI") {
+        @Override
+        public void run() {
+          while(true) {
+            Runnable runnable;
+            synchronized(runnableList) {
+              while(runnableList.isEmpty()) {
+                try {
+                  runnableList.wait();
+                } catch(InterruptedException e) {
+                }
+              }
+              runnable = runnableList.remove(0);
+            }
+            runnable.run();
+          }
+        }
+      };
+      uiThread.setDaemon(true);
+      uiThread.start();
+    }
+
+    public PeerMessagingInterface(Socket socket) {
+      super(true, socket, false, 1);
+    }
+
+    @Override
+    protected void asyncUIExec(Runnable runnable) {
+      synchronized(runnableList) {
+        runnableList.add(runnable);
+        runnableList.notify();
+      }
+    }
+
+    @Override
+    public boolean isUIThread() {
+      return Thread.currentThread() == uiThread;
+    }
+
+  }
+
+  /**
+   * The message that returns its argument.
+   */
+  public static class CMJ_echo extends CommandMessage {
+    @Override
+    public Object run(Object[] args) {
+      return args[0];
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    final int threadCount = args.length > 0? Integer.parseInt(args[0]): 16;
+    final int callCount = args.length > 1? Integer.parseInt(args[1]): 5000;
+    // About half of the calls are made before the IDs wrap around, and half after.
+    Field nextIDField = Message.class.getDeclaredField("nextID");
+    nextIDField.setAccessible(true);
+    AtomicInteger nextID = (AtomicInteger)nextIDField.get(null);
+    nextID.set(Integer.MAX_VALUE - threadCount * callCount);
+    ServerSocket serverSocket = new ServerSocket();
+    serverSocket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+    final Socket swingSocket = new Socket("127.0.0.1", serverSocket.getLocalPort());
+    Socket peerSocket = serverSocket.accept();
+    serverSocket.close();
+    // Each side waits for the other to announce its codec when it opens its channel.
+    final MessagingInterface[] swingMessagingInterface = new MessagingInterface[1];
+    Thread swingThread = new Thread() {
+      @Override
+      public void run() {
+        swingMessagingInterface[0] = new SwingOutProcessSocketsMessagingInterface(swingSocket, false, null, 1);
+      }
+    };
+    swingThread.start();
+    final MessagingInterface peerMessagingInterface = new PeerMessagingInterface(peerSocket);
+    swingThread.join();
+    final AtomicLong mismatchCount = new AtomicLong();
+    final AtomicLong failureCount = new AtomicLong();
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    List<Thread> threadList = new ArrayList<Thread>();
+    for(int i=0; i<threadCount * 2; i++) {
+      final boolean isSwingSide = i % 2 == 0;
+      final MessagingInterface messagingInterface = isSwingSide? swingMessagingInterface[0]: peerMessagingInterface;
+      final long callerID = i;
+      final Runnable callRunnable = new Runnable() {
+        public void run() {
+          for(int j=0; j<callCount; j++) {
+            Long value = callerID << 32 | j;
+            CMJ_echo message = new CMJ_echo();
+            SWTNativeInterface.setMessageArgs(message, value);
+            Object result;
+            try {
+              result = messagingInterface.syncSend(message);
+            } catch(Exception e) {
+              if(failureCount.incrementAndGet() <= 3) {
+                e.printStackTrace();
+              }
+              continue;
+            }
+            if(!value.equals(result)) {
+              mismatchCount.incrementAndGet();
+            }
+          }
+        }
+      };
+      Thread thread;
+      if(i == 0) {
+        // One caller is the UI thread of the Swing side, which waits for its results differently.
+        thread = new Thread("Stress Test Caller " + i) {
+          @Override
+          public void run() {
+            try {
+              startLatch.await();
+              SwingUtilities.invokeAndWait(callRunnable);
+            } catch(Exception e) {
+              e.printStackTrace();
+            }
+          }
+        };
+      } else {
+        thread = new Thread("Stress Test Caller " + i) {
+          @Override
+          public void run() {
+            try {
+              startLatch.await();
+            } catch(InterruptedException e) {
+            }
+            callRunnable.run();
+          }
+        };
+      }
+      thread.start();
+      threadList.add(thread);
+    }
+    int firstID = nextID.get();
+    long startTime = System.currentTimeMillis();
+    startLatch.countDown();
+    for(Thread thread: threadList) {
+      thread.join();
+    }
+    long duration = System.currentTimeMillis() - startTime;
+    long totalCount = (long)threadCount * 2 * callCount;
+    System.out.println("Sync calls: " + totalCount + " from " + threadCount * 2 + " threads in " + duration + " ms (" + totalCount * 1000 / Math.max(1, duration) + " calls/s)");
+    System.out.println("Message IDs wrapped around: " + (nextID.get() < firstID));
+    System.out.println("Results that reached another caller: " + mismatchCount.get());
+    System.out.println("Calls that failed: " + failureCount.get());
+    boolean isSuccessful = mismatchCount.get() == 0 && failureCount.get() == 0;
+    System.out.println(isSuccessful? "PASSED": "FAILED");
+    // The interfaces would report the end of the other side as a crash of the peer VM.
+    System.exit(isSuccessful? 0: 1);
+  }
+
+}
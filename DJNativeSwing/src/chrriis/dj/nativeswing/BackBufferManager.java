@@ -7,8 +7,10 @@
  */
 package chrriis.dj.nativeswing;
 
+import java.awt.AlphaComposite;
 import java.awt.Component;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
@@ -39,6 +41,10 @@ class BackBufferManager {
         backBuffer.flush();
       }
       backBuffer = null;
+      if(backBufferStorage != null) {
+        backBufferStorage.flush();
+      }
+      backBufferStorage = null;
       return;
     }
     updateBackBuffer(getTranslucentOverlays());
@@ -79,22 +85,20 @@ class BackBufferManager {
         backBuffer.flush();
       }
       backBuffer = null;
+      if(backBufferStorage != null) {
+        backBufferStorage.flush();
+      }
+      backBufferStorage = null;
       return;
     }
     BufferedImage image;
-    if(backBuffer != null && backBuffer.getWidth() == width && backBuffer.getHeight() == height) {
-      image = backBuffer;
-    } else {
-      image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    synchronized(backBufferLock) {
+      image = getBackBufferImage(width, height);
     }
-    nativeComponent.paintNativeComponent(image, rectangles);
+    // The image keeps what was painted before, so only the areas that changed need to be transferred.
+    nativeComponent.paintNativeComponentIncrementally(image, rectangles);
     synchronized(backBufferLock) {
       if(backBuffer != null && backBuffer != image) {
-        synchronized(backBuffer) {
-          Graphics g = image.getGraphics();
-          g.drawImage(backBuffer, 0, 0, null);
-          g.dispose();
-        }
         backBuffer.flush();
       }
       backBuffer = image;
@@ -105,6 +109,52 @@ class BackBufferManager {
     }
   }
 
+  private static final int STORAGE_INCREMENT = 64;
+
+  /**
+   * The image whose top left area is the back buffer. It is larger than the back buffer, so that resizing the component does not allocate a new image each time.
+   */
+  private BufferedImage backBufferStorage;
+
+  /**
+   * Get the image to use as the back buffer for the given size, with the content of the current back buffer.
+   */
+  private BufferedImage getBackBufferImage(int width, int height) {
+    if(backBuffer != null && backBuffer.getWidth() == width && backBuffer.getHeight() == height) {
+      return backBuffer;
+    }
+    int storageWidth = backBufferStorage == null? 0: backBufferStorage.getWidth();
+    int storageHeight = backBufferStorage == null? 0: backBufferStorage.getHeight();
+    if(storageWidth < width || storageHeight < height || storageWidth * storageHeight > 2 * (width + STORAGE_INCREMENT) * (height + STORAGE_INCREMENT)) {
+      BufferedImage storage = new BufferedImage(width + STORAGE_INCREMENT, height + STORAGE_INCREMENT, BufferedImage.TYPE_INT_ARGB);
+      if(backBuffer != null) {
+        synchronized(backBuffer) {
+          Graphics g = storage.getGraphics();
+          g.drawImage(backBuffer, 0, 0, null);
+          g.dispose();
+        }
+      }
+      if(backBufferStorage != null) {
+        backBufferStorage.flush();
+      }
+      backBufferStorage = storage;
+    } else {
+      // The storage already contains the back buffer: clear what was painted beyond it for previous sizes.
+      int oldWidth = backBuffer == null? 0: backBuffer.getWidth();
+      int oldHeight = backBuffer == null? 0: backBuffer.getHeight();
+      Graphics2D g = backBufferStorage.createGraphics();
+      g.setComposite(AlphaComposite.Clear);
+      if(width > oldWidth) {
+        g.fillRect(oldWidth, 0, width - oldWidth, height);
+      }
+      if(height > oldHeight) {
+        g.fillRect(0, oldHeight, Math.min(width, oldWidth), height - oldHeight);
+      }
+      g.dispose();
+    }
+    return backBufferStorage.getSubimage(0, 0, width, height);
+  }
+
   public boolean hasBackBuffer() {
     synchronized(backBufferLock) {
       return backBuffer != null;
@@ -117,6 +167,10 @@ class BackBufferManager {
         backBuffer.flush();
       }
       backBuffer = null;
+      if(backBufferStorage != null) {
+        backBufferStorage.flush();
+      }
+      backBufferStorage = null;
     }
   }
 
@@ -68,6 +68,49 @@ public enum NSSystemProperty {
 
   WEBSERVER_ACTIVATEOLDRESOURCEMETHOD("nativeswing.webserver.activateOldResourceMethod", Type.READ_WRITE),
 
+  /**
+   * nativeswing.webserver.keepAliveTimeout
+   * = &lt;integer&gt; (default: 5000)<br/>
+   * Set the time in milliseconds that the web server keeps an idle connection
+   * open, waiting for another request from the browser.
+   */
+  WEBSERVER_KEEPALIVETIMEOUT("nativeswing.webserver.keepAliveTimeout", Type.READ_WRITE),
+
+  /**
+   * nativeswing.webserver.engine
+   * = thread/nio (default: thread)<br/>
+   * Set how the web server handles its connections: with a thread per
+   * connection, or with a single selector thread and a small pool of workers,
+   * which scales better when many resources are loaded at the same time.
+   */
+  WEBSERVER_ENGINE("nativeswing.webserver.engine", Type.READ_WRITE),
+
+  /**
+   * nativeswing.webserver.classpathCache.size
+   * = &lt;long&gt; (default: 16777216)<br/>
+   * Set the number of bytes of the classpath resources that the web servers
+   * keep in memory, or 0 to disable the cache.
+   */
+  WEBSERVER_CLASSPATHCACHE_SIZE("nativeswing.webserver.classpathCache.size", Type.READ_WRITE),
+
+  /**
+   * nativeswing.webserver.classpathMaxAge
+   * = &lt;integer&gt; (default: 3600)<br/>
+   * Set the number of seconds during which the browser can use the classpath
+   * resources it cached without checking whether they changed.
+   */
+  WEBSERVER_CLASSPATHMAXAGE("nativeswing.webserver.classpathMaxAge", Type.READ_WRITE),
+
+  /**
+   * nativeswing.webserver.mappedFileCache.size
+   * = &lt;long&gt; (default: 0)<br/>
+   * Set the number of bytes of the local files that the web servers keep mapped
+   * in memory when they are requested several times, or 0 to disable the cache.
+   * A mapped file is only released when it is garbage collected, and until then
+   * some systems do not allow to delete it.
+   */
+  WEBSERVER_MAPPEDFILECACHE_SIZE("nativeswing.webserver.mappedFileCache.size", Type.READ_WRITE),
+
 
   /**
    * nativeswing.components.debug.printOptions
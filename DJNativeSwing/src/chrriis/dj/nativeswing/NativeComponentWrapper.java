@@ -84,6 +84,16 @@ public class NativeComponentWrapper {
   protected void paintNativeComponent(BufferedImage image, Rectangle[] rectangles) {
   }
 
+  /**
+   * Paint the native component including its native peer in an image that is maintained across calls, in the areas that are specified. This method can be called from a non-UI thread.<br/>
+   * When the image is the same as in the previous call, it still contains what was painted so far, so implementations may skip the areas that did not change. By default, this method simply calls paintNativeComponent().
+   * @param image the image to paint to.
+   * @param rectangles the area in which the component should be painted.
+   */
+  protected void paintNativeComponentIncrementally(BufferedImage image, Rectangle[] rectangles) {
+    paintNativeComponent(image, rectangles);
+  }
+
   static interface NativeComponentHolder {}
 
   private Reference<NativeComponentProxy> nativeComponentProxy;
@@ -0,0 +1,303 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLConnection;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import chrriis.dj.nativeswing.NSSystemProperty;
+
+/**
+ * A cache of the classpath resources that the web servers send, so that a page that loads many resources from a jar does not inflate them again each time it is loaded.<br/>
+ * The cache is shared by all the web servers. It keeps the most recently used resources up to a total size, and also remembers which class loaders do not have a resource.
+ * @author Christopher Deckers
+ */
+public class ClasspathResourceCache {
+
+  /**
+   * A resource that is in the cache.
+   */
+  static class CachedResource {
+
+    private byte[] bytes;
+    private long lastModified;
+    private String eTag;
+
+    CachedResource(byte[] bytes, long lastModified) {
+      this.bytes = bytes;
+      this.lastModified = lastModified;
+    }
+
+    /**
+     * Get the entity tag, which is computed from the bytes so that it only changes when the content changes.
+     */
+    public synchronized String getETag() {
+      if(eTag == null) {
+        try {
+          byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+          StringBuilder sb = new StringBuilder("\"");
+          for(byte b: digest) {
+            sb.append(Integer.toHexString((b & 0xFF) | 0x100).substring(1));
+          }
+          eTag = sb.append('"').toString();
+        } catch(Exception e) {
+          eTag = "\"" + Integer.toHexString(Arrays.hashCode(bytes)) + "-" + Integer.toHexString(bytes.length) + "\"";
+        }
+      }
+      return eTag;
+    }
+
+    public byte[] getBytes() {
+      return bytes;
+    }
+
+    /**
+     * @return the time the resource was last modified, or 0 if it is not known.
+     */
+    public long getLastModified() {
+      return lastModified;
+    }
+
+  }
+
+  private static final CachedResource MISSING_RESOURCE = new CachedResource(new byte[0], 0);
+
+  /**
+   * The resource that is returned when a resource exists but is not cached, because it is too big, its size is not known or the cache is disabled. Such a resource has to be streamed from its class loader.
+   */
+  static final CachedResource UNCACHEABLE_RESOURCE = new CachedResource(new byte[0], 0);
+
+  /**
+   * The reference to the class loader of a key that is in the cache, which is queued when the class loader is garbage collected so that the key can be removed.
+   */
+  private static class ClassLoaderReference extends WeakReference<ClassLoader> {
+
+    private CacheKey cacheKey;
+
+    public ClassLoaderReference(ClassLoader classLoader, CacheKey cacheKey, ReferenceQueue<ClassLoader> referenceQueue) {
+      super(classLoader, referenceQueue);
+      this.cacheKey = cacheKey;
+    }
+
+  }
+
+  private static class CacheKey {
+
+    private WeakReference<ClassLoader> classLoaderReference;
+    private String resourcePath;
+    private int hashCode;
+
+    /**
+     * @param referenceQueue the queue of the key when it is put in the cache, or null for a key that is only used for a lookup.
+     */
+    public CacheKey(ClassLoader classLoader, String resourcePath, ReferenceQueue<ClassLoader> referenceQueue) {
+      if(classLoader != null) {
+        classLoaderReference = referenceQueue == null? new WeakReference<ClassLoader>(classLoader): new ClassLoaderReference(classLoader, this, referenceQueue);
+      }
+      this.resourcePath = resourcePath;
+      hashCode = System.identityHashCode(classLoader) * 31 + resourcePath.hashCode();
+    }
+
+    private ClassLoader getClassLoader() {
+      return classLoaderReference == null? null: classLoaderReference.get();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if(!(o instanceof CacheKey)) {
+        return false;
+      }
+      CacheKey key = (CacheKey)o;
+      if(key == this) {
+        return true;
+      }
+      return resourcePath.equals(key.resourcePath) && (classLoaderReference == null) == (key.classLoaderReference == null) && getClassLoader() == key.getClassLoader();
+    }
+
+  }
+
+  private ClasspathResourceCache() {}
+
+  private static Map<CacheKey, CachedResource> cacheMap = new LinkedHashMap<CacheKey, CachedResource>(16, 0.75f, true);
+  private static ReferenceQueue<ClassLoader> referenceQueue = new ReferenceQueue<ClassLoader>();
+  private static long size;
+  private static long hitCount;
+  private static long missCount;
+  private static long evictionCount;
+
+  private static long getMaxSize() {
+    String maxSize = NSSystemProperty.WEBSERVER_CLASSPATHCACHE_SIZE.get();
+    if(maxSize != null) {
+      try {
+        return Long.parseLong(maxSize);
+      } catch(Exception e) {
+        e.printStackTrace();
+      }
+    }
+    return 16 * 1024 * 1024;
+  }
+
+  /**
+   * Get a resource of the class loaders, in order, and then of the web server's own class loader, from the cache if possible.
+   * @param classLoaders the class loaders, which are not prevented from being garbage collected by the cache.
+   * @param resourcePath the path of the resource, without the leading slash.
+   * @return the resource, UNCACHEABLE_RESOURCE if it has to be streamed from its class loader, or null if it does not exist.
+   */
+  static CachedResource getResource(Iterable<ClassLoader> classLoaders, String resourcePath) {
+    if(getMaxSize() <= 0) {
+      // The caller streams the resource, which tells whether it exists.
+      return UNCACHEABLE_RESOURCE;
+    }
+    for(ClassLoader classLoader: classLoaders) {
+      CachedResource cachedResource = getResource(classLoader, resourcePath);
+      if(cachedResource != null) {
+        return cachedResource;
+      }
+    }
+    return getResource((ClassLoader)null, resourcePath);
+  }
+
+  private static CachedResource getResource(ClassLoader classLoader, String resourcePath) {
+    long maxSize = getMaxSize();
+    CacheKey key = new CacheKey(classLoader, resourcePath, null);
+    synchronized(ClasspathResourceCache.class) {
+      CachedResource cachedResource = cacheMap.get(key);
+      if(cachedResource != null) {
+        hitCount++;
+        return cachedResource == MISSING_RESOURCE? null: cachedResource;
+      }
+      missCount++;
+    }
+    // The resource is loaded without holding the lock. Two threads may load the same resource, in which case the last one stays in the cache.
+    CachedResource cachedResource;
+    try {
+      cachedResource = loadResource(classLoader, resourcePath, maxSize);
+    } catch(Exception e) {
+      e.printStackTrace();
+      // Not cached: the error may not happen again.
+      return null;
+    }
+    put(new CacheKey(classLoader, resourcePath, referenceQueue), cachedResource == null? MISSING_RESOURCE: cachedResource, maxSize);
+    return cachedResource;
+  }
+
+  private static CachedResource loadResource(ClassLoader classLoader, String resourcePath, long maxSize) throws IOException {
+    URL url = classLoader == null? Utils.getResourceWithinJavaModules(WebServer.class, '/' + resourcePath): classLoader.getResource(resourcePath);
+    if(url == null) {
+      return null;
+    }
+    URLConnection connection = url.openConnection();
+    int length = connection.getContentLength();
+    InputStream in = connection.getInputStream();
+    if(length < 0 || length > maxSize / 4) {
+      // Some connections, like the ones of files, open their stream to get the length.
+      in.close();
+      return UNCACHEABLE_RESOURCE;
+    }
+    long lastModified = connection.getLastModified();
+    try {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream(length);
+      byte[] bytes = new byte[8192];
+      for(int n; (n=in.read(bytes)) != -1; baos.write(bytes, 0, n)) {
+      }
+      return new CachedResource(baos.toByteArray(), lastModified);
+    } finally {
+      in.close();
+    }
+  }
+
+  private static synchronized void put(CacheKey key, CachedResource cachedResource, long maxSize) {
+    long resourceSize = getSize(key, cachedResource);
+    if(resourceSize > maxSize / 4) {
+      // A big resource would evict many small ones.
+      return;
+    }
+    CachedResource previousResource = cacheMap.put(key, cachedResource);
+    if(previousResource != null) {
+      size -= getSize(key, previousResource);
+    }
+    size += resourceSize;
+    for(Iterator<Map.Entry<CacheKey, CachedResource>> it = cacheMap.entrySet().iterator(); it.hasNext() && size > maxSize; ) {
+      Map.Entry<CacheKey, CachedResource> entry = it.next();
+      it.remove();
+      size -= getSize(entry.getKey(), entry.getValue());
+      evictionCount++;
+    }
+    // The entries of class loaders that were garbage collected cannot be used anymore.
+    for(Reference<? extends ClassLoader> reference; (reference = referenceQueue.poll()) != null; ) {
+      CacheKey collectedKey = ((ClassLoaderReference)reference).cacheKey;
+      CachedResource collectedResource = cacheMap.remove(collectedKey);
+      if(collectedResource != null) {
+        size -= getSize(collectedKey, collectedResource);
+        evictionCount++;
+      }
+    }
+  }
+
+  private static long getSize(CacheKey key, CachedResource cachedResource) {
+    // The path and the entry have a cost too, which matters for the resources that are missing.
+    return cachedResource.getBytes().length + key.resourcePath.length() * 2 + 64;
+  }
+
+  /**
+   * Remove all the resources from the cache.
+   */
+  public static synchronized void clear() {
+    cacheMap.clear();
+    size = 0;
+  }
+
+  /**
+   * Get the number of times a resource was found in the cache, including the resources that are known to be missing.
+   * @return the number of hits.
+   */
+  public static synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Get the number of times a resource had to be loaded.
+   * @return the number of misses.
+   */
+  public static synchronized long getMissCount() {
+    return missCount;
+  }
+
+  /**
+   * Get the number of resources that were removed from the cache to make room for others.
+   * @return the number of evictions.
+   */
+  public static synchronized long getEvictionCount() {
+    return evictionCount;
+  }
+
+  /**
+   * Get the approximate number of bytes that the cache holds.
+   * @return the size of the cache.
+   */
+  public static synchronized long getSize() {
+    return size;
+  }
+
+}
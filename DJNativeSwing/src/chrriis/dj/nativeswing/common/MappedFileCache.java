@@ -0,0 +1,141 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.common;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import chrriis.dj.nativeswing.NSSystemProperty;
+
+/**
+ * A cache of the local files that the web servers map in memory when they are requested several times, so that sending them again does not need to open and read them.<br/>
+ * The cache is disabled by default: a mapped file is only released when its mapping is garbage collected, and until then it cannot be deleted on some systems.
+ * @author Christopher Deckers
+ */
+class MappedFileCache {
+
+  /**
+   * The number of times a file has to be requested before it is mapped.
+   */
+  private static final int MIN_REQUEST_COUNT = 2;
+  /**
+   * The number of files whose requests are counted.
+   */
+  private static final int MAX_ENTRY_COUNT = 256;
+
+  private static class CacheEntry {
+
+    private long length;
+    private long lastModified;
+    private int requestCount;
+    private MappedByteBuffer buffer;
+
+    public CacheEntry(long length, long lastModified) {
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+  }
+
+  private MappedFileCache() {}
+
+  private static Map<File, CacheEntry> cacheMap = new LinkedHashMap<File, CacheEntry>(16, 0.75f, true);
+  private static long size;
+
+  private static long getMaxSize() {
+    String maxSize = NSSystemProperty.WEBSERVER_MAPPEDFILECACHE_SIZE.get();
+    if(maxSize != null) {
+      try {
+        return Long.parseLong(maxSize);
+      } catch(Exception e) {
+        e.printStackTrace();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get the content of a file from the cache, mapping the file if it is requested often enough.
+   * @param file the file.
+   * @param length the number of bytes of the file that are needed.
+   * @return a buffer of the content that the caller can consume, or null if the file is not mapped.
+   */
+  static ByteBuffer getBuffer(File file, long length) {
+    long maxSize = getMaxSize();
+    if(maxSize <= 0 || length <= 0 || length > maxSize / 4) {
+      return null;
+    }
+    long lastModified = file.lastModified();
+    synchronized(MappedFileCache.class) {
+      CacheEntry cacheEntry = cacheMap.get(file);
+      if(cacheEntry != null && (cacheEntry.length != length || cacheEntry.lastModified != lastModified)) {
+        // The file changed.
+        remove(file);
+        cacheEntry = null;
+      }
+      if(cacheEntry == null) {
+        cacheEntry = new CacheEntry(length, lastModified);
+        cacheMap.put(file, cacheEntry);
+        if(cacheMap.size() > MAX_ENTRY_COUNT) {
+          remove(cacheMap.keySet().iterator().next());
+        }
+      }
+      if(cacheEntry.buffer != null) {
+        return cacheEntry.buffer.duplicate();
+      }
+      if(++cacheEntry.requestCount < MIN_REQUEST_COUNT) {
+        return null;
+      }
+    }
+    // The file is mapped without holding the lock. Two threads may map the same file, in which case the last mapping stays in the cache.
+    MappedByteBuffer buffer;
+    try {
+      FileInputStream in = new FileInputStream(file);
+      try {
+        // The mapping stays valid when the channel is closed.
+        buffer = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+      } finally {
+        in.close();
+      }
+    } catch(Exception e) {
+      return null;
+    }
+    synchronized(MappedFileCache.class) {
+      CacheEntry cacheEntry = cacheMap.get(file);
+      if(cacheEntry != null && cacheEntry.length == length && cacheEntry.lastModified == lastModified) {
+        if(cacheEntry.buffer != null) {
+          size -= cacheEntry.length;
+        }
+        cacheEntry.buffer = buffer;
+        size += length;
+        for(Iterator<Map.Entry<File, CacheEntry>> it = cacheMap.entrySet().iterator(); it.hasNext() && size > maxSize; ) {
+          CacheEntry entry = it.next().getValue();
+          if(entry.buffer != null && entry != cacheEntry) {
+            it.remove();
+            size -= entry.length;
+          }
+        }
+      }
+    }
+    return buffer.duplicate();
+  }
+
+  private static void remove(File file) {
+    CacheEntry cacheEntry = cacheMap.remove(file);
+    if(cacheEntry != null && cacheEntry.buffer != null) {
+      size -= cacheEntry.length;
+    }
+  }
+
+}
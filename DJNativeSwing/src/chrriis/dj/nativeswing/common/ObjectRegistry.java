@@ -7,79 +7,149 @@
  */
 package chrriis.dj.nativeswing.common;
 
+import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-
-import chrriis.dj.nativeswing.NSSystemProperty;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
- * A convenient class to register objects to an ID.
+ * A convenient class to register objects to an ID.<br/>
+ * Lookups do not lock: the IDs are spread over segments whose hash chains are immutable, and only modifications lock the segment they affect. Objects are weakly referenced, and the entries of collected objects are removed when the registry is next modified.
  * @author Christopher Deckers
  */
 public class ObjectRegistry {
 
-  private static Thread cleanUpThread;
-  private static Set<ObjectRegistry> registrySet = new HashSet<ObjectRegistry>();
+  private static final int SEGMENT_SHIFT = 28;
+  private static final int INITIAL_SEGMENT_CAPACITY = 8;
+
+  private static class InstanceReference extends WeakReference<Object> {
+
+    private final int instanceID;
+
+    public InstanceReference(Object o, int instanceID, ReferenceQueue<Object> referenceQueue) {
+      super(o, referenceQueue);
+      this.instanceID = instanceID;
+    }
+
+  }
+
+  private static class Entry {
+
+    private final int instanceID;
+    private final InstanceReference reference;
+    private final Entry next;
+
+    public Entry(int instanceID, InstanceReference reference, Entry next) {
+      this.instanceID = instanceID;
+      this.reference = reference;
+      this.next = next;
+    }
+
+  }
 
-  private static int nextThreadNumber;
+  private static class Segment {
 
-  private static void startThread(ObjectRegistry objectRegistry) {
-    synchronized (registrySet) {
-      registrySet.add(objectRegistry);
-      if(cleanUpThread != null) {
+    private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<Entry>(INITIAL_SEGMENT_CAPACITY);
+    private int count;
+
+    public Entry getEntry(int instanceID, int hash) {
+      AtomicReferenceArray<Entry> table = this.table;
+      for(Entry entry = table.get(hash & (table.length() - 1)); entry != null; entry = entry.next) {
+        if(entry.instanceID == instanceID) {
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Put the reference, replacing any existing entry with the same ID, or only if there is no such entry.
+     * @return true if the reference was put.
+     */
+    public synchronized boolean put(int instanceID, int hash, InstanceReference reference, boolean isOnlyIfAbsent) {
+      Entry entry = getEntry(instanceID, hash);
+      if(entry != null) {
+        if(isOnlyIfAbsent) {
+          return false;
+        }
+        remove(instanceID, hash, null);
+      }
+      AtomicReferenceArray<Entry> table = this.table;
+      if(count >= table.length() * 3 / 4) {
+        table = rehash(table);
+      }
+      int index = hash & (table.length() - 1);
+      table.set(index, new Entry(instanceID, reference, table.get(index)));
+      count++;
+      return true;
+    }
+
+    /**
+     * Remove the entry with the given ID.
+     * @param expectedReference the reference that the entry must have to be removed, or null to remove the entry whatever its reference.
+     */
+    public synchronized void remove(int instanceID, int hash, InstanceReference expectedReference) {
+      AtomicReferenceArray<Entry> table = this.table;
+      int index = hash & (table.length() - 1);
+      Entry first = table.get(index);
+      Entry entry = first;
+      while(entry != null && entry.instanceID != instanceID) {
+        entry = entry.next;
+      }
+      if(entry == null || expectedReference != null && entry.reference != expectedReference) {
         return;
       }
-      cleanUpThread = new Thread("Registry cleanup thread-" + nextThreadNumber++) {
-        @Override
-        public void run() {
-          while(true) {
-            try {
-              sleep(1000);
-            } catch(Exception e) {
-            }
-            ObjectRegistry[] registries;
-            synchronized (registrySet) {
-              registries = registrySet.toArray(new ObjectRegistry[0]);
-            }
-            for(ObjectRegistry registry: registries) {
-              synchronized(registry) {
-                for(Integer instanceID: registry.instanceIDToObjectReferenceMap.keySet().toArray(new Integer[0])) {
-                  if(registry.instanceIDToObjectReferenceMap.get(instanceID).get() == null) {
-                    registry.instanceIDToObjectReferenceMap.remove(instanceID);
-                  }
-                }
-                if(registry.instanceIDToObjectReferenceMap.isEmpty()) {
-                  synchronized (registrySet) {
-                    registrySet.remove(registry);
-                  }
-                }
-              }
-            }
-            synchronized (registrySet) {
-              if(registrySet.isEmpty()) {
-                cleanUpThread = null;
-                return;
-              }
-            }
-          }
+      // Chains are immutable for concurrent readers, so the entries before the removed one are copied.
+      Entry newFirst = entry.next;
+      for(Entry e = first; e != entry; e = e.next) {
+        newFirst = new Entry(e.instanceID, e.reference, newFirst);
+      }
+      table.set(index, newFirst);
+      count--;
+    }
+
+    private AtomicReferenceArray<Entry> rehash(AtomicReferenceArray<Entry> oldTable) {
+      AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<Entry>(oldTable.length() * 2);
+      int mask = newTable.length() - 1;
+      for(int i=oldTable.length()-1; i>=0; i--) {
+        for(Entry entry = oldTable.get(i); entry != null; entry = entry.next) {
+          int index = getHash(entry.instanceID) & mask;
+          newTable.set(index, new Entry(entry.instanceID, entry.reference, newTable.get(index)));
         }
-      };
-      boolean isApplet = "applet".equals(NSSystemProperty.DEPLOYMENT_TYPE.get());
-      cleanUpThread.setDaemon(!isApplet);
-      cleanUpThread.start();
+      }
+      table = newTable;
+      return newTable;
     }
+
+  }
+
+  private static int getHash(int instanceID) {
+    // IDs are mostly sequential: the multiplication spreads them over the segments (high bits) and the buckets (low bits).
+    return instanceID * 0x9E3779B9;
   }
 
-  private int nextInstanceID = 1;
-  private Map<Integer, WeakReference<Object>> instanceIDToObjectReferenceMap = new HashMap<Integer, WeakReference<Object>>();
+  private final Segment[] segments = new Segment[1 << (32 - SEGMENT_SHIFT)];
+  private final ReferenceQueue<Object> referenceQueue = new ReferenceQueue<Object>();
+  private final AtomicInteger nextInstanceID = new AtomicInteger(1);
 
   /**
    * Construct an object registry.
    */
   public ObjectRegistry() {
+    for(int i=0; i<segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  private Segment getSegment(int hash) {
+    return segments[hash >>> SEGMENT_SHIFT];
+  }
+
+  private void removeCollectedEntries() {
+    for(InstanceReference reference; (reference = (InstanceReference)referenceQueue.poll()) != null; ) {
+      int hash = getHash(reference.instanceID);
+      getSegment(hash).remove(reference.instanceID, hash, reference);
+    }
   }
 
   /**
@@ -88,24 +158,19 @@ public class ObjectRegistry {
    * @return an unused instance ID that is strictly greater than 0.
    */
   public int add(Object o) {
-    boolean isStartingThread = false;
-    int instanceID;
-    synchronized (this) {
-      while(true) {
-        instanceID = nextInstanceID++;
-        if(!instanceIDToObjectReferenceMap.containsKey(instanceID)) {
-          if(o != null) {
-            instanceIDToObjectReferenceMap.put(instanceID, new WeakReference<Object>(o));
-            isStartingThread = true;
-          }
-          break;
+    removeCollectedEntries();
+    while(true) {
+      int instanceID = nextInstanceID.getAndIncrement();
+      int hash = getHash(instanceID);
+      Segment segment = getSegment(hash);
+      if(o == null) {
+        if(segment.getEntry(instanceID, hash) == null) {
+          return instanceID;
         }
+      } else if(segment.put(instanceID, hash, new InstanceReference(o, instanceID, referenceQueue), true)) {
+        return instanceID;
       }
     }
-    if(isStartingThread) {
-      startThread(this);
-    }
-    return instanceID;
   }
 
   /**
@@ -114,28 +179,32 @@ public class ObjectRegistry {
    * @param instanceID the ID to associate the object to.
    */
   public void add(Object o, int instanceID) {
-    synchronized (this) {
+    removeCollectedEntries();
+    int hash = getHash(instanceID);
+    Segment segment = getSegment(hash);
+    synchronized(segment) {
       Object o2 = get(instanceID);
       if(o2 != null && o2 != o) {
         throw new IllegalStateException("An object is already registered with the id \"" + instanceID + "\" for object: " + o);
       }
-      instanceIDToObjectReferenceMap.put(instanceID, new WeakReference<Object>(o));
+      segment.put(instanceID, hash, new InstanceReference(o, instanceID, referenceQueue), false);
     }
-    startThread(this);
   }
 
   /**
    * Get an object using its ID.
    * @return the object, or null.
    */
-  public synchronized Object get(int instanceID) {
-    WeakReference<Object> weakReference = instanceIDToObjectReferenceMap.get(instanceID);
-    if(weakReference == null) {
+  public Object get(int instanceID) {
+    int hash = getHash(instanceID);
+    Segment segment = getSegment(hash);
+    Entry entry = segment.getEntry(instanceID, hash);
+    if(entry == null) {
       return null;
     }
-    Object o = weakReference.get();
+    Object o = entry.reference.get();
     if(o == null) {
-      instanceIDToObjectReferenceMap.remove(instanceID);
+      segment.remove(instanceID, hash, entry.reference);
     }
     return o;
   }
@@ -144,21 +213,38 @@ public class ObjectRegistry {
    * Remove an object from the registry using its instance ID.
    * @param instanceID the ID of the object to remove.
    */
-  public synchronized void remove(int instanceID) {
-    instanceIDToObjectReferenceMap.remove(instanceID);
+  public void remove(int instanceID) {
+    removeCollectedEntries();
+    int hash = getHash(instanceID);
+    getSegment(hash).remove(instanceID, hash, null);
   }
 
   /**
    * Get all the instance IDs that are used in this registry.
    * @return the instance IDs.
    */
-  public synchronized int[] getInstanceIDs() {
-    Object[] instanceIDObjects = instanceIDToObjectReferenceMap.keySet().toArray();
-    int[] instanceIDs = new int[instanceIDObjects.length];
-    for(int i=0; i<instanceIDObjects.length; i++) {
-      instanceIDs[i] = (Integer)instanceIDObjects[i];
+  public int[] getInstanceIDs() {
+    removeCollectedEntries();
+    int[] instanceIDs = new int[16];
+    int count = 0;
+    for(Segment segment: segments) {
+      AtomicReferenceArray<Entry> table = segment.table;
+      for(int i=table.length()-1; i>=0; i--) {
+        for(Entry entry = table.get(i); entry != null; entry = entry.next) {
+          if(entry.reference.get() != null) {
+            if(count == instanceIDs.length) {
+              int[] newInstanceIDs = new int[count * 2];
+              System.arraycopy(instanceIDs, 0, newInstanceIDs, 0, count);
+              instanceIDs = newInstanceIDs;
+            }
+            instanceIDs[count++] = entry.instanceID;
+          }
+        }
+      }
     }
-    return instanceIDs;
+    int[] result = new int[count];
+    System.arraycopy(instanceIDs, 0, result, 0, count);
+    return result;
   }
 
   private static ObjectRegistry registry = new ObjectRegistry();
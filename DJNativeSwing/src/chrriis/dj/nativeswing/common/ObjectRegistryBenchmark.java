@@ -0,0 +1,183 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.common;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark of concurrent accesses to an object registry, which compares ObjectRegistry with the former registry, a synchronized map of weak references.<br/>
+ * Each thread repeatedly registers an object, looks it up along with objects that stay registered, like the controls of the components, and removes it. The lookups are checked to return the registered objects.<br/>
+ * Usage: ObjectRegistryBenchmark [duration per measure in ms]
+ * @author Christopher Deckers
+ */
+class ObjectRegistryBenchmark {
+
+  private static final int[] THREAD_COUNTS = new int[] {1, 4, 16};
+
+  /**
+   * The number of objects that stay registered during a measure.
+   */
+  private static final int PERMANENT_OBJECT_COUNT = 256;
+
+  /**
+   * The number of lookups of permanent objects for each registration.
+   */
+  private static final int LOOKUP_COUNT = 8;
+
+  private static interface Registry {
+    public int add(Object o);
+    public Object get(int instanceID);
+    public void remove(int instanceID);
+  }
+
+  private static class CurrentRegistry implements Registry {
+
+    private final ObjectRegistry objectRegistry = new ObjectRegistry();
+
+    public int add(Object o) {
+      return objectRegistry.add(o);
+    }
+
+    public Object get(int instanceID) {
+      return objectRegistry.get(instanceID);
+    }
+
+    public void remove(int instanceID) {
+      objectRegistry.remove(instanceID);
+    }
+
+  }
+
+  /**
+   * The former registry, without its cleanup thread, which only added a full scan every second.
+   */
+  private static class SynchronizedMapRegistry implements Registry {
+
+    private int nextInstanceID = 1;
+    private Map<Integer, WeakReference<Object>> instanceIDToObjectReferenceMap = new HashMap<Integer, WeakReference<Object>>();
+
+    public synchronized int add(Object o) {
+      while(true) {
+        int instanceID = nextInstanceID++;
+        if(!instanceIDToObjectReferenceMap.containsKey(instanceID)) {
+          if(o != null) {
+            instanceIDToObjectReferenceMap.put(instanceID, new WeakReference<Object>(o));
+          }
+          return instanceID;
+        }
+      }
+    }
+
+    public synchronized Object get(int instanceID) {
+      WeakReference<Object> weakReference = instanceIDToObjectReferenceMap.get(instanceID);
+      if(weakReference == null) {
+        return null;
+      }
+      Object o = weakReference.get();
+      if(o == null) {
+        instanceIDToObjectReferenceMap.remove(instanceID);
+      }
+      return o;
+    }
+
+    public synchronized void remove(int instanceID) {
+      instanceIDToObjectReferenceMap.remove(instanceID);
+    }
+
+  }
+
+  /**
+   * @return the number of operations per second.
+   */
+  private static long measure(final Registry registry, int threadCount, final long duration, final AtomicLong errorCount) throws InterruptedException {
+    final Object[] permanentObjects = new Object[PERMANENT_OBJECT_COUNT];
+    final int[] permanentInstanceIDs = new int[PERMANENT_OBJECT_COUNT];
+    for(int i=0; i<PERMANENT_OBJECT_COUNT; i++) {
+      permanentObjects[i] = new Object();
+      permanentInstanceIDs[i] = registry.add(permanentObjects[i]);
+    }
+    final AtomicLong operationCount = new AtomicLong();
+    final CountDownLatch startLatch = new CountDownLatch(1);
+    final long[] endTime = new long[1];
+    List<Thread> threadList = new ArrayList<Thread>();
+    for(int i=0; i<threadCount; i++) {
+      final int threadIndex = i;
+      Thread thread = new Thread("Registry Benchmark " + i) {
+        @Override
+        public void run() {
+          try {
+            startLatch.await();
+          } catch(InterruptedException e) {
+            return;
+          }
+          long count = 0;
+          int index = threadIndex * 31;
+          while(true) {
+            // Check the time every few iterations so that it does not weigh on the measure.
+            if((count & 0xFF) == 0 && System.nanoTime() >= endTime[0]) {
+              break;
+            }
+            Object o = new Object();
+            int instanceID = registry.add(o);
+            for(int j=0; j<LOOKUP_COUNT; j++) {
+              index = (index + 1) % PERMANENT_OBJECT_COUNT;
+              if(registry.get(permanentInstanceIDs[index]) != permanentObjects[index]) {
+                errorCount.incrementAndGet();
+              }
+            }
+            if(registry.get(instanceID) != o) {
+              errorCount.incrementAndGet();
+            }
+            registry.remove(instanceID);
+            if(registry.get(instanceID) != null) {
+              errorCount.incrementAndGet();
+            }
+            // An add, the lookups, and a remove with its check.
+            count += LOOKUP_COUNT + 4;
+          }
+          operationCount.addAndGet(count);
+        }
+      };
+      thread.start();
+      threadList.add(thread);
+    }
+    long startTime = System.nanoTime();
+    endTime[0] = startTime + duration * 1000000;
+    startLatch.countDown();
+    for(Thread thread: threadList) {
+      thread.join();
+    }
+    long actualDuration = System.nanoTime() - startTime;
+    return operationCount.get() * 1000000000 / actualDuration;
+  }
+
+  public static void main(String[] args) throws InterruptedException {
+    long duration = args.length > 0? Long.parseLong(args[0]): 2000;
+    AtomicLong errorCount = new AtomicLong();
+    System.out.println("Operations per second, over " + duration + " ms, with " + LOOKUP_COUNT + " lookups of " + PERMANENT_OBJECT_COUNT + " permanent objects per registration.");
+    System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+    // Warm up both registries so that the measures run compiled code.
+    measure(new SynchronizedMapRegistry(), 4, 1000, errorCount);
+    measure(new CurrentRegistry(), 4, 1000, errorCount);
+    System.out.println();
+    for(int threadCount: THREAD_COUNTS) {
+      long synchronizedMapRate = measure(new SynchronizedMapRegistry(), threadCount, duration, errorCount);
+      long currentRate = measure(new CurrentRegistry(), threadCount, duration, errorCount);
+      System.out.println(String.format("%2d thread(s): synchronized map: %,13d ops/s, ObjectRegistry: %,13d ops/s, speedup: %5.1fx", threadCount, synchronizedMapRate, currentRate, currentRate / (double)synchronizedMapRate));
+    }
+    System.out.println();
+    System.out.println(errorCount.get() == 0? "All the lookups returned the registered objects.": "FAILED: " + errorCount.get() + " lookups returned a wrong object.");
+  }
+
+}
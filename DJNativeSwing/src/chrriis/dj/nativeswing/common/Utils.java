@@ -13,6 +13,9 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.NetworkInterface;
@@ -29,6 +32,7 @@ import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import chrriis.dj.nativeswing.NSSystemProperty;
 
@@ -254,6 +258,112 @@ public class Utils {
     }
   }
 
+  /**
+   * Get a directory of the temporary directory that only the current user can access, creating it if needed.<br/>
+   * The files that the VMs of a user share through it cannot be read or replaced by other users. A directory that belongs to another user, or that other users can access, is never used.
+   * @param name the name of the directory, within the directory of the user.
+   * @return the directory.
+   * @throws IOException if the directory cannot be created or is not safe to use.
+   */
+  public static File getUserTempDirectory(String name) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for(char c: SystemProperty.USER_NAME.get().toCharArray()) {
+      sb.append(Character.isLetterOrDigit(c) || c == '.' || c == '-'? c: '_');
+    }
+    File userDir = new File(SystemProperty.JAVA_IO_TMPDIR.get(), ".djnativeswing-" + sb);
+    if(!userDir.isDirectory() && userDir.mkdirs()) {
+      setOwnerOnlyPermissions(userDir);
+    }
+    checkUserTempDirectory(userDir);
+    // The directory of the user is safe, so its content cannot have been created by another user.
+    File dir = new File(userDir, name);
+    if(!dir.mkdir() && !dir.isDirectory()) {
+      throw new IOException("Failed to create the directory: " + dir);
+    }
+    return dir;
+  }
+
+  private static boolean setOwnerOnlyPermissions(File file) {
+    boolean isSuccessful = file.setReadable(false, false);
+    isSuccessful &= file.setWritable(false, false);
+    isSuccessful &= file.setExecutable(false, false);
+    isSuccessful &= file.setReadable(true, true);
+    isSuccessful &= file.setWritable(true, true);
+    isSuccessful &= file.setExecutable(true, true);
+    return isSuccessful;
+  }
+
+  private static void checkUserTempDirectory(File dir) throws IOException {
+    if(!dir.isDirectory()) {
+      throw new IOException("Failed to create the directory: " + dir);
+    }
+    Method getOwnerMethod;
+    Method getPosixFilePermissionsMethod;
+    Object linkOptions;
+    try {
+      Class<?> filesClass = Class.forName("java.nio.file.Files");
+      Class<?> pathClass = Class.forName("java.nio.file.Path");
+      Class<?> linkOptionClass = Class.forName("java.nio.file.LinkOption");
+      linkOptions = Array.newInstance(linkOptionClass, 1);
+      Array.set(linkOptions, 0, linkOptionClass.getField("NOFOLLOW_LINKS").get(null));
+      getOwnerMethod = filesClass.getMethod("getOwner", pathClass, linkOptions.getClass());
+      getPosixFilePermissionsMethod = filesClass.getMethod("getPosixFilePermissions", pathClass, linkOptions.getClass());
+    } catch(ClassNotFoundException e) {
+      // Before Java 7, the owner cannot be read, but only the owner of a file can change its permissions.
+      if(!setOwnerOnlyPermissions(dir)) {
+        throw new IOException("The directory does not belong to the user: " + dir);
+      }
+      return;
+    } catch(Exception e) {
+      throw new IOException("Failed to check the owner of the directory: " + dir, e);
+    }
+    Object path;
+    Object owner;
+    Object userOwner;
+    try {
+      Method toPathMethod = File.class.getMethod("toPath");
+      path = toPathMethod.invoke(dir);
+      // A symbolic link has its own owner, which is not the one of the directory it points to.
+      owner = getOwnerMethod.invoke(null, path, linkOptions);
+      File file = File.createTempFile("owner", ".tmp", dir.getParentFile());
+      try {
+        userOwner = getOwnerMethod.invoke(null, toPathMethod.invoke(file), linkOptions);
+      } finally {
+        file.delete();
+      }
+    } catch(Exception e) {
+      throw new IOException("Failed to check the owner of the directory: " + dir, e);
+    }
+    if(!owner.equals(userOwner)) {
+      throw new IOException("The directory does not belong to the user: " + dir);
+    }
+    for(int i=0; ; i++) {
+      Set<?> permissionSet;
+      try {
+        permissionSet = (Set<?>)getPosixFilePermissionsMethod.invoke(null, path, linkOptions);
+      } catch(InvocationTargetException e) {
+        if(e.getCause() instanceof UnsupportedOperationException) {
+          // The system does not have POSIX permissions, like Windows where the temporary directory usually belongs to the user.
+          return;
+        }
+        throw new IOException("Failed to check the permissions of the directory: " + dir, e);
+      } catch(Exception e) {
+        throw new IOException("Failed to check the permissions of the directory: " + dir, e);
+      }
+      boolean isOwnerOnly = true;
+      for(Object permission: permissionSet) {
+        isOwnerOnly &= ((Enum<?>)permission).name().startsWith("OWNER_");
+      }
+      if(isOwnerOnly) {
+        return;
+      }
+      if(i > 0) {
+        throw new IOException("Other users can access the directory: " + dir);
+      }
+      setOwnerOnlyPermissions(dir);
+    }
+  }
+
   /**
    * Test the equality of 2 objects, with a check on nullity.
    * @param o1 the first object.
@@ -11,23 +11,44 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import chrriis.dj.nativeswing.NSSystemProperty;
 
@@ -165,6 +186,30 @@ public class WebServer {
       return System.currentTimeMillis();
     }
 
+    /**
+     * Get the entity tag that identifies this version of the content, which lets the browser cache the content and check later whether its copy is still valid.
+     * @return the entity tag including its quotes, or null if the content must not be cached, which is the default.
+     */
+    public String getETag() {
+      return null;
+    }
+
+    /**
+     * Get the number of seconds during which the browser can use its cached copy without checking that it is still valid. This only applies to content that has an entity tag.
+     * @return the number of seconds, 0 to always check, or -1 to let the browser decide, which is the default.
+     */
+    public int getMaxAge() {
+      return -1;
+    }
+
+    /**
+     * Get the local file that has the content, which lets the web server send the file without copying it through an input stream.
+     * @return the file, or null if the content is only available from the input stream, which is the default.
+     */
+    public File getFile() {
+      return null;
+    }
+
   }
 
   private static class WebServerConnectionThread extends Thread {
@@ -186,16 +231,91 @@ public class WebServer {
 
     private static final String LS = Utils.LINE_SEPARATOR;
 
-    static void writeHTTPHeaders(BufferedOutputStream out, int code, String contentType, long contentLength, long lastModified) {
+    private static String getReasonPhrase(int code) {
+      switch(code) {
+        case 304: return "Not Modified";
+        case 404: return "Not Found";
+        case 500: return "Internal Server Error";
+      }
+      return "OK";
+    }
+
+    private static DateFormat createHTTPDateFormat() {
+      DateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+      dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+      return dateFormat;
+    }
+
+    /**
+     * Indicate whether the copy that the browser has of a content is still valid, in which case the content does not have to be sent.
+     */
+    static boolean isNotModified(Map<String, String> headerMap, String eTag, long lastModified) {
+      String ifNoneMatch = headerMap.get("If-None-Match");
+      if(ifNoneMatch != null) {
+        // This condition has precedence over the date.
+        for(String value: ifNoneMatch.split(",")) {
+          value = value.trim();
+          if(value.startsWith("W/")) {
+            value = value.substring("W/".length());
+          }
+          if(value.equals("*") || value.equals(eTag)) {
+            return true;
+          }
+        }
+        return false;
+      }
+      String ifModifiedSince = headerMap.get("If-Modified-Since");
+      if(ifModifiedSince != null && lastModified > 0) {
+        try {
+          // Only seconds are sent to the browser.
+          return lastModified / 1000 <= createHTTPDateFormat().parse(ifModifiedSince).getTime() / 1000;
+        } catch(Exception e) {
+        }
+      }
+      return false;
+    }
+
+    static void writeHTTPHeaders(BufferedOutputStream out, ConnectionState connectionState, int code, String contentType, long contentLength, long lastModified, WebServerContent webServerContent) {
       StringBuilder sb = new StringBuilder();
-      sb.append("HTTP/1.0 " + code + " OK" + LS);
-      sb.append("Content-Type: " + contentType + LS);
+      sb.append((connectionState.isHTTP11? "HTTP/1.1 ": "HTTP/1.0 ") + code + " " + getReasonPhrase(code) + LS);
+      if(code != 304) {
+        sb.append("Content-Type: " + contentType + LS);
+      }
       sb.append("Server: WebServer/1.0" + LS);
       sb.append("Date: " + new Date() + LS);
 //      sb.append("Expires: " + new Date() + LS);
-//      sb.append("Last-modified: " + new Date(lastModified) + LS);
-      if(contentLength != -1) {
+      String eTag = webServerContent == null? null: webServerContent.getETag();
+      if(eTag != null) {
+        // The validators are only sent for the content that the browser can cache.
+        sb.append("ETag: " + eTag + LS);
+        if(lastModified > 0) {
+          sb.append("Last-Modified: " + createHTTPDateFormat().format(new Date(lastModified)) + LS);
+        }
+        int maxAge = webServerContent.getMaxAge();
+        if(maxAge > 0) {
+          sb.append("Cache-Control: max-age=" + maxAge + LS);
+        } else if(maxAge == 0) {
+          sb.append("Cache-Control: no-cache" + LS);
+        }
+      }
+      if(code == 304) {
+        // There is no content.
+      } else if(contentLength != -1) {
         sb.append("Content-Length: " + contentLength + LS);
+      } else if(connectionState.isKeepAlive) {
+        if(connectionState.isHTTP11) {
+          connectionState.isChunked = true;
+          sb.append("Transfer-Encoding: chunked" + LS);
+        } else {
+          // The end of the content can only be known by the client when the connection closes.
+          connectionState.isKeepAlive = false;
+        }
+      }
+      if(connectionState.isKeepAlive) {
+        sb.append("Connection: keep-alive" + LS);
+        sb.append("Keep-Alive: timeout=" + getKeepAliveTimeout() / 1000 + ", max=" + MAX_REQUEST_COUNT + LS);
+      } else {
+        sb.append("Connection: close" + LS);
       }
       sb.append(LS);
       try {
@@ -205,17 +325,95 @@ public class WebServer {
       }
     }
 
-    static void writeHTTPError(BufferedOutputStream out, int code, String message) {
-      writeHTTPHeaders(out, code, "text/html", message.length(), System.currentTimeMillis());
+    static void writeHTTPError(BufferedOutputStream out, ConnectionState connectionState, int code, String message) {
+      writeHTTPHeaders(out, connectionState, code, "text/html", message.length(), System.currentTimeMillis(), null);
       try {
         out.write(message.getBytes("UTF-8"));
-        out.flush();
-        out.close();
       } catch(IOException e) {
 //        e.printStackTrace();
       }
     }
 
+    /**
+     * The state of the request that is being processed, which decides whether the connection can be reused.
+     */
+    private static class ConnectionState {
+      boolean isHTTP11;
+      boolean isKeepAlive;
+      boolean isChunked;
+    }
+
+    /**
+     * The buffered output of a connection, which can also send a local file as efficiently as its engine allows.
+     */
+    static class ConnectionOutputStream extends BufferedOutputStream {
+      public ConnectionOutputStream(OutputStream out) {
+        super(out, 8192);
+      }
+      /**
+       * Write the first bytes of a file after the bytes that are buffered.
+       * @param length the number of bytes to write, which is the length that was announced to the client.
+       * @throws EOFException if the file became shorter.
+       */
+      public void writeFile(File file, long length) throws IOException {
+        flush();
+        // The buffer is bypassed as the bytes are written in big blocks.
+        byte[] bytes = new byte[64 * 1024];
+        ByteBuffer mappedBuffer = MappedFileCache.getBuffer(file, length);
+        if(mappedBuffer != null) {
+          while(mappedBuffer.hasRemaining()) {
+            int n = Math.min(bytes.length, mappedBuffer.remaining());
+            mappedBuffer.get(bytes, 0, n);
+            out.write(bytes, 0, n);
+          }
+          return;
+        }
+        InputStream in = new FileInputStream(file);
+        try {
+          for(long remaining = length; remaining > 0; ) {
+            int n = in.read(bytes, 0, (int)Math.min(bytes.length, remaining));
+            if(n == -1) {
+              throw new EOFException("The file became shorter while it was sent: " + file);
+            }
+            out.write(bytes, 0, n);
+            remaining -= n;
+          }
+        } finally {
+          in.close();
+        }
+      }
+    }
+
+    /**
+     * A stream that writes the content with the chunked transfer encoding, which lets a connection stay open when the length of the content is not known in advance.
+     */
+    private static class ChunkedOutputStream extends OutputStream {
+      private static final byte[] CRLF = new byte[] {'\r', '\n'};
+      private OutputStream out;
+      public ChunkedOutputStream(OutputStream out) {
+        this.out = out;
+      }
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+      }
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if(len == 0) {
+          return;
+        }
+        out.write(Integer.toHexString(len).getBytes("UTF-8"));
+        out.write(CRLF);
+        out.write(b, off, len);
+        out.write(CRLF);
+      }
+      public void finish() throws IOException {
+        out.write('0');
+        out.write(CRLF);
+        out.write(CRLF);
+      }
+    }
+
     private static class HTTPInputStream extends InputStream {
       static enum LineSeparator {
         CR,
@@ -268,21 +466,27 @@ public class WebServer {
           baos.write(lastByte);
           lastByte = -1;
         }
+        int b = -1;
         switch(lineSeparator) {
           case CR:
-            for(int b; (b=read()) != '\r' && b != -1; baos.write(b)) {
+            for(; (b=read()) != '\r' && b != -1; baos.write(b)) {
             }
             break;
           case LF:
-            for(int b; (b=read()) != '\n' && b != -1; baos.write(b)) {
+            for(; (b=read()) != '\n' && b != -1; baos.write(b)) {
             }
             break;
           case CRLF:
-            for(int b; (b=read()) != '\r' && b != -1; baos.write(b)) {
+            for(; (b=read()) != '\r' && b != -1; baos.write(b)) {
+            }
+            if(b != -1) {
+              read();
             }
-            read();
             break;
         }
+        if(b == -1 && baos.size() == 0) {
+          return null;
+        }
         return new String(baos.toByteArray(), "UTF-8");
       }
       @Override
@@ -302,181 +506,833 @@ public class WebServer {
         int n = inputStream.read();
         return n;
       }
+      @Override
+      public int available() throws IOException {
+        return inputStream.available();
+      }
+      public void readFully(byte[] b) throws IOException {
+        for(int offset = 0; offset < b.length; ) {
+          int n = inputStream.read(b, offset, b.length - offset);
+          if(n == -1) {
+            throw new EOFException();
+          }
+          offset += n;
+        }
+      }
+    }
+
+    /**
+     * The maximum number of requests that a connection can serve before it is closed.
+     */
+    private static final int MAX_REQUEST_COUNT = 100;
+    /**
+     * The number of connections above which connections are closed after their request instead of being kept alive.
+     */
+    private static final int MAX_KEEP_ALIVE_CONNECTION_COUNT = 32;
+    private static final int REQUEST_TIMEOUT = 10000;
+
+    private static AtomicInteger connectionCount = new AtomicInteger();
+
+    static int getKeepAliveTimeout() {
+      String keepAliveTimeout = NSSystemProperty.WEBSERVER_KEEPALIVETIMEOUT.get();
+      if(keepAliveTimeout != null) {
+        try {
+          return Integer.parseInt(keepAliveTimeout);
+        } catch(Exception e) {
+          e.printStackTrace();
+        }
+      }
+      return 5000;
     }
 
     @Override
     public void run() {
+      connectionCount.incrementAndGet();
       try {
+        // A response is written in several parts when it does not fit in the buffer: the last part must not wait for the acknowledgment of the previous one.
+        socket.setTcpNoDelay(true);
         HTTPInputStream in = new HTTPInputStream(new BufferedInputStream(socket.getInputStream()));
-        BufferedOutputStream out = new BufferedOutputStream(socket.getOutputStream());
+        ConnectionOutputStream out = new ConnectionOutputStream(socket.getOutputStream());
         try {
-          String request = in.readAsciiLine();
-          if(request == null || !(request.endsWith(" HTTP/1.0") || request.endsWith("HTTP/1.1"))) {
-            writeHTTPError(out, 500, "Invalid Method.");
-            return;
+          // Pipelined requests are already in the input buffer: they are processed in order and their responses are flushed together.
+          for(int requestCount=1; processRequest(in, out, requestCount); requestCount++) {
+            if(in.available() == 0) {
+              out.flush();
+            }
           }
-          boolean isPostMethod = false;
-          if(request.startsWith("POST ")) {
-            isPostMethod = true;
-          } else if(!request.startsWith("GET ")) {
-            writeHTTPError(out, 500, "Invalid Method.");
-            return;
+        } finally {
+          out.flush();
+          out.close();
+          in.close();
+          socket.close();
+        }
+      } catch(Exception e) {
+//        e.printStackTrace();
+      } finally {
+        connectionCount.decrementAndGet();
+      }
+    }
+
+    /**
+     * Process a request of the connection.
+     * @return true if the connection is kept alive for another request.
+     */
+    private boolean processRequest(HTTPInputStream in, ConnectionOutputStream out, int requestCount) throws Exception {
+      // An idle connection does not hold a permit, and is closed when it stays idle for too long.
+      socket.setSoTimeout(requestCount == 1? REQUEST_TIMEOUT: getKeepAliveTimeout());
+      String request = in.readAsciiLine();
+      // Some clients send an extra line separator after the data of a POST request.
+      while(request != null && request.length() == 0 && requestCount > 1) {
+        request = in.readAsciiLine();
+      }
+      if(request == null) {
+        return false;
+      }
+      socket.setSoTimeout(REQUEST_TIMEOUT);
+      try {
+        semaphore.acquire();
+      } catch(InterruptedException e) {
+      }
+      try {
+        ConnectionState connectionState = new ConnectionState();
+        boolean isKeepAliveAllowed = connectionCount.get() <= MAX_KEEP_ALIVE_CONNECTION_COUNT;
+        return processRequest(in, out, request, requestCount, isKeepAliveAllowed, connectionState) && connectionState.isKeepAlive;
+      } finally {
+        semaphore.release();
+      }
+    }
+
+    /**
+     * Process a request whose first line was read, which is shared by the connection engines.
+     * @param isKeepAliveAllowed whether the engine can keep the connection alive after this request.
+     * @return false if the request is invalid, in which case the connection has to be closed.
+     */
+    static boolean processRequest(HTTPInputStream in, ConnectionOutputStream out, String request, int requestCount, boolean isKeepAliveAllowed, ConnectionState connectionState) throws Exception {
+      connectionState.isHTTP11 = request.endsWith(" HTTP/1.1");
+      if(!(request.endsWith(" HTTP/1.0") || request.endsWith("HTTP/1.1"))) {
+        writeHTTPError(out, connectionState, 500, "Invalid Method.");
+        return false;
+      }
+      boolean isPostMethod = false;
+      if(request.startsWith("POST ")) {
+        isPostMethod = true;
+      } else if(!request.startsWith("GET ")) {
+        writeHTTPError(out, connectionState, 500, "Invalid Method.");
+        return false;
+      }
+      String resourcePath = request.substring((isPostMethod? "POST ": "GET ").length(), request.length() - " HTTP/1.0".length());
+      Map<String, String> headerMap = new HashMap<String, String>();
+      for(String header; (header = in.readAsciiLine()) != null && header.length() > 0; ) {
+        int index = header.indexOf(": ");
+        if(index > 0) {
+          headerMap.put(header.substring(0, index), header.substring(index + ": ".length()));
+        }
+      }
+      String connectionHeader = headerMap.get("Connection");
+      connectionHeader = connectionHeader == null? "": connectionHeader.toLowerCase(Locale.ENGLISH);
+      if(connectionState.isHTTP11) {
+        connectionState.isKeepAlive = !connectionHeader.contains("close");
+      } else {
+        connectionState.isKeepAlive = connectionHeader.contains("keep-alive");
+      }
+      if(requestCount >= MAX_REQUEST_COUNT || !isKeepAliveAllowed) {
+        connectionState.isKeepAlive = false;
+      }
+      HTTPRequest httpRequest = new HTTPRequest(resourcePath, headerMap);
+      httpRequest.setPostMethod(isPostMethod);
+      if(isPostMethod) {
+        HTTPData[] httpDataArray;
+        String contentType = headerMap.get("Content-Type");
+        String contentLengthString = headerMap.get("Content-Length");
+        int contentLength = contentLengthString == null? -1: Integer.parseInt(contentLengthString);
+        if(contentLength < 0) {
+          // The data goes up to the end of the stream.
+          connectionState.isKeepAlive = false;
+        }
+        if(contentType != null && contentType.startsWith("multipart/")) {
+          byte[] dataBytes;
+          if(contentLength > 0) {
+            dataBytes = new byte[contentLength];
+            in.readFully(dataBytes);
+          } else {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] bytes = new byte[1024];
+            for(int i; (i=in.read(bytes)) != -1; baos.write(bytes, 0, i)) {
+            }
+            dataBytes = baos.toByteArray();
           }
-          String resourcePath = request.substring((isPostMethod? "POST ": "GET ").length(), request.length() - " HTTP/1.0".length());
-          Map<String, String> headerMap = new HashMap<String, String>();
-          for(String header; (header = in.readAsciiLine()).length() > 0; ) {
-            int index = header.indexOf(": ");
-            if(index > 0) {
-              headerMap.put(header.substring(0, index), header.substring(index + ": ".length()));
-            }
-          }
-          HTTPRequest httpRequest = new HTTPRequest(resourcePath, headerMap);
-          httpRequest.setPostMethod(isPostMethod);
-          if(isPostMethod) {
-            HTTPData[] httpDataArray;
-            String contentType = headerMap.get("Content-Type");
-            String contentLengthString = headerMap.get("Content-Length");
-            int contentLength = contentLengthString == null? -1: Integer.parseInt(contentLengthString);
-            if(contentType != null && contentType.startsWith("multipart/")) {
-              byte[] dataBytes;
-              if(contentLength > 0) {
-                dataBytes = new byte[contentLength];
-                in.read(dataBytes);
-              } else {
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                byte[] bytes = new byte[1024];
-                for(int i; (i=in.read(bytes)) != -1; baos.write(bytes, 0, i)) {
-                }
-                dataBytes = baos.toByteArray();
-              }
-              String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
-              byte[] boundaryBytes = boundary.getBytes("UTF-8");
-              List<Integer> indexList = new ArrayList<Integer>();
-              for(int i=0; i<dataBytes.length - boundaryBytes.length; i++) {
-                boolean isFound = true;
-                for(int j=0; j<boundaryBytes.length; j++) {
-                  if(dataBytes[i + j] != boundaryBytes[j]) {
-                    isFound = false;
-                    break;
-                  }
-                }
-                if(isFound) {
-                  indexList.add(i);
-                  i += boundaryBytes.length;
-                }
-              }
-              httpDataArray = new HTTPData[indexList.size() - 1];
-              for(int i=0; i<httpDataArray.length; i++) {
-                HTTPData httpData = new HTTPData();
-                httpDataArray[i] = httpData;
-                int start = indexList.get(i);
-                ByteArrayInputStream bais = new ByteArrayInputStream(dataBytes, start, indexList.get(i + 1) - start - in.getLineSeparator().length());
-                HTTPInputStream din = new HTTPInputStream(bais);
-                din.readAsciiLine();
-                Map<String, String> dataHeaderMap = httpData.getHeaderMap();
-                for(String header; (header = din.readAsciiLine()).length() > 0; ) {
-                  String key = header.substring(header.indexOf(": "));
-                  String value = header.substring(key.length() + ": ".length());
-                  dataHeaderMap.put(key, value);
-                }
-                ByteArrayOutputStream aos = new ByteArrayOutputStream();
-                for(int n; (n=din.read()) != -1; aos.write(n)) {
-                }
-                httpData.setBytes(aos.toByteArray());
+          String boundary = "--" + contentType.substring(contentType.indexOf("boundary=") + "boundary=".length());
+          byte[] boundaryBytes = boundary.getBytes("UTF-8");
+          List<Integer> indexList = new ArrayList<Integer>();
+          for(int i=0; i<dataBytes.length - boundaryBytes.length; i++) {
+            boolean isFound = true;
+            for(int j=0; j<boundaryBytes.length; j++) {
+              if(dataBytes[i + j] != boundaryBytes[j]) {
+                isFound = false;
+                break;
               }
+            }
+            if(isFound) {
+              indexList.add(i);
+              i += boundaryBytes.length;
+            }
+          }
+          httpDataArray = new HTTPData[indexList.size() - 1];
+          for(int i=0; i<httpDataArray.length; i++) {
+            HTTPData httpData = new HTTPData();
+            httpDataArray[i] = httpData;
+            int start = indexList.get(i);
+            ByteArrayInputStream bais = new ByteArrayInputStream(dataBytes, start, indexList.get(i + 1) - start - in.getLineSeparator().length());
+            HTTPInputStream din = new HTTPInputStream(bais);
+            din.readAsciiLine();
+            Map<String, String> dataHeaderMap = httpData.getHeaderMap();
+            for(String header; (header = din.readAsciiLine()) != null && header.length() > 0; ) {
+              String key = header.substring(header.indexOf(": "));
+              String value = header.substring(key.length() + ": ".length());
+              dataHeaderMap.put(key, value);
+            }
+            ByteArrayOutputStream aos = new ByteArrayOutputStream();
+            for(int n; (n=din.read()) != -1; aos.write(n)) {
+            }
+            httpData.setBytes(aos.toByteArray());
+          }
+        } else {
+          String dataContent;
+          if(contentLength >= 0) {
+            // The exact number of bytes is read, as the next request may follow on the same connection.
+            byte[] dataBytes = new byte[contentLength];
+            in.readFully(dataBytes);
+            dataContent = new String(dataBytes, "UTF-8");
+          } else {
+            InputStreamReader reader = new InputStreamReader(in, "UTF-8");
+            StringBuilder sb = new StringBuilder();
+            char[] chars = new char[1024];
+            for(int i; (i=reader.read(chars)) != -1; sb.append(chars, 0, i)) {
+            }
+            dataContent = sb.toString();
+          }
+          HTTPData httpData = new HTTPData();
+          Map<String, String> dataHeaderMap = httpData.getHeaderMap();
+          for(String content: dataContent.split("&")) {
+            int eqIndex = content.indexOf('=');
+            if(eqIndex > 0) {
+              String key = content.substring(0, eqIndex);
+              String value = Utils.decodeURL(content.substring(eqIndex + 1));
+              dataHeaderMap.put(key, value);
             } else {
-              InputStreamReader reader = new InputStreamReader(in, "UTF-8");
-              String dataContent;
-              if(contentLength > 0) {
-                char[] chars = new char[contentLength];
-                int offset = 0;
-                while(chars.length > offset) {
-                  int n = reader.read(chars, offset, chars.length - offset);
-                  offset = n == -1? chars.length: offset + n;
-                }
-                dataContent = new String(chars);
-              } else {
-                StringBuilder sb = new StringBuilder();
-                char[] chars = new char[1024];
-                for(int i; (i=reader.read(chars)) != -1; sb.append(chars, 0, i)) {
+              dataHeaderMap.put(content, "");
+            }
+          }
+          httpDataArray = new HTTPData[] {httpData};
+        }
+        httpRequest.setHTTPPostDataArray(httpDataArray);
+      }
+      WebServerContent webServerContent = getWebServerContent(httpRequest);
+      boolean isPrintRequestsDebug = Boolean.parseBoolean(NSSystemProperty.WEBSERVER_DEBUG_PRINTREQUESTS.get());
+      String printDataProperty = NSSystemProperty.WEBSERVER_DEBUG_PRINTDATA.get();
+      boolean isPrintDataDebug = false;
+      long printDataCount = -1;
+      if(printDataProperty != null) {
+        try {
+          printDataCount = Long.parseLong(printDataProperty);
+          isPrintDataDebug = true;
+        } catch(Exception e) {
+          isPrintDataDebug = Boolean.parseBoolean(printDataProperty);
+          printDataCount = Integer.MAX_VALUE;
+        }
+      }
+      InputStream resourceStream_ = null;
+      if(webServerContent != null) {
+        String eTag = webServerContent.getETag();
+        if(eTag != null) {
+          long lastModified = webServerContent.getLastModified();
+          if(isNotModified(headerMap, eTag, lastModified)) {
+            if(isPrintRequestsDebug) {
+              System.err.println("Web Server " + (isPostMethod? "POST": "GET") + ": " + resourcePath + " -> 304 (not modified)");
+            }
+            writeHTTPHeaders(out, connectionState, 304, null, -1, lastModified, webServerContent);
+            return true;
+          }
+        }
+        // The data that is printed for debugging comes from the input stream.
+        File file = isPrintDataDebug? null: webServerContent.getFile();
+        if(file != null && file.isFile() && file.canRead()) {
+          long fileLength = file.length();
+          if(isPrintRequestsDebug) {
+            System.err.println("Web Server " + (isPostMethod? "POST": "GET") + ": " + resourcePath + " -> 200 (OK)");
+          }
+          writeHTTPHeaders(out, connectionState, 200, webServerContent.getContentType(), fileLength, webServerContent.getLastModified(), webServerContent);
+          out.writeFile(file, fileLength);
+          return true;
+        }
+        try {
+          resourceStream_ = webServerContent.getInputStream();
+        } catch(Exception e) {
+          e.printStackTrace();
+        }
+      }
+      if(resourceStream_ == null) {
+        if(isPrintRequestsDebug) {
+          System.err.println("Web Server " + (isPostMethod? "POST": "GET") + ": " + resourcePath + " -> 404 (not found)");
+        }
+        writeHTTPError(out, connectionState, 404, "File Not Found.");
+        return true;
+      }
+      if(isPrintRequestsDebug || isPrintDataDebug) {
+        System.err.println("Web Server " + (isPostMethod? "POST": "GET") + ": " + resourcePath + " -> 200 (OK)");
+      }
+      BufferedInputStream resourceStream = new BufferedInputStream(resourceStream_);
+      try {
+        writeHTTPHeaders(out, connectionState, 200, webServerContent.getContentType(), webServerContent.getContentLength(), webServerContent.getLastModified(), webServerContent);
+        ChunkedOutputStream chunkedOut = connectionState.isChunked? new ChunkedOutputStream(out): null;
+        OutputStream contentOut = chunkedOut != null? chunkedOut: out;
+        byte[] bytes = new byte[4096];
+        for(int i; (i=resourceStream.read(bytes)) != -1; contentOut.write(bytes, 0, i)) {
+          if(isPrintDataDebug && i > 0 && printDataCount > 0) {
+            System.err.print(new String(bytes, 0, (int)Math.min(i, printDataCount), "UTF-8"));
+            printDataCount -= i;
+          }
+        }
+        if(chunkedOut != null) {
+          chunkedOut.finish();
+        }
+        if(isPrintDataDebug) {
+          System.err.println();
+        }
+      } finally {
+        try {
+          resourceStream.close();
+        } catch(Exception e) {
+          e.printStackTrace();
+        }
+      }
+      return true;
+    }
+
+  }
+
+  /**
+   * The engine that serves all the connections from a single thread with a selector, as an alternative to a thread per connection.<br/>
+   * The selector thread accepts the connections, reads the requests and writes the responses with non-blocking channels. When a request is complete, it is processed by a worker thread, which generates the response in buffers that the selector thread writes when the connection can accept them.
+   * The requests of a connection are processed in order, but a slow request only delays the other requests of its connection.
+   */
+  private static class NIOWebServerThread extends Thread {
+
+    private static final int WORKER_COUNT = 8;
+    /**
+     * The number of bytes of a response that can wait to be written before the worker that generates it waits.
+     */
+    private static final int MAX_QUEUED_BYTE_COUNT = 256 * 1024;
+    private static final int MAX_HEADER_LENGTH = 64 * 1024;
+    /**
+     * The time after which a connection is closed when the client does not read the bytes that are waiting to be written, so that the worker that waits for them is released.
+     */
+    private static final int WRITE_TIMEOUT = 10000;
+
+    private static class NIOConnection {
+
+      private NIOWebServerThread webServerThread;
+      private SocketChannel channel;
+      private SelectionKey selectionKey;
+      private byte[] inputBytes = new byte[4096];
+      private int inputLength;
+      private boolean isInputClosed;
+      private int requestCount;
+      private boolean isProcessing;
+      private boolean isClosingAfterWrite;
+      private boolean isClosed;
+      private long lastActivityTime = System.currentTimeMillis();
+      private long lastWriteTime;
+      /**
+       * The buffers and the file regions that are waiting to be written.
+       */
+      private LinkedList<Object> outputList = new LinkedList<Object>();
+      private int queuedByteCount;
+
+      public NIOConnection(NIOWebServerThread webServerThread, SocketChannel channel) {
+        this.webServerThread = webServerThread;
+        this.channel = channel;
+      }
+
+      /**
+       * Get the bytes of the next complete request, removing them from the input.
+       * @return the bytes of the request, or null if the request is not complete.
+       */
+      private byte[] takeRequestBytes() throws IOException {
+        int start = 0;
+        // Some clients send an extra line separator after the data of a POST request.
+        while(start < inputLength && (inputBytes[start] == '\r' || inputBytes[start] == '\n')) {
+          start++;
+        }
+        int headerEnd = -1;
+        for(int i=start; i<inputLength - 1; i++) {
+          if(inputBytes[i] == '\n') {
+            if(inputBytes[i + 1] == '\n') {
+              headerEnd = i + 2;
+              break;
+            }
+            if(inputBytes[i + 1] == '\r' && i + 2 < inputLength && inputBytes[i + 2] == '\n') {
+              headerEnd = i + 3;
+              break;
+            }
+          }
+        }
+        if(headerEnd == -1) {
+          if(inputLength > MAX_HEADER_LENGTH) {
+            throw new IOException("The request headers are too long.");
+          }
+          if(isInputClosed && start < inputLength) {
+            // Let the processing report the invalid request.
+            return removeInputBytes(start, inputLength);
+          }
+          return null;
+        }
+        String headers = new String(inputBytes, start, headerEnd - start, "UTF-8");
+        int requestEnd = headerEnd;
+        if(headers.startsWith("POST ")) {
+          int contentLength = -1;
+          for(String header: headers.split("\r?\n")) {
+            if(header.startsWith("Content-Length: ")) {
+              contentLength = Integer.parseInt(header.substring("Content-Length: ".length()).trim());
+            }
+          }
+          if(contentLength < 0) {
+            // The data goes up to the end of the stream.
+            if(!isInputClosed) {
+              return null;
+            }
+            requestEnd = inputLength;
+          } else {
+            requestEnd = headerEnd + contentLength;
+            if(requestEnd > inputLength) {
+              return null;
+            }
+          }
+        }
+        return removeInputBytes(start, requestEnd);
+      }
+
+      private byte[] removeInputBytes(int start, int end) {
+        byte[] requestBytes = new byte[end - start];
+        System.arraycopy(inputBytes, start, requestBytes, 0, requestBytes.length);
+        System.arraycopy(inputBytes, end, inputBytes, 0, inputLength - end);
+        inputLength -= end;
+        return requestBytes;
+      }
+
+      /**
+       * Read the available bytes. This is called from the selector thread.
+       */
+      void read(ByteBuffer readBuffer) throws IOException {
+        readBuffer.clear();
+        int n = channel.read(readBuffer);
+        if(n == -1) {
+          isInputClosed = true;
+          selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+          return;
+        }
+        if(inputLength + n > inputBytes.length) {
+          byte[] newInputBytes = new byte[Math.max(inputBytes.length * 2, inputLength + n)];
+          System.arraycopy(inputBytes, 0, newInputBytes, 0, inputLength);
+          inputBytes = newInputBytes;
+        }
+        readBuffer.flip();
+        readBuffer.get(inputBytes, inputLength, n);
+        inputLength += n;
+        lastActivityTime = System.currentTimeMillis();
+      }
+
+      /**
+       * Process the next request if it is complete and no request is being processed, or close the connection if it has nothing left to do. This is called from the selector thread.
+       */
+      void processNextRequest() throws IOException {
+        final byte[] requestBytes;
+        synchronized(this) {
+          if(isProcessing || isClosed) {
+            return;
+          }
+          requestBytes = isClosingAfterWrite? null: takeRequestBytes();
+          if(requestBytes == null) {
+            if((isInputClosed || isClosingAfterWrite) && outputList.isEmpty()) {
+              webServerThread.close(this);
+            }
+            return;
+          }
+          isProcessing = true;
+          requestCount++;
+        }
+        final int requestCount;
+        synchronized(this) {
+          requestCount = this.requestCount;
+        }
+        webServerThread.workerExecutor.execute(new Runnable() {
+          public void run() {
+            boolean isKeepAlive = false;
+            try {
+              WebServerConnectionThread.HTTPInputStream in = new WebServerConnectionThread.HTTPInputStream(new ByteArrayInputStream(requestBytes));
+              WebServerConnectionThread.ConnectionOutputStream out = new WebServerConnectionThread.ConnectionOutputStream(new NIOConnectionOutputStream(NIOConnection.this)) {
+                @Override
+                public void writeFile(File file, long length) throws IOException {
+                  flush();
+                  NIOConnection.this.writeFile(file, length);
                 }
-                dataContent = sb.toString();
+              };
+              String request = in.readAsciiLine();
+              if(request != null) {
+                WebServerConnectionThread.ConnectionState connectionState = new WebServerConnectionThread.ConnectionState();
+                isKeepAlive = WebServerConnectionThread.processRequest(in, out, request, requestCount, true, connectionState) && connectionState.isKeepAlive;
               }
-              HTTPData httpData = new HTTPData();
-              Map<String, String> dataHeaderMap = httpData.getHeaderMap();
-              for(String content: dataContent.split("&")) {
-                int eqIndex = content.indexOf('=');
-                if(eqIndex > 0) {
-                  String key = content.substring(0, eqIndex);
-                  String value = Utils.decodeURL(content.substring(eqIndex + 1));
-                  dataHeaderMap.put(key, value);
-                } else {
-                  dataHeaderMap.put(content, "");
-                }
+              out.flush();
+            } catch(Exception e) {
+//              e.printStackTrace();
+            }
+            synchronized(NIOConnection.this) {
+              isProcessing = false;
+              lastActivityTime = System.currentTimeMillis();
+              if(!isKeepAlive) {
+                isClosingAfterWrite = true;
               }
-              httpDataArray = new HTTPData[] {httpData};
             }
-            httpRequest.setHTTPPostDataArray(httpDataArray);
+            webServerThread.update(NIOConnection.this);
           }
-          WebServerContent webServerContent = getWebServerContent(httpRequest);
-          InputStream resourceStream_ = null;
-          if(webServerContent != null) {
+        });
+      }
+
+      /**
+       * Queue the bytes of a response, writing them directly if nothing is waiting. This is called from a worker thread, which waits if too many bytes are queued.
+       */
+      void write(byte[] bytes, int offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        synchronized(this) {
+          while(queuedByteCount > MAX_QUEUED_BYTE_COUNT && !isClosed) {
             try {
-              resourceStream_ = webServerContent.getInputStream();
-            } catch(Exception e) {
-              e.printStackTrace();
+              wait();
+            } catch(InterruptedException e) {
+              throw new InterruptedIOException();
             }
           }
-          boolean isPrintRequestsDebug = Boolean.parseBoolean(NSSystemProperty.WEBSERVER_DEBUG_PRINTREQUESTS.get());
-          String printDataProperty = NSSystemProperty.WEBSERVER_DEBUG_PRINTDATA.get();
-          boolean isPrintDataDebug = false;
-          long printDataCount = -1;
-          if(printDataProperty != null) {
-            try {
-              printDataCount = Long.parseLong(printDataProperty);
-              isPrintDataDebug = true;
-            } catch(Exception e) {
-              isPrintDataDebug = Boolean.parseBoolean(printDataProperty);
-              printDataCount = Integer.MAX_VALUE;
+          if(isClosed) {
+            throw new IOException("The connection is closed.");
+          }
+          if(outputList.isEmpty()) {
+            channel.write(buffer);
+            if(!buffer.hasRemaining()) {
+              return;
             }
           }
-          if(resourceStream_ == null) {
-            if(isPrintRequestsDebug) {
-              System.err.println("Web Server " + (isPostMethod? "POST": "GET") + ": " + resourcePath + " -> 404 (not found)");
+          // The buffer of the caller is reused, so the remaining bytes are copied.
+          ByteBuffer remainingBuffer = ByteBuffer.allocate(buffer.remaining());
+          remainingBuffer.put(buffer);
+          remainingBuffer.flip();
+          addOutput(remainingBuffer);
+          queuedByteCount += remainingBuffer.remaining();
+        }
+        webServerThread.update(this);
+      }
+
+      /**
+       * Queue the first bytes of a file, writing them directly if nothing is waiting. This is called from a worker thread, which does not wait as the bytes are not copied to the Java heap.
+       */
+      void writeFile(File file, long length) throws IOException {
+        ByteBuffer mappedBuffer = MappedFileCache.getBuffer(file, length);
+        FileRegion fileRegion = mappedBuffer != null? null: new FileRegion(new FileInputStream(file).getChannel(), length);
+        synchronized(this) {
+          boolean isQueued = false;
+          try {
+            if(isClosed) {
+              throw new IOException("The connection is closed.");
+            }
+            if(outputList.isEmpty()) {
+              if(mappedBuffer != null) {
+                channel.write(mappedBuffer);
+                if(!mappedBuffer.hasRemaining()) {
+                  return;
+                }
+              } else if(fileRegion.transferTo(channel)) {
+                return;
+              }
+            }
+            addOutput(mappedBuffer != null? mappedBuffer: fileRegion);
+            isQueued = true;
+          } finally {
+            if(fileRegion != null && !isQueued) {
+              fileRegion.close();
             }
-            writeHTTPError(out, 404, "File Not Found.");
-            return;
           }
-          if(isPrintRequestsDebug || isPrintDataDebug) {
-            System.err.println("Web Server " + (isPostMethod? "POST": "GET") + ": " + resourcePath + " -> 200 (OK)");
+        }
+        webServerThread.update(this);
+      }
+
+      private void addOutput(Object output) {
+        if(outputList.isEmpty()) {
+          // The write timeout starts when bytes start waiting.
+          lastWriteTime = System.currentTimeMillis();
+        }
+        outputList.add(output);
+      }
+
+      /**
+       * Write the queued bytes that the connection accepts. This is called from the selector thread.
+       */
+      synchronized void writeQueuedBytes() throws IOException {
+        boolean isWritten = false;
+        while(!outputList.isEmpty()) {
+          Object output = outputList.getFirst();
+          if(output instanceof FileRegion) {
+            FileRegion fileRegion = (FileRegion)output;
+            long position = fileRegion.position;
+            boolean isTransferred = fileRegion.transferTo(channel);
+            isWritten |= fileRegion.position > position;
+            if(!isTransferred) {
+              break;
+            }
+            fileRegion.close();
+          } else {
+            ByteBuffer buffer = (ByteBuffer)output;
+            int n = channel.write(buffer);
+            isWritten |= n > 0;
+            if(!buffer.isDirect()) {
+              // Only the bytes that were copied to the heap are limited: a direct buffer is a mapped file.
+              queuedByteCount -= n;
+            }
+            if(buffer.hasRemaining()) {
+              break;
+            }
+          }
+          outputList.removeFirst();
+        }
+        if(isWritten) {
+          lastWriteTime = System.currentTimeMillis();
+        }
+        notifyAll();
+      }
+
+      /**
+       * Update the operations of interest. This is called from the selector thread.
+       */
+      synchronized void updateInterestOps() {
+        if(isClosed) {
+          return;
+        }
+        int interestOps = isInputClosed? 0: SelectionKey.OP_READ;
+        if(!outputList.isEmpty()) {
+          interestOps |= SelectionKey.OP_WRITE;
+        }
+        selectionKey.interestOps(interestOps);
+      }
+
+      synchronized boolean isIdle(long time, int keepAliveTimeout) {
+        return !isProcessing && outputList.isEmpty() && time - lastActivityTime > keepAliveTimeout;
+      }
+
+      /**
+       * Indicate whether bytes are waiting to be written while the client did not read anything for too long.
+       */
+      synchronized boolean isWriteTimedOut(long time) {
+        return !outputList.isEmpty() && time - lastWriteTime > WRITE_TIMEOUT;
+      }
+
+      synchronized void markClosed() {
+        isClosed = true;
+        for(Object output: outputList) {
+          if(output instanceof FileRegion) {
+            ((FileRegion)output).close();
           }
-          BufferedInputStream resourceStream = new BufferedInputStream(resourceStream_);
-          writeHTTPHeaders(out, 200, webServerContent.getContentType(), webServerContent.getContentLength(), webServerContent.getLastModified());
-          byte[] bytes = new byte[4096];
-          for(int i; (i=resourceStream.read(bytes)) != -1; out.write(bytes, 0, i)) {
-            if(isPrintDataDebug && i > 0 && printDataCount > 0) {
-              System.err.print(new String(bytes, 0, (int)Math.min(i, printDataCount), "UTF-8"));
-              printDataCount -= i;
+        }
+        outputList.clear();
+        notifyAll();
+      }
+
+    }
+
+    /**
+     * The part of a file that remains to be written to a connection, which the system transfers without copying it to the Java heap.
+     */
+    private static class FileRegion {
+      private FileChannel fileChannel;
+      private long position;
+      private long length;
+      public FileRegion(FileChannel fileChannel, long length) {
+        this.fileChannel = fileChannel;
+        this.length = length;
+      }
+      /**
+       * Transfer the bytes that the channel accepts.
+       * @return true if the whole region was transferred.
+       * @throws EOFException if the file became shorter.
+       */
+      boolean transferTo(SocketChannel channel) throws IOException {
+        while(position < length) {
+          long n = fileChannel.transferTo(position, length - position, channel);
+          if(n <= 0) {
+            if(position >= fileChannel.size()) {
+              throw new EOFException("The file became shorter while it was sent.");
             }
+            return false;
+          }
+          position += n;
+        }
+        return true;
+      }
+      void close() {
+        try {
+          fileChannel.close();
+        } catch(IOException e) {
+        }
+      }
+    }
+
+    private static class NIOConnectionOutputStream extends OutputStream {
+      private NIOConnection connection;
+      public NIOConnectionOutputStream(NIOConnection connection) {
+        this.connection = connection;
+      }
+      @Override
+      public void write(int b) throws IOException {
+        write(new byte[] {(byte)b}, 0, 1);
+      }
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        connection.write(b, off, len);
+      }
+    }
+
+    private static int threadInitNumber;
+
+    private static synchronized int nextThreadNumber() {
+      return threadInitNumber++;
+    }
+
+    private WebServer webServer;
+    private ServerSocketChannel serverSocketChannel;
+    private Selector selector;
+    private ExecutorService workerExecutor;
+    private Queue<NIOConnection> updatedConnectionQueue = new ConcurrentLinkedQueue<NIOConnection>();
+
+    public NIOWebServerThread(WebServer webServer, ServerSocketChannel serverSocketChannel) throws IOException {
+      super("WebServer");
+      this.webServer = webServer;
+      this.serverSocketChannel = serverSocketChannel;
+      selector = Selector.open();
+      serverSocketChannel.configureBlocking(false);
+      serverSocketChannel.register(selector, SelectionKey.OP_ACCEPT);
+      workerExecutor = Executors.newFixedThreadPool(WORKER_COUNT, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "WebServer Worker-" + nextThreadNumber());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+
+    /**
+     * Let the selector thread process a connection whose state changed in another thread.
+     */
+    void update(NIOConnection connection) {
+      updatedConnectionQueue.add(connection);
+      selector.wakeup();
+    }
+
+    void close(NIOConnection connection) {
+      connection.markClosed();
+      if(connection.selectionKey != null) {
+        connection.selectionKey.cancel();
+      }
+      try {
+        connection.channel.close();
+      } catch(IOException e) {
+      }
+    }
+
+    @Override
+    public void run() {
+      ByteBuffer readBuffer = ByteBuffer.allocate(16 * 1024);
+      long lastIdleCheckTime = System.currentTimeMillis();
+      try {
+        while(webServer.isRunning && serverSocketChannel.isOpen()) {
+          selector.select(1000);
+          for(NIOConnection connection; (connection = updatedConnectionQueue.poll()) != null; ) {
+            process(connection);
           }
-          if(isPrintDataDebug) {
-            System.err.println();
+          for(Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+            SelectionKey selectionKey = it.next();
+            it.remove();
+            if(!selectionKey.isValid()) {
+              continue;
+            }
+            if(selectionKey.isAcceptable()) {
+              accept();
+              continue;
+            }
+            NIOConnection connection = (NIOConnection)selectionKey.attachment();
+            if(selectionKey.isReadable()) {
+              try {
+                connection.read(readBuffer);
+              } catch(IOException e) {
+                close(connection);
+                continue;
+              }
+            }
+            process(connection);
           }
-          try {
-            resourceStream.close();
-          } catch(Exception e) {
-            e.printStackTrace();
+          long time = System.currentTimeMillis();
+          if(time - lastIdleCheckTime > 1000) {
+            lastIdleCheckTime = time;
+            int keepAliveTimeout = WebServerConnectionThread.getKeepAliveTimeout();
+            for(SelectionKey selectionKey: selector.keys()) {
+              Object attachment = selectionKey.attachment();
+              if(attachment instanceof NIOConnection) {
+                NIOConnection connection = (NIOConnection)attachment;
+                // Closing a connection wakes up the worker that waits to write to it.
+                if(connection.isIdle(time, keepAliveTimeout) || connection.isWriteTimedOut(time)) {
+                  close(connection);
+                }
+              }
+            }
           }
-        } finally {
-          out.flush();
-          out.close();
-          in.close();
-          socket.close();
         }
       } catch(Exception e) {
-//        e.printStackTrace();
+        if(webServer.serverSocket != null) {
+          e.printStackTrace();
+        }
       } finally {
-        semaphore.release();
+        for(SelectionKey selectionKey: selector.keys()) {
+          Object attachment = selectionKey.attachment();
+          if(attachment instanceof NIOConnection) {
+            close((NIOConnection)attachment);
+          }
+        }
+        try {
+          selector.close();
+        } catch(IOException e) {
+        }
+        try {
+          serverSocketChannel.close();
+        } catch(IOException e) {
+        }
+        workerExecutor.shutdown();
+        webServer.serverSocket = null;
+        ObjectRegistry.getInstance().remove(webServer.instanceID);
+      }
+    }
+
+    private void accept() throws IOException {
+      // All the pending connections are accepted, so that the backlog does not overflow when many connections are opened at once.
+      for(SocketChannel channel; (channel = serverSocketChannel.accept()) != null; ) {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        NIOConnection connection = new NIOConnection(this, channel);
+        connection.selectionKey = channel.register(selector, SelectionKey.OP_READ, connection);
+      }
+    }
+
+    private void process(NIOConnection connection) {
+      try {
+        connection.writeQueuedBytes();
+        connection.processNextRequest();
+        connection.updateInterestOps();
+      } catch(Exception e) {
+        close(connection);
       }
     }
 
@@ -523,12 +1379,24 @@ public class WebServer {
     }
     isRunning = true;
     instanceID = ObjectRegistry.getInstance().add(this);
-    serverSocket = new ServerSocket();
+    ServerSocketChannel serverSocketChannel = null;
+    if("nio".equals(NSSystemProperty.WEBSERVER_ENGINE.get())) {
+      serverSocketChannel = ServerSocketChannel.open();
+      serverSocket = serverSocketChannel.socket();
+    } else {
+      serverSocket = new ServerSocket();
+    }
     serverSocket.bind(new InetSocketAddress(InetAddress.getByName(getHostAddress()), port));
     port = serverSocket.getLocalPort();
     if(Boolean.parseBoolean(NSSystemProperty.WEBSERVER_DEBUG_PRINTPORT.get())) {
       System.err.println("Web Server port: " + port);
     }
+    if(serverSocketChannel != null) {
+      Thread listenerThread = new NIOWebServerThread(this, serverSocketChannel);
+      listenerThread.setDaemon(isDaemon);
+      listenerThread.start();
+      return;
+    }
     Thread listenerThread = new Thread("WebServer") {
       @Override
       public void run() {
@@ -540,11 +1408,6 @@ public class WebServer {
 //            if(!HOST_ADDRESS.equals(hostAddress) && !"127.0.0.1".equals(hostAddress)) {
 //              throw new IllegalStateException("Illegal connection from host " + hostAddress);
 //            }
-            socket.setSoTimeout(10000);
-            try {
-              WebServerConnectionThread.semaphore.acquire();
-            } catch(InterruptedException e) {
-            }
             WebServerConnectionThread webServerConnectionThread = new WebServerConnectionThread(socket);
             webServerConnectionThread.start();
           } catch(Exception e) {
@@ -627,14 +1490,18 @@ public class WebServer {
     if(referenceClassLoader == null || referenceClassLoader == getClass().getClassLoader()) {
       return;
     }
-    referenceClassLoaderList.add(0, referenceClassLoader);
+    synchronized(referenceClassLoaderList) {
+      referenceClassLoaderList.add(0, referenceClassLoader);
+    }
   }
 
   public void removeReferenceClassLoader(ClassLoader referenceClassLoader) {
     if(referenceClassLoader == null || referenceClassLoader == getClass().getClassLoader()) {
       return;
     }
-    referenceClassLoaderList.remove(referenceClassLoader);
+    synchronized(referenceClassLoaderList) {
+      referenceClassLoaderList.remove(referenceClassLoader);
+    }
   }
 
   /**
@@ -718,15 +1585,47 @@ public class WebServer {
         parameter = parameter.substring(index + 1);
         final String resourcePath = Utils.decodeURL(removeHTMLAnchor(parameter));
         return new WebServerContent() {
+          private ClasspathResourceCache.CachedResource cachedResource;
+          private ClasspathResourceCache.CachedResource getCachedResource() {
+            if(cachedResource == null) {
+              List<ClassLoader> referenceClassLoaderList;
+              synchronized(webServer.referenceClassLoaderList) {
+                referenceClassLoaderList = new ArrayList<ClassLoader>(webServer.referenceClassLoaderList);
+              }
+              cachedResource = ClasspathResourceCache.getResource(referenceClassLoaderList, resourcePath);
+            }
+            return cachedResource;
+          }
           @Override
           public String getContentType() {
             int index = resourcePath.lastIndexOf('.');
             return getDefaultMimeType(index == -1? null: resourcePath.substring(index));
           }
           @Override
+          public long getContentLength() {
+            ClasspathResourceCache.CachedResource cachedResource = getCachedResource();
+            return cachedResource == null || cachedResource == ClasspathResourceCache.UNCACHEABLE_RESOURCE? -1: cachedResource.getBytes().length;
+          }
+          @Override
+          public long getLastModified() {
+            ClasspathResourceCache.CachedResource cachedResource = getCachedResource();
+            if(cachedResource == null || cachedResource.getLastModified() == 0) {
+              return super.getLastModified();
+            }
+            return cachedResource.getLastModified();
+          }
+          @Override
           public InputStream getInputStream() {
+            ClasspathResourceCache.CachedResource cachedResource = getCachedResource();
+            if(cachedResource != ClasspathResourceCache.UNCACHEABLE_RESOURCE) {
+              return cachedResource == null? null: new ByteArrayInputStream(cachedResource.getBytes());
+            }
             try {
-              for(ClassLoader referenceClassLoader: webServer.referenceClassLoaderList) {
+              List<ClassLoader> referenceClassLoaderList;
+              synchronized(webServer.referenceClassLoaderList) {
+                referenceClassLoaderList = new ArrayList<ClassLoader>(webServer.referenceClassLoaderList);
+              }
+              for(ClassLoader referenceClassLoader: referenceClassLoaderList) {
                 InputStream in = referenceClassLoader.getResourceAsStream(resourcePath);
                 if(in != null) {
                   return in;
@@ -738,6 +1637,15 @@ public class WebServer {
               return null;
             }
           }
+          @Override
+          public String getETag() {
+            ClasspathResourceCache.CachedResource cachedResource = getCachedResource();
+            return cachedResource == null || cachedResource == ClasspathResourceCache.UNCACHEABLE_RESOURCE? null: cachedResource.getETag();
+          }
+          @Override
+          public int getMaxAge() {
+            return getClasspathMaxAge();
+          }
         };
       }
       if("location".equals(type)) {
@@ -776,6 +1684,31 @@ public class WebServer {
             return super.getContentLength();
           }
           @Override
+          public long getLastModified() {
+            File file = Utils.getLocalFile(resourceURL_);
+            if(file != null) {
+              return file.lastModified();
+            }
+            return super.getLastModified();
+          }
+          @Override
+          public String getETag() {
+            File file = Utils.getLocalFile(resourceURL_);
+            if(file == null || !file.isFile()) {
+              return null;
+            }
+            return "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+          }
+          @Override
+          public int getMaxAge() {
+            // A file can change, so the browser has to check.
+            return 0;
+          }
+          @Override
+          public File getFile() {
+            return Utils.getLocalFile(resourceURL_);
+          }
+          @Override
           public String getContentType() {
             int index = resourceURL_.lastIndexOf('.');
             return getDefaultMimeType(index == -1? null: resourceURL_.substring(index));
@@ -836,6 +1769,31 @@ public class WebServer {
             return super.getContentLength();
           }
           @Override
+          public long getLastModified() {
+            File file = Utils.getLocalFile(resourceURL_);
+            if(file != null) {
+              return file.lastModified();
+            }
+            return super.getLastModified();
+          }
+          @Override
+          public String getETag() {
+            File file = Utils.getLocalFile(resourceURL_);
+            if(file == null || !file.isFile()) {
+              return null;
+            }
+            return "\"" + Long.toHexString(file.length()) + "-" + Long.toHexString(file.lastModified()) + "\"";
+          }
+          @Override
+          public int getMaxAge() {
+            // A file can change, so the browser has to check.
+            return 0;
+          }
+          @Override
+          public File getFile() {
+            return Utils.getLocalFile(resourceURL_);
+          }
+          @Override
           public String getContentType() {
             int index = resourceURL_.lastIndexOf('.');
             return getDefaultMimeType(index == -1? null: resourceURL_.substring(index));
@@ -865,6 +1823,18 @@ public class WebServer {
     return null;
   }
 
+  private static int getClasspathMaxAge() {
+    String maxAge = NSSystemProperty.WEBSERVER_CLASSPATHMAXAGE.get();
+    if(maxAge != null) {
+      try {
+        return Integer.parseInt(maxAge);
+      } catch(Exception e) {
+        e.printStackTrace();
+      }
+    }
+    return 3600;
+  }
+
   private static String removeHTMLAnchor(String location) {
     int anchorIndex = location.indexOf('#');
     if(anchorIndex > 0) {
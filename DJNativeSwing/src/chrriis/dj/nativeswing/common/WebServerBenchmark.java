@@ -0,0 +1,374 @@
+/*
+ * Christopher Deckers (chrriis@nextencia.net)
+ * http://www.nextencia.net
+ *
+ * See the file "readme.txt" for information on usage and redistribution of
+ * this file, and for a DISCLAIMER OF ALL WARRANTIES.
+ */
+package chrriis.dj.nativeswing.common;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import chrriis.dj.nativeswing.NSSystemProperty;
+
+/**
+ * A load benchmark of the web server, which replays the page load of an HTML editor: all the resources of the editor are requested from the classpath, through a few parallel connections like a browser.<br/>
+ * When the CKEditor distribution is on the classpath (the "/ckeditor/" resources that JHTMLEditor uses), its files are replayed. Otherwise, a tree of the same shape is generated: the main script, its configuration, a skin, and many plugins with their dialogs and images.<br/>
+ * Each page load is measured with a connection per request ("Connection: close"), with persistent connections, and with persistent connections that pipeline their requests. The content of every response is checked.<br/>
+ * Usage: WebServerBenchmark [page load count] [connection count]
+ * @author Christopher Deckers
+ */
+class WebServerBenchmark {
+
+  private static final String PACKAGE_PREFIX = "/ckeditor/";
+
+  private static enum Mode {
+    CLOSE("Connection: close"),
+    KEEP_ALIVE("Keep-alive"),
+    PIPELINING("Keep-alive with pipelining");
+    private final String name;
+    private Mode(String name) {
+      this.name = name;
+    }
+  }
+
+  private static class Resource {
+
+    private final String path;
+    private final byte[] bytes;
+
+    public Resource(String path, byte[] bytes) {
+      this.path = path;
+      this.bytes = bytes;
+    }
+
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    byte[] bytes = new byte[8192];
+    for(int i; (i=in.read(bytes)) != -1; baos.write(bytes, 0, i)) {
+    }
+    in.close();
+    return baos.toByteArray();
+  }
+
+  /**
+   * @return the resources of the CKEditor distribution that is on the classpath, or null if there is none.
+   */
+  private static List<Resource> getDistributionResources() throws IOException {
+    File classPathFile = Utils.getClassPathFile(PACKAGE_PREFIX + "ckeditor.js");
+    if(classPathFile == null) {
+      return null;
+    }
+    List<Resource> resourceList = new ArrayList<Resource>();
+    if(classPathFile.isFile()) {
+      JarFile jarFile = new JarFile(classPathFile);
+      try {
+        for(Enumeration<JarEntry> en = jarFile.entries(); en.hasMoreElements(); ) {
+          JarEntry jarEntry = en.nextElement();
+          if(!jarEntry.isDirectory() && jarEntry.getName().startsWith(PACKAGE_PREFIX.substring(1))) {
+            resourceList.add(new Resource("/" + jarEntry.getName(), readAll(jarFile.getInputStream(jarEntry))));
+          }
+        }
+      } finally {
+        jarFile.close();
+      }
+    } else {
+      addDirectoryResources(resourceList, new File(classPathFile, PACKAGE_PREFIX.substring(1)), PACKAGE_PREFIX);
+    }
+    return resourceList;
+  }
+
+  private static void addDirectoryResources(List<Resource> resourceList, File dir, String path) throws IOException {
+    for(File file: dir.listFiles()) {
+      if(file.isDirectory()) {
+        addDirectoryResources(resourceList, file, path + file.getName() + "/");
+      } else {
+        resourceList.add(new Resource(path + file.getName(), readAll(new FileInputStream(file))));
+      }
+    }
+  }
+
+  /**
+   * Generate resources with the layout and the sizes of a CKEditor page load.
+   */
+  private static List<Resource> createResources() {
+    Random random = new Random(0);
+    List<Resource> resourceList = new ArrayList<Resource>();
+    resourceList.add(createResource(random, "ckeditor.js", 350000));
+    resourceList.add(createResource(random, "config.js", 1000));
+    resourceList.add(createResource(random, "contents.css", 1500));
+    resourceList.add(createResource(random, "lang/en.js", 25000));
+    resourceList.add(createResource(random, "themes/default/theme.js", 8000));
+    resourceList.add(createResource(random, "skins/kama/skin.js", 4000));
+    resourceList.add(createResource(random, "skins/kama/editor.css", 40000));
+    resourceList.add(createResource(random, "skins/kama/dialog.css", 15000));
+    resourceList.add(createResource(random, "skins/kama/icons.png", 12000));
+    for(int i=0; i<24; i++) {
+      resourceList.add(createResource(random, "skins/kama/images/image" + i + ".gif", 200 + random.nextInt(1500)));
+    }
+    for(int i=0; i<60; i++) {
+      String pluginPath = "plugins/plugin" + i + "/";
+      resourceList.add(createResource(random, pluginPath + "plugin.js", 500 + random.nextInt(12000)));
+      if(i % 2 == 0) {
+        resourceList.add(createResource(random, pluginPath + "dialogs/plugin" + i + ".js", 2000 + random.nextInt(20000)));
+      }
+      if(i % 3 == 0) {
+        resourceList.add(createResource(random, pluginPath + "images/icon.gif", 100 + random.nextInt(1000)));
+      }
+    }
+    return resourceList;
+  }
+
+  private static Resource createResource(Random random, String path, int size) {
+    byte[] bytes = new byte[size];
+    // Printable content, like scripts and style sheets.
+    for(int i=0; i<size; i++) {
+      bytes[i] = (byte)(32 + random.nextInt(95));
+    }
+    return new Resource(PACKAGE_PREFIX + path, bytes);
+  }
+
+  private static File writeResources(List<Resource> resourceList) throws IOException {
+    File dir = File.createTempFile("nswsbench", null);
+    dir.delete();
+    for(Resource resource: resourceList) {
+      File file = new File(dir, resource.path.substring(1));
+      file.getParentFile().mkdirs();
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(resource.bytes);
+      } finally {
+        out.close();
+      }
+    }
+    return dir;
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for(int b; (b=in.read()) != '\n'; ) {
+      if(b == -1) {
+        throw new IOException("The connection was closed in the middle of a response.");
+      }
+      if(b != '\r') {
+        sb.append((char)b);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void readFully(InputStream in, byte[] bytes, int offset, int length) throws IOException {
+    while(length > 0) {
+      int count = in.read(bytes, offset, length);
+      if(count == -1) {
+        throw new IOException("The connection was closed in the middle of a response.");
+      }
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * Read a response.
+   * @param responseHeaderMap the map that receives the headers of the response, with lower case names.
+   * @return the content of the response.
+   */
+  private static byte[] readResponse(InputStream in, Map<String, String> responseHeaderMap) throws IOException {
+    String statusLine = readLine(in);
+    if(!statusLine.startsWith("HTTP/1.1 200")) {
+      throw new IOException("Unexpected response: " + statusLine);
+    }
+    responseHeaderMap.clear();
+    for(String line; (line = readLine(in)).length() > 0; ) {
+      int index = line.indexOf(':');
+      responseHeaderMap.put(line.substring(0, index).trim().toLowerCase(), line.substring(index + 1).trim());
+    }
+    String contentLength = responseHeaderMap.get("content-length");
+    if(contentLength != null) {
+      byte[] bytes = new byte[Integer.parseInt(contentLength)];
+      readFully(in, bytes, 0, bytes.length);
+      return bytes;
+    }
+    if("chunked".equals(responseHeaderMap.get("transfer-encoding"))) {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      while(true) {
+        int size = Integer.parseInt(readLine(in).trim(), 16);
+        if(size == 0) {
+          readLine(in);
+          return baos.toByteArray();
+        }
+        byte[] bytes = new byte[size];
+        readFully(in, bytes, 0, size);
+        baos.write(bytes);
+        readLine(in);
+      }
+    }
+    return readAll(in);
+  }
+
+  /**
+   * Load the resources through a connection, opening new connections when the server closes it.
+   */
+  private static void loadResources(String host, int port, String urlPathPrefix, List<Resource> resourceList, Mode mode, AtomicInteger connectionCount) throws IOException {
+    Map<String, String> responseHeaderMap = new HashMap<String, String>();
+    int nextResponseIndex = 0;
+    while(nextResponseIndex < resourceList.size()) {
+      Socket socket = new Socket(host, port);
+      connectionCount.incrementAndGet();
+      try {
+        socket.setTcpNoDelay(true);
+        OutputStream out = socket.getOutputStream();
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        int nextRequestIndex = nextResponseIndex;
+        boolean isClosed = false;
+        while(!isClosed && nextResponseIndex < resourceList.size()) {
+          // With pipelining, all the remaining requests are sent before the responses are read.
+          int requestEndIndex = mode == Mode.PIPELINING? resourceList.size(): nextResponseIndex + 1;
+          if(nextRequestIndex < requestEndIndex) {
+            StringBuilder sb = new StringBuilder();
+            for(; nextRequestIndex < requestEndIndex; nextRequestIndex++) {
+              sb.append("GET ").append(urlPathPrefix).append(resourceList.get(nextRequestIndex).path).append(" HTTP/1.1\r\n");
+              sb.append("Host: ").append(host).append(':').append(port).append("\r\n");
+              if(mode == Mode.CLOSE) {
+                sb.append("Connection: close\r\n");
+              }
+              sb.append("\r\n");
+            }
+            out.write(sb.toString().getBytes("UTF-8"));
+            out.flush();
+          }
+          Resource resource = resourceList.get(nextResponseIndex);
+          byte[] bytes = readResponse(in, responseHeaderMap);
+          if(!Arrays.equals(bytes, resource.bytes)) {
+            throw new IOException("Unexpected content for " + resource.path);
+          }
+          nextResponseIndex++;
+          String connectionHeader = responseHeaderMap.get("connection");
+          // The server closes a connection after a number of requests, and the pipelined requests that it did not answer are sent again.
+          isClosed = mode == Mode.CLOSE || connectionHeader != null && connectionHeader.toLowerCase().contains("close");
+        }
+      } finally {
+        socket.close();
+      }
+    }
+  }
+
+  /**
+   * Load the page, spreading its resources over the connections in the order of the page, like a browser.
+   * @return the duration of the page load, in nanoseconds.
+   */
+  private static long loadPage(final String host, final int port, final String urlPathPrefix, List<Resource> resourceList, final Mode mode, int connectionCount, final AtomicInteger openedConnectionCount) throws Exception {
+    final List<List<Resource>> connectionResourceLists = new ArrayList<List<Resource>>();
+    for(int i=0; i<connectionCount; i++) {
+      connectionResourceLists.add(new ArrayList<Resource>());
+    }
+    for(int i=0; i<resourceList.size(); i++) {
+      connectionResourceLists.get(i % connectionCount).add(resourceList.get(i));
+    }
+    final Exception[] exceptions = new Exception[1];
+    List<Thread> threadList = new ArrayList<Thread>();
+    long startTime = System.nanoTime();
+    for(int i=0; i<connectionCount; i++) {
+      final List<Resource> connectionResourceList = connectionResourceLists.get(i);
+      Thread thread = new Thread("Web Server Benchmark " + i) {
+        @Override
+        public void run() {
+          try {
+            loadResources(host, port, urlPathPrefix, connectionResourceList, mode, openedConnectionCount);
+          } catch(Exception e) {
+            synchronized(exceptions) {
+              exceptions[0] = e;
+            }
+          }
+        }
+      };
+      thread.start();
+      threadList.add(thread);
+    }
+    for(Thread thread: threadList) {
+      thread.join();
+    }
+    long duration = System.nanoTime() - startTime;
+    synchronized(exceptions) {
+      if(exceptions[0] != null) {
+        throw exceptions[0];
+      }
+    }
+    return duration;
+  }
+
+  public static void main(String[] args) throws Exception {
+    int pageLoadCount = args.length > 0? Integer.parseInt(args[0]): 20;
+    int connectionCount = args.length > 1? Integer.parseInt(args[1]): 6;
+    List<Resource> resourceList = getDistributionResources();
+    File resourceDir = null;
+    WebServer webServer = WebServer.getDefaultWebServer();
+    if(resourceList == null) {
+      resourceList = createResources();
+      resourceDir = writeResources(resourceList);
+      webServer.addReferenceClassLoader(new URLClassLoader(new URL[] {resourceDir.toURI().toURL()}, null));
+      System.out.println("Replaying a generated CKEditor page load (put the CKEditor distribution on the classpath to replay its files).");
+    } else {
+      System.out.println("Replaying the files of the CKEditor distribution of the classpath.");
+    }
+    try {
+      long totalSize = 0;
+      for(Resource resource: resourceList) {
+        totalSize += resource.bytes.length;
+      }
+      String engine = NSSystemProperty.WEBSERVER_ENGINE.get();
+      System.out.println("Resources: " + resourceList.size() + ", " + totalSize / 1024 + " KB. Connections: " + connectionCount + ". Engine: " + (engine == null? "default": engine) + ".");
+      URL url = new URL(webServer.getClassPathResourceURL(null, "/"));
+      String urlPathPrefix = url.getPath().substring(0, url.getPath().length() - 1);
+      // Warm up the web server, its resource cache and the compiled code with all the modes.
+      AtomicInteger openedConnectionCount = new AtomicInteger();
+      long warmUpEndTime = System.currentTimeMillis() + 2000;
+      for(int i=0; i<3 || System.currentTimeMillis() < warmUpEndTime; i++) {
+        for(Mode mode: Mode.values()) {
+          loadPage(url.getHost(), url.getPort(), urlPathPrefix, resourceList, mode, connectionCount, openedConnectionCount);
+        }
+      }
+      System.out.println();
+      for(Mode mode: Mode.values()) {
+        openedConnectionCount.set(0);
+        long[] durations = new long[pageLoadCount];
+        long totalDuration = 0;
+        for(int i=0; i<pageLoadCount; i++) {
+          durations[i] = loadPage(url.getHost(), url.getPort(), urlPathPrefix, resourceList, mode, connectionCount, openedConnectionCount);
+          totalDuration += durations[i];
+        }
+        Arrays.sort(durations);
+        System.out.println(String.format("%-27s median: %7.2f ms, best: %7.2f ms, requests/s: %,8d, connections per page: %d", mode.name + ":", durations[pageLoadCount / 2] / 1000000d, durations[0] / 1000000d, (long)resourceList.size() * pageLoadCount * 1000000000 / totalDuration, openedConnectionCount.get() / pageLoadCount));
+      }
+      System.out.println();
+      System.out.println("All the responses had the content of their resource.");
+    } finally {
+      if(resourceDir != null) {
+        Utils.deleteAll(resourceDir);
+      }
+    }
+  }
+
+}